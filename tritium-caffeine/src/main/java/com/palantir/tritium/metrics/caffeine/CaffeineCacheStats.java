@@ -28,7 +28,9 @@ import com.palantir.logsafe.Safe;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.tritium.metrics.InternalCacheMetrics;
 import com.palantir.tritium.metrics.MetricRegistries;
+import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import org.slf4j.Logger;
@@ -88,6 +90,31 @@ public final class CaffeineCacheStats {
         }
     }
 
+    /**
+     * Register specified cache with the given metric registry, identifying its metrics by the specified safe tags
+     * rather than by a {@code cache} tag, for example to tag the cache of a service endpoint with its
+     * {@code service-name} and {@code endpoint}.
+     *
+     * Callers should ensure that they have {@link Caffeine#recordStats() enabled stats recording}
+     * {@code Caffeine.newBuilder().recordStats()} otherwise there are no cache metrics to register.
+     *
+     * @param registry metric registry
+     * @param cache cache to instrument
+     * @param safeTags safe tags of the cache metrics
+     */
+    public static void registerCache(TaggedMetricRegistry registry, Cache<?, ?> cache, Map<String, String> safeTags) {
+        checkNotNull(registry, "registry");
+        checkNotNull(cache, "cache");
+        checkNotNull(safeTags, "safeTags");
+        Function<String, MetricName> metricNamer = name ->
+                MetricName.builder().safeName(name).putAllSafeTags(safeTags).build();
+        if (cache.policy().isRecordingStats()) {
+            createCacheGauges(cache, metricNamer).forEach(registry::registerWithReplacement);
+        } else {
+            warnNotRecordingStats(safeTags.toString(), registry.counter(metricNamer.apply(STATS_DISABLED)));
+        }
+    }
+
     private static void warnNotRecordingStats(@Safe String name, Counter counter) {
         counter.inc();
         log.warn(
@@ -27,6 +27,7 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.ImmutableMap;
 import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
@@ -167,6 +168,30 @@ final class CaffeineCacheStatsTest {
                 .isNull();
     }
 
+    @Test
+    void registerCacheWithSafeTags() {
+        Cache<Integer, String> cache =
+                Caffeine.newBuilder().recordStats().maximumSize(2).build();
+        CaffeineCacheStats.registerCache(
+                taggedMetricRegistry, cache, ImmutableMap.of("service-name", "Service", "endpoint", "get"));
+
+        assertThat(cache.get(0, mapping)).isEqualTo("0");
+        assertThat(cache.get(0, mapping)).isEqualTo("0");
+
+        await().atMost(Duration.ofSeconds(10))
+                .untilAsserted(() -> assertThat(taggedMetricRegistry.getMetrics())
+                        .extractingByKey(MetricName.builder()
+                                .safeName("cache.hit.count")
+                                .putSafeTags("service-name", "Service")
+                                .putSafeTags("endpoint", "get")
+                                .build())
+                        .isInstanceOf(Gauge.class)
+                        .extracting(gauge -> ((Gauge<?>) gauge).getValue())
+                        .isEqualTo(1L));
+        assertThat(taggedMetricRegistry.getMetrics().keySet())
+                .allSatisfy(name -> assertThat(name.safeTags()).doesNotContainKey("cache"));
+    }
+
     @Test
     void registerCacheWithoutRecordingStats() {
         Cache<Integer, String> cache = Caffeine.newBuilder().build();
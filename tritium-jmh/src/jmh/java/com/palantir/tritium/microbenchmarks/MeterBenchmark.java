@@ -0,0 +1,105 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.Meter;
+import com.palantir.tritium.metrics.registry.StripedMeter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Measures the throughput of {@link Meter#mark()} on a single meter shared by an increasing number of threads. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class MeterBenchmark {
+
+    @Param({"DROPWIZARD", "STRIPED"})
+    private MeterType meterType;
+
+    private Meter meter;
+
+    public enum MeterType {
+        DROPWIZARD {
+            @Override
+            Meter meter() {
+                return new Meter();
+            }
+        },
+        STRIPED {
+            @Override
+            Meter meter() {
+                return new StripedMeter();
+            }
+        };
+
+        abstract Meter meter();
+    }
+
+    @Setup
+    public void before() {
+        meter = meterType.meter();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void mark1() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void mark4() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void mark16() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void mark64() {
+        meter.mark();
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(MeterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.palantir.tritium.metrics.registry.MetricName;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures building metric names with an increasing number of tags, looking them up in a registry sized map by the
+ * same instance and by an equal instance, and interning an equal instance. Run with {@code -prof gc} to compare the
+ * bytes allocated per name.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class MetricNameBenchmark {
+
+    private static final int METRICS = 1_000;
+
+    @Param({"1", "2", "4", "8"})
+    private int tags;
+
+    private final Map<MetricName, Object> metrics = new ConcurrentHashMap<>();
+    private MetricName name;
+    private MetricName equalName;
+
+    @Setup
+    public void before() {
+        for (int i = 0; i < METRICS; i++) {
+            metrics.put(name("metric" + i), Boolean.TRUE);
+        }
+        name = name("metric" + (METRICS / 2));
+        metrics.put(name, Boolean.TRUE);
+        equalName = name("metric" + (METRICS / 2));
+    }
+
+    @Benchmark
+    public MetricName build() {
+        return name("metric");
+    }
+
+    @Benchmark
+    public MetricName intern() {
+        return MetricName.intern(equalName);
+    }
+
+    @Benchmark
+    public Object lookupSame() {
+        return metrics.get(name);
+    }
+
+    @Benchmark
+    public Object lookupEqual() {
+        return metrics.get(equalName);
+    }
+
+    private MetricName name(String safeName) {
+        MetricName.Builder builder = MetricName.builder().safeName(safeName);
+        for (int i = 0; i < tags; i++) {
+            builder.putSafeTags("tag" + i, "value" + i);
+        }
+        return builder.build();
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(MetricNameBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(opt).run();
+    }
+}
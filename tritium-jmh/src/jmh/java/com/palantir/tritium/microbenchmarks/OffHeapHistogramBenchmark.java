@@ -0,0 +1,134 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.MetricRegistries;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.OffHeapTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the garbage collection impact of {@link #TIMERS} live timers with heap and off-heap histogram storage: the
+ * duration of a full collection, which must mark every live counts array, and the cost of updating random timers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-XX:MaxDirectMemorySize=2g"})
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class OffHeapHistogramBenchmark {
+
+    private static final int TIMERS = 50_000;
+
+    @Param({"HEAP_EXPONENTIALLY_DECAYING", "HEAP_HDR", "OFF_HEAP"})
+    private Storage storage;
+
+    private Timer[] timers;
+
+    public enum Storage {
+        HEAP_EXPONENTIALLY_DECAYING {
+            @Override
+            Timer[] timers() {
+                return tagged(new DefaultTaggedMetricRegistry());
+            }
+        },
+        HEAP_HDR {
+            @Override
+            Timer[] timers() {
+                MetricRegistry registry = MetricRegistries.createWithHdrHistogramReservoirs();
+                Timer[] timers = new Timer[TIMERS];
+                for (int i = 0; i < TIMERS; i++) {
+                    timers[i] = registry.timer("timer" + i);
+                }
+                return timers;
+            }
+        },
+        OFF_HEAP {
+            @Override
+            Timer[] timers() {
+                return tagged(new OffHeapTaggedMetricRegistry());
+            }
+        };
+
+        abstract Timer[] timers();
+
+        private static Timer[] tagged(TaggedMetricRegistry registry) {
+            Timer[] timers = new Timer[TIMERS];
+            for (int i = 0; i < TIMERS; i++) {
+                timers[i] = registry.timer(MetricName.builder()
+                        .safeName("timer")
+                        .putSafeTags("endpoint", "endpoint" + i)
+                        .build());
+            }
+            return timers;
+        }
+    }
+
+    @Setup
+    public void before() {
+        timers = storage.timers();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Timer timer : timers) {
+            for (int i = 0; i < 1_000; i++) {
+                // log-uniform latencies between 1us and 1s populate a realistic spread of histogram bins
+                timer.update((long) Math.pow(10, 3 + 6 * random.nextDouble()), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Benchmark
+    public void fullGc() {
+        System.gc();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        timers[random.nextInt(TIMERS)].update(random.nextLong(1_000, 1_000_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(OffHeapHistogramBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.palantir.tritium.metrics.MetricRegistries;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Compares update throughput under contention and snapshot cost of the histogram reservoirs. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class ReservoirBenchmark {
+
+    @Param({"HDR", "STRIPED_HDR", "SLIDING_TIME_WINDOW"})
+    private ReservoirType reservoirType;
+
+    private Histogram histogram;
+
+    public enum ReservoirType {
+        HDR {
+            @Override
+            MetricRegistry registry() {
+                return MetricRegistries.createWithHdrHistogramReservoirs();
+            }
+        },
+        STRIPED_HDR {
+            @Override
+            MetricRegistry registry() {
+                return MetricRegistries.createWithStripedHdrHistogramReservoirs();
+            }
+        },
+        SLIDING_TIME_WINDOW {
+            @Override
+            MetricRegistry registry() {
+                return MetricRegistries.createWithSlidingTimeWindowReservoirs(1, TimeUnit.MINUTES);
+            }
+        };
+
+        abstract MetricRegistry registry();
+    }
+
+    @Setup
+    public void before() {
+        histogram = reservoirType.registry().histogram("histogram");
+        for (int i = 0; i < 100_000; i++) {
+            histogram.update(nextValue());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void update1() {
+        histogram.update(nextValue());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void update4() {
+        histogram.update(nextValue());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void update16() {
+        histogram.update(nextValue());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void update64() {
+        histogram.update(nextValue());
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    public Snapshot snapshot() {
+        return histogram.getSnapshot();
+    }
+
+    private static long nextValue() {
+        // latencies between 100us and 100ms in nanoseconds
+        return ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L);
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ReservoirBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
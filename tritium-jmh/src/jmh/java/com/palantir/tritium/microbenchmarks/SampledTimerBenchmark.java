@@ -0,0 +1,113 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.SampledTimer;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Compares the update cost of a hot timer recording every duration with sampled timers. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class SampledTimerBenchmark {
+
+    @Param({"FULL", "SAMPLE_RATE_1_PERCENT", "SAMPLE_INTERVAL_1_MS"})
+    private TimerType timerType;
+
+    private Timer timer;
+
+    public enum TimerType {
+        FULL {
+            @Override
+            Timer timer() {
+                return new Timer(new ExponentiallyDecayingReservoir());
+            }
+        },
+        SAMPLE_RATE_1_PERCENT {
+            @Override
+            Timer timer() {
+                return SampledTimer.sampleRate(0.01, ExponentiallyDecayingReservoir::new)
+                        .get();
+            }
+        },
+        SAMPLE_INTERVAL_1_MS {
+            @Override
+            Timer timer() {
+                return SampledTimer.sampleInterval(Duration.ofMillis(1), ExponentiallyDecayingReservoir::new)
+                        .get();
+            }
+        };
+
+        abstract Timer timer();
+    }
+
+    @Setup
+    public void before() {
+        timer = timerType.timer();
+    }
+
+    @Benchmark
+    public void update1() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void update4() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void update16() {
+        update();
+    }
+
+    private void update() {
+        timer.update(ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L), TimeUnit.NANOSECONDS);
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(SampledTimerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.SlidingWindowTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the sample array and rotating histogram sliding window registries. Setup fills a 35 second window at 10K
+ * updates per second across {@link #TIMERS} timers, reporting the retained heap per timer and the relative error of
+ * reported quantiles against the exact values; the benchmarks then measure update and snapshot cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway", "SystemOut"})
+public class SlidingWindowReservoirBenchmark {
+
+    private static final int TIMERS = 10;
+    private static final int UPDATES = 10_000 * 35;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+
+    @Param({"SAMPLE_ARRAY", "ROTATING_HISTOGRAMS"})
+    private RegistryType registryType;
+
+    private Timer[] timers;
+
+    public enum RegistryType {
+        SAMPLE_ARRAY {
+            @Override
+            TaggedMetricRegistry registry() {
+                return new SlidingWindowTaggedMetricRegistry(35, TimeUnit.SECONDS);
+            }
+        },
+        ROTATING_HISTOGRAMS {
+            @Override
+            TaggedMetricRegistry registry() {
+                return SlidingWindowTaggedMetricRegistry.withRotatingHistograms(35, TimeUnit.SECONDS, 7);
+            }
+        };
+
+        abstract TaggedMetricRegistry registry();
+    }
+
+    @Setup
+    public void before() {
+        TaggedMetricRegistry registry = registryType.registry();
+        long[] values = latencies(new Random(0));
+
+        long usedBefore = usedHeap();
+        timers = new Timer[TIMERS];
+        for (int i = 0; i < TIMERS; i++) {
+            timers[i] = registry.timer(MetricName.builder().safeName("timer" + i).build());
+            for (long value : values) {
+                timers[i].update(value, TimeUnit.NANOSECONDS);
+            }
+        }
+        long retainedPerTimer = (usedHeap() - usedBefore) / TIMERS;
+
+        Arrays.sort(values);
+        Snapshot snapshot = timers[0].getSnapshot();
+        StringBuilder report = new StringBuilder()
+                .append(registryType)
+                .append(": retained bytes per timer ~")
+                .append(retainedPerTimer);
+        for (double quantile : QUANTILES) {
+            double exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            report.append(", p")
+                    .append(quantile * 100)
+                    .append(" error ")
+                    .append(String.format("%.3f%%", 100 * Math.abs(snapshot.getValue(quantile) - exact) / exact));
+        }
+        System.out.println(report);
+    }
+
+    @Benchmark
+    public void update() {
+        timers[0].update(ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public Snapshot snapshot() {
+        return timers[1].getSnapshot();
+    }
+
+    private static long[] latencies(Random random) {
+        long[] values = new long[UPDATES];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal latencies with a median of 1ms
+            values[i] = (long) (1_000_000 * Math.exp(random.nextGaussian()));
+        }
+        return values;
+    }
+
+    // best effort heap measurement
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(SlidingWindowReservoirBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
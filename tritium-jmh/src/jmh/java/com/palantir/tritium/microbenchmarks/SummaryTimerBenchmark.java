@@ -0,0 +1,131 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares default timers with summary timers. Setup creates {@link #TIMERS} endpoint timers with {@link #UPDATES}
+ * updates each, as for many low-traffic endpoints, and reports the retained heap per timer; the benchmarks then measure
+ * update and snapshot cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway", "SystemOut"})
+public class SummaryTimerBenchmark {
+
+    private static final int TIMERS = 10_000;
+    private static final int UPDATES = 2_000;
+
+    @Param({"DEFAULT", "SUMMARY"})
+    private TimerType timerType;
+
+    private Timer[] timers;
+
+    public enum TimerType {
+        DEFAULT(false),
+        SUMMARY(true);
+
+        private final boolean summary;
+
+        TimerType(boolean summary) {
+            this.summary = summary;
+        }
+
+        TaggedMetricRegistry registry() {
+            return DefaultTaggedMetricRegistry.builder()
+                    .withSummaryTimers(_metricName -> summary)
+                    .build();
+        }
+    }
+
+    @Setup
+    public void before() {
+        TaggedMetricRegistry registry = timerType.registry();
+        long usedBefore = usedHeap();
+        timers = new Timer[TIMERS];
+        for (int i = 0; i < TIMERS; i++) {
+            timers[i] = registry.timer(MetricName.builder()
+                    .safeName("service")
+                    .putSafeTags("endpoint", "endpoint" + i)
+                    .build());
+            for (int j = 0; j < UPDATES; j++) {
+                timers[i].update(ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L), TimeUnit.NANOSECONDS);
+            }
+        }
+        System.out.println(timerType + ": retained bytes per timer ~" + (usedHeap() - usedBefore) / TIMERS);
+    }
+
+    @Benchmark
+    public void update() {
+        timers[0].update(ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void update4() {
+        timers[0].update(ThreadLocalRandom.current().nextLong(100_000L, 100_000_000L), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public Snapshot snapshot() {
+        return timers[1].getSnapshot();
+    }
+
+    // best effort heap measurement
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(SummaryTimerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.microbenchmarks;
+
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricHandle;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares looking up a timer tagged with a method and status by building its {@link MetricName} for each event with
+ * looking it up through a {@link TaggedMetricHandle}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({"designforextension", "NullAway"})
+public class TaggedMetricHandleBenchmark {
+
+    private static final String[] METHODS = {"GET", "PUT", "POST", "DELETE"};
+    private static final String[] STATUSES = {"200", "204", "400", "404", "500"};
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final MetricName template = MetricName.builder()
+            .safeName("server.requests")
+            .putSafeTags("service-name", "benchmark")
+            .build();
+    private TaggedMetricHandle<Timer> handle;
+    private int index;
+
+    @Setup
+    public void before() {
+        handle = registry.timerHandle(template, "method", "status");
+        for (String method : METHODS) {
+            for (String status : STATUSES) {
+                handle.tagged(method, status);
+            }
+        }
+    }
+
+    @Benchmark
+    public Timer metricName() {
+        int next = index++;
+        return registry.timer(MetricName.builder()
+                .from(template)
+                .putSafeTags("method", METHODS[next & 3])
+                .putSafeTags("status", STATUSES[next % STATUSES.length])
+                .build());
+    }
+
+    @Benchmark
+    public Timer handle() {
+        int next = index++;
+        return handle.tagged(METHODS[next & 3], STATUSES[next % STATUSES.length]);
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(TaggedMetricHandleBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import com.palantir.tritium.api.annotations.Batched;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * Collects invocations of interface methods annotated with {@link Batched} and dispatches them through the declared
+ * batch method, returning to each invocation the result mapped to its argument, or {@code null} if there is none.
+ *
+ * <p>The first invocation of a batch waits until either the batch is full or the maximum delay has elapsed, and then
+ * invokes the batch method on behalf of all invocations in the batch, so no additional threads are required. If the
+ * batch method fails, all invocations in the batch fail with its exception.
+ *
+ * <p>Publishes the following metrics, tagged with service-name (the simple name of the interface) and endpoint (the
+ * name of the batched method):
+ *
+ * <ul>
+ *   <li>{@code <serviceName>-batching-batch-size}: histogram of the number of invocations per batch
+ *   <li>{@code <serviceName>-batching-queue-delay}: timer of the time each invocation waited for its batch to dispatch
+ * </ul>
+ */
+final class BatchingInvocationHandler extends DelegatingInvocationHandler {
+
+    private final Map<Method, Batcher> batchers;
+
+    BatchingInvocationHandler(
+            Invocable next,
+            Class<?> interfaceClass,
+            TaggedMetricRegistry registry,
+            String serviceName,
+            int maxBatchSize,
+            Duration maxDelay) {
+        super(next);
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(registry, "registry");
+        checkNotNull(serviceName, "serviceName");
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive", SafeArg.of("maxBatchSize", maxBatchSize));
+        checkArgument(!checkNotNull(maxDelay, "maxDelay").isNegative(), "maxDelay must be non-negative");
+        ImmutableMap.Builder<Method, Batcher> builder = ImmutableMap.builder();
+        for (Method method : interfaceClass.getMethods()) {
+            Batched batched = method.getAnnotation(Batched.class);
+            if (batched != null) {
+                builder.put(
+                        method,
+                        new Batcher(
+                                batchMethod(interfaceClass, method, batched.value()),
+                                maxBatchSize,
+                                maxDelay.toNanos(),
+                                registry.histogram(name(serviceName + "-batching-batch-size", interfaceClass, method)),
+                                registry.timer(name(serviceName + "-batching-queue-delay", interfaceClass, method))));
+            }
+        }
+        this.batchers = builder.build();
+    }
+
+    private static Method batchMethod(Class<?> interfaceClass, Method method, String batchMethodName) {
+        checkArgument(
+                method.getParameterCount() == 1,
+                "Batched methods must have a single parameter",
+                SafeArg.of("method", method.getName()));
+        for (Method candidate : interfaceClass.getMethods()) {
+            if (candidate.getName().equals(batchMethodName)
+                    && candidate.getParameterCount() == 1
+                    && isSupportedCollection(candidate.getParameterTypes()[0])
+                    && Map.class.isAssignableFrom(candidate.getReturnType())) {
+                return candidate;
+            }
+        }
+        throw new SafeIllegalArgumentException(
+                "Batch method must accept a single Collection, List or Set and return a Map",
+                SafeArg.of("method", method.getName()),
+                SafeArg.of("batchMethod", batchMethodName));
+    }
+
+    private static boolean isSupportedCollection(Class<?> type) {
+        return type == Collection.class || type == List.class || type == Set.class;
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Method method, Object[] args) throws Throwable {
+        Batcher batcher = batchers.get(method);
+        if (batcher == null) {
+            return invokeDelegate(method, args);
+        }
+        return batcher.submit(args[0]);
+    }
+
+    private static MetricName name(String safeName, Class<?> interfaceClass, Method method) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", interfaceClass.getSimpleName())
+                .putSafeTags("endpoint", method.getName())
+                .build();
+    }
+
+    private final class Batcher {
+        private final Method batchMethod;
+        private final int maxBatchSize;
+        private final long maxDelayNanos;
+        private final Histogram batchSize;
+        private final Timer queueDelay;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition batchFull = lock.newCondition();
+
+        // guarded by lock
+        @Nullable
+        private List<Item> pending;
+
+        Batcher(Method batchMethod, int maxBatchSize, long maxDelayNanos, Histogram batchSize, Timer queueDelay) {
+            this.batchMethod = batchMethod;
+            this.maxBatchSize = maxBatchSize;
+            this.maxDelayNanos = maxDelayNanos;
+            this.batchSize = batchSize;
+            this.queueDelay = queueDelay;
+        }
+
+        @Nullable
+        Object submit(@Nullable Object argument) throws Throwable {
+            Item item = new Item(argument);
+            List<Item> batch;
+            boolean leader;
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                List<Item> current = pending;
+                leader = current == null;
+                if (current == null) {
+                    current = new ArrayList<>();
+                    pending = current;
+                }
+                batch = current;
+                batch.add(item);
+                if (batch.size() >= maxBatchSize) {
+                    pending = null;
+                    // leaders share the condition, so wake them all to recheck whether their own batch is pending
+                    batchFull.signalAll();
+                }
+                if (leader) {
+                    long remainingNanos = maxDelayNanos;
+                    while (pending == batch && remainingNanos > 0) {
+                        try {
+                            remainingNanos = batchFull.awaitNanos(remainingNanos);
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                            break;
+                        }
+                    }
+                    if (pending == batch) {
+                        pending = null;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (leader) {
+                dispatch(batch);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                return Uninterruptibles.getUninterruptibly(item.result);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void dispatch(List<Item> batch) {
+            long dispatchNanos = System.nanoTime();
+            batchSize.update(batch.size());
+            Collection<Object> arguments = batchMethod.getParameterTypes()[0] == Set.class
+                    ? new LinkedHashSet<>(batch.size())
+                    : new ArrayList<>(batch.size());
+            Set<Object> distinct = new LinkedHashSet<>(batch.size());
+            for (Item item : batch) {
+                queueDelay.update(dispatchNanos - item.enqueuedNanos, TimeUnit.NANOSECONDS);
+                distinct.add(item.argument);
+            }
+            arguments.addAll(distinct);
+
+            Map<?, ?> results;
+            try {
+                results = (Map<?, ?>) invokeDelegate(batchMethod, new Object[] {arguments});
+            } catch (Throwable t) {
+                batch.forEach(item -> item.result.completeExceptionally(t));
+                return;
+            }
+            for (Item item : batch) {
+                item.result.complete(results == null ? null : results.get(item.argument));
+            }
+        }
+    }
+
+    private static final class Item {
+        @Nullable
+        private final Object argument;
+
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Item(@Nullable Object argument) {
+            this.argument = argument;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.tritium.api.annotations.Cached;
+import com.palantir.tritium.metrics.caffeine.CaffeineCacheStats;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Caches results of interface methods annotated with {@link Cached} in a Caffeine cache per method. Cache stats are
+ * registered with {@link CaffeineCacheStats} tagged with the {@code service-name} and {@code endpoint} of the method.
+ *
+ * <p>The delegate is invoked by the first caller to miss, outside of any cache computation, so slow loads do not block
+ * other keys and loads may invoke other cached methods. Concurrent callers of the same key wait for that load.
+ * Exceptions are never cached, and a {@code null} result is returned without being cached. Results which are a
+ * {@link CompletionStage} or {@link ListenableFuture} are cached while pending, and removed if they complete
+ * exceptionally or are cancelled, so failures of asynchronous methods are not cached either.
+ *
+ * <p>By default, results are keyed by the {@link #argumentsKey(Object[]) invocation arguments}, comparing array
+ * arguments by their contents.
+ */
+final class CachingInvocationHandler extends DelegatingInvocationHandler {
+
+    private final Map<Method, MethodCache> caches;
+    private final Function<Object[], ?> keyFunction;
+
+    CachingInvocationHandler(
+            Invocable next,
+            Class<?> interfaceClass,
+            TaggedMetricRegistry registry,
+            long maximumSize,
+            Duration expireAfterWrite,
+            Function<Object[], ?> keyFunction) {
+        super(next);
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(registry, "registry");
+        checkArgument(maximumSize >= 0, "maximumSize must be non-negative", SafeArg.of("maximumSize", maximumSize));
+        checkNotNull(expireAfterWrite, "expireAfterWrite");
+        checkArgument(
+                !expireAfterWrite.isNegative() && !expireAfterWrite.isZero(), "expireAfterWrite must be positive");
+        this.keyFunction = checkNotNull(keyFunction, "keyFunction");
+
+        ImmutableMap.Builder<Method, MethodCache> builder = ImmutableMap.builder();
+        for (Method method : interfaceClass.getMethods()) {
+            if (method.isAnnotationPresent(Cached.class) && method.getReturnType() != void.class) {
+                MethodCache cache = new MethodCache(maximumSize, expireAfterWrite);
+                CaffeineCacheStats.registerCache(
+                        registry,
+                        cache.values,
+                        ImmutableMap.of(
+                                "service-name", interfaceClass.getSimpleName(), "endpoint", method.getName()));
+                builder.put(method, cache);
+            }
+        }
+        this.caches = builder.build();
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Method method, Object[] args) throws Throwable {
+        MethodCache cache = caches.get(method);
+        if (cache == null) {
+            return invokeDelegate(method, args);
+        }
+        Object key = checkNotNull(keyFunction.apply(args), "key");
+        Object cached = cache.values.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = cache.loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return await(inFlight, method, args);
+        }
+        try {
+            return load(cache, key, load, method, args);
+        } finally {
+            cache.loads.remove(key, load);
+        }
+    }
+
+    @Nullable
+    private Object load(MethodCache cache, Object key, CompletableFuture<Object> load, Method method, Object[] args)
+            throws Throwable {
+        // a load may have completed between the cache miss and registering this one
+        Object cached = cache.values.asMap().get(key);
+        if (cached != null) {
+            load.complete(cached);
+            return cached;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            Object result = invokeDelegate(method, args);
+            cache.stats.recordLoadSuccess(System.nanoTime() - startNanos);
+            if (result != null) {
+                cache.values.put(key, result);
+                removeOnFailure(cache, key, result);
+            }
+            load.complete(result);
+            return result;
+        } catch (Throwable t) {
+            cache.stats.recordLoadFailure(System.nanoTime() - startNanos);
+            load.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    private static void removeOnFailure(MethodCache cache, Object key, Object result) {
+        Runnable remove = () -> cache.values.asMap().remove(key, result);
+        if (result instanceof ListenableFuture) {
+            Futures.addCallback(
+                    (ListenableFuture<?>) result,
+                    new FutureCallback<Object>() {
+                        @Override
+                        public void onSuccess(@Nullable Object _value) {}
+
+                        @Override
+                        public void onFailure(Throwable _throwable) {
+                            remove.run();
+                        }
+                    },
+                    MoreExecutors.directExecutor());
+        } else if (result instanceof CompletionStage) {
+            CompletionStage<?> unused = ((CompletionStage<?>) result).whenComplete((_value, throwable) -> {
+                if (throwable != null) {
+                    remove.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the default cache key of the specified invocation arguments, which compares array arguments by their
+     * contents rather than by identity. Array arguments are copied, so that callers modifying an array after the
+     * invocation do not modify the key of a cached result.
+     */
+    static Object argumentsKey(Object[] args) {
+        Object[] key = args.clone();
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != null && key[i].getClass().isArray()) {
+                key[i] = copyArray(key[i]);
+            }
+        }
+        return new ArgumentsKey(key);
+    }
+
+    private static Object copyArray(Object array) {
+        int length = Array.getLength(array);
+        Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    @Nullable
+    private Object await(CompletableFuture<Object> inFlight, Method method, Object[] args) throws Throwable {
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            // proceed without the cache rather than surface an undeclared exception
+            Thread.currentThread().interrupt();
+            return invokeDelegate(method, args);
+        }
+    }
+
+    private static final class ArgumentsKey {
+        private final Object[] args;
+        private final int hashCode;
+
+        ArgumentsKey(Object[] args) {
+            this.args = args;
+            this.hashCode = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object other) {
+            return this == other
+                    || (other instanceof ArgumentsKey
+                            && hashCode == ((ArgumentsKey) other).hashCode
+                            && Arrays.deepEquals(args, ((ArgumentsKey) other).args));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Cached results of a method and its in-flight loads. Loads are recorded in the cache stats explicitly, as they
+     * happen outside of the cache.
+     */
+    private static final class MethodCache {
+        private final StatsCounter stats = new ConcurrentStatsCounter();
+        private final ConcurrentMap<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+        private final Cache<Object, Object> values;
+
+        MethodCache(long maximumSize, Duration expireAfterWrite) {
+            this.values = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(expireAfterWrite.toNanos(), TimeUnit.NANOSECONDS)
+                    .recordStats(() -> stats)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Meter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.palantir.tritium.api.annotations.Idempotent;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+
+/**
+ * Coalesces concurrent invocations of interface methods annotated with {@link Idempotent} which have equal arguments,
+ * such that only the first invocation executes and the others share its result or exception.
+ *
+ * <p>Methods returning {@link CompletableFuture}, {@link CompletionStage} or {@link ListenableFuture} remain in flight
+ * until the returned future completes. Coalesced invocations of such methods receive a view of the shared future which
+ * does not propagate cancellation.
+ *
+ * <p>Reentrant invocations with equal arguments made by the executing thread, and invocations interrupted while
+ * waiting for a shared outcome, execute the delegate themselves.
+ *
+ * <p>Publishes the following meters, tagged with service-name (the simple name of the interface) and endpoint (the
+ * method name):
+ *
+ * <ul>
+ *   <li>{@code <serviceName>-coalescing-executed}: invocations which executed the delegate
+ *   <li>{@code <serviceName>-coalescing-coalesced}: invocations which shared the outcome of an executing invocation
+ * </ul>
+ */
+final class CoalescingInvocationHandler extends DelegatingInvocationHandler {
+
+    private final ConcurrentMap<List<Object>, Invocation> inFlight = new ConcurrentHashMap<>();
+    private final Map<Method, CoalescedMethod> methods;
+
+    CoalescingInvocationHandler(
+            Invocable next, Class<?> interfaceClass, TaggedMetricRegistry registry, String serviceName) {
+        super(next);
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(registry, "registry");
+        checkNotNull(serviceName, "serviceName");
+        ImmutableMap.Builder<Method, CoalescedMethod> builder = ImmutableMap.builder();
+        for (Method method : interfaceClass.getMethods()) {
+            if (method.isAnnotationPresent(Idempotent.class)) {
+                builder.put(
+                        method,
+                        new CoalescedMethod(
+                                ResultType.of(method.getReturnType()),
+                                registry.meter(name(serviceName + "-coalescing-executed", interfaceClass, method)),
+                                registry.meter(name(serviceName + "-coalescing-coalesced", interfaceClass, method))));
+            }
+        }
+        this.methods = builder.build();
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Method method, Object[] args) throws Throwable {
+        CoalescedMethod coalescedMethod = methods.get(method);
+        if (coalescedMethod == null) {
+            return invokeDelegate(method, args);
+        }
+
+        List<Object> key = Lists.asList(method, args);
+        Invocation invocation = new Invocation();
+        Invocation existing = inFlight.putIfAbsent(key, invocation);
+        if (existing != null) {
+            if (existing.isReentrant()) {
+                // the executing invocation is waiting on this one, so it cannot be shared
+                coalescedMethod.executed.mark();
+                return invokeDelegate(method, args);
+            }
+            return await(existing, coalescedMethod, method, args);
+        }
+
+        coalescedMethod.executed.mark();
+        Object result;
+        try {
+            result = invokeDelegate(method, args);
+        } catch (Throwable t) {
+            inFlight.remove(key, invocation);
+            invocation.completeExceptionally(t);
+            throw t;
+        }
+        // invocations returning values leave flight before sharing their result, like failed invocations
+        coalescedMethod.resultType.onCompletion(result, () -> inFlight.remove(key, invocation));
+        invocation.complete(result);
+        return result;
+    }
+
+    /**
+     * Waits for the shared outcome of an executing invocation. Callers are only counted as coalesced once they use the
+     * shared outcome, as interrupted callers execute the invocation themselves.
+     */
+    @Nullable
+    private Object await(Invocation invocation, CoalescedMethod coalescedMethod, Method method, Object[] args)
+            throws Throwable {
+        Object result;
+        try {
+            result = invocation.get();
+        } catch (ExecutionException e) {
+            coalescedMethod.coalesced.mark();
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            // stop waiting and proceed alone rather than surface an undeclared exception
+            Thread.currentThread().interrupt();
+            coalescedMethod.executed.mark();
+            return invokeDelegate(method, args);
+        }
+        coalescedMethod.coalesced.mark();
+        return coalescedMethod.resultType.view(result);
+    }
+
+    private static MetricName name(String safeName, Class<?> interfaceClass, Method method) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", interfaceClass.getSimpleName())
+                .putSafeTags("endpoint", method.getName())
+                .build();
+    }
+
+    /** Outcome of an executing invocation, which records the thread executing it. */
+    private static final class Invocation extends CompletableFuture<Object> {
+        private final Thread thread = Thread.currentThread();
+
+        /** Returns true if the current thread is still executing this invocation, and so cannot wait for it. */
+        boolean isReentrant() {
+            return thread == Thread.currentThread() && !isDone();
+        }
+    }
+
+    private static final class CoalescedMethod {
+        private final ResultType resultType;
+        private final Meter executed;
+        private final Meter coalesced;
+
+        CoalescedMethod(ResultType resultType, Meter executed, Meter coalesced) {
+            this.resultType = resultType;
+            this.executed = executed;
+            this.coalesced = coalesced;
+        }
+    }
+
+    private enum ResultType {
+        VALUE {
+            @Override
+            void onCompletion(@Nullable Object _result, Runnable listener) {
+                listener.run();
+            }
+
+            @Override
+            @Nullable
+            Object view(@Nullable Object result) {
+                return result;
+            }
+        },
+        COMPLETION_STAGE {
+            @Override
+            void onCompletion(@Nullable Object result, Runnable listener) {
+                if (result == null) {
+                    listener.run();
+                } else {
+                    ((CompletionStage<?>) result).whenComplete((_value, _throwable) -> listener.run());
+                }
+            }
+
+            @Override
+            @Nullable
+            Object view(@Nullable Object result) {
+                return result == null
+                        ? null
+                        : ((CompletionStage<?>) result).toCompletableFuture().thenApply(value -> value);
+            }
+        },
+        LISTENABLE_FUTURE {
+            @Override
+            void onCompletion(@Nullable Object result, Runnable listener) {
+                if (result == null) {
+                    listener.run();
+                } else {
+                    ((ListenableFuture<?>) result).addListener(listener, MoreExecutors.directExecutor());
+                }
+            }
+
+            @Override
+            @Nullable
+            Object view(@Nullable Object result) {
+                return result == null ? null : Futures.nonCancellationPropagating((ListenableFuture<?>) result);
+            }
+        };
+
+        /** Runs the listener once the invocation which returned the result is no longer in flight. */
+        abstract void onCompletion(@Nullable Object result, Runnable listener);
+
+        /** Returns the result of an executed invocation as seen by a coalesced invocation. */
+        @Nullable
+        abstract Object view(@Nullable Object result);
+
+        static ResultType of(Class<?> returnType) {
+            if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+                return COMPLETION_STAGE;
+            }
+            if (returnType == ListenableFuture.class) {
+                return LISTENABLE_FUTURE;
+            }
+            return VALUE;
+        }
+    }
+}
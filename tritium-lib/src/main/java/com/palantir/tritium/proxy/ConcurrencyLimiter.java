@@ -0,0 +1,178 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive concurrency limit based on the gradient between long-term and recent invocation latency.
+ *
+ * <p>Each completed invocation updates an exponentially weighted long-term latency. While the latency of recent
+ * invocations stays within a tolerance of the long-term latency the limit grows additively by the square root of the
+ * limit, and as recent latency rises above it the limit shrinks multiplicatively by the ratio of the two, down to half
+ * the limit per update. Updates are smoothed, and skipped while the limit is not being approached, so that idle
+ * periods do not inflate it. Samples that arrive while another thread is updating the estimate are dropped rather
+ * than contending.
+ */
+final class ConcurrencyLimiter {
+
+    static final int INITIAL_LIMIT = 20;
+    static final int MIN_LIMIT = 1;
+    static final int MAX_LIMIT = 1000;
+
+    private static final double SMOOTHING = 0.2;
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final int LONG_WINDOW = 600;
+
+    private final long maxQueueWaitNanos;
+    private final Meter rejected;
+    private final Timer queueWait;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit = INITIAL_LIMIT;
+
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition permitReleased = queueLock.newCondition();
+    private volatile int waiters;
+
+    // guarded by updateLock
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private double estimatedLimit = INITIAL_LIMIT;
+    private double longRttNanos;
+    private long samples;
+
+    ConcurrencyLimiter(long maxQueueWaitNanos, Meter rejected, Timer queueWait) {
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+        this.rejected = rejected;
+        this.queueWait = queueWait;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Acquires a permit, waiting up to the maximum queue wait for one to become available.
+     *
+     * @return true if a permit was acquired and must be released by {@link #release}, otherwise false
+     */
+    boolean acquire() {
+        if (tryAcquire()) {
+            return true;
+        }
+        if (maxQueueWaitNanos <= 0) {
+            rejected.mark();
+            return false;
+        }
+        long startNanos = System.nanoTime();
+        queueLock.lock();
+        try {
+            waiters++;
+            long remainingNanos = maxQueueWaitNanos;
+            while (!tryAcquire()) {
+                if (remainingNanos <= 0) {
+                    rejected.mark();
+                    return false;
+                }
+                remainingNanos = permitReleased.awaitNanos(remainingNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.mark();
+            return false;
+        } finally {
+            waiters--;
+            queueLock.unlock();
+            queueWait.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean tryAcquire() {
+        int current = inFlight.get();
+        while (current < limit) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = inFlight.get();
+        }
+        return false;
+    }
+
+    /** Releases a permit acquired by {@link #acquire}, sampling the latency of the completed invocation. */
+    void release(long rttNanos) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        if (waiters > 0) {
+            signalWaiter();
+        }
+        if (updateLock.tryLock()) {
+            try {
+                update(Math.max(1L, rttNanos), inFlightAtCompletion);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    private void signalWaiter() {
+        queueLock.lock();
+        try {
+            permitReleased.signal();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    void update(long rttNanos, int inFlightAtCompletion) {
+        samples++;
+        if (samples == 1) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / Math.min(samples, LONG_WINDOW);
+        }
+        // recover quickly once a period of high latency is over
+        if (longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+        if (gradient >= 1.0 && inFlightAtCompletion < estimatedLimit / 2) {
+            // not limited by concurrency, so latency says nothing about a higher limit
+            return;
+        }
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, newLimit));
+        int previousLimit = limit;
+        limit = (int) estimatedLimit;
+        if (limit > previousLimit && waiters > 0) {
+            signalWaiter();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+/** Granularity at which {@link Instrumentation.Builder#withConcurrencyLimiter} maintains concurrency limits. */
+public enum ConcurrencyLimiterScope {
+    /** A single limit shared by all methods of the instrumented interface. */
+    INTERFACE,
+
+    /** An independent limit for each method of the instrumented interface. */
+    METHOD
+}
@@ -0,0 +1,113 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Gauge;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Limits the number of concurrent invocations of a delegate using {@link ConcurrencyLimiter}s, rejecting invocations
+ * with a {@link RejectedExecutionException} when no permit becomes available within the maximum queue wait.
+ *
+ * <p>Publishes the following metrics, tagged with service-name (the simple name of the interface) and, for
+ * {@link ConcurrencyLimiterScope#METHOD} limiters, endpoint (the method name):
+ *
+ * <ul>
+ *   <li>{@code <serviceName>-limiter-limit}: gauge of the current concurrency limit
+ *   <li>{@code <serviceName>-limiter-in-flight}: gauge of the current number of permitted invocations
+ *   <li>{@code <serviceName>-limiter-rejected}: meter of rejected invocations
+ *   <li>{@code <serviceName>-limiter-queue-wait}: timer of the time invocations waited for a permit
+ * </ul>
+ */
+final class ConcurrencyLimitingInvocationHandler extends DelegatingInvocationHandler {
+
+    private final Map<Method, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final Function<Method, ConcurrencyLimiter> limiterFunction;
+
+    ConcurrencyLimitingInvocationHandler(
+            Invocable next,
+            Class<?> interfaceClass,
+            TaggedMetricRegistry registry,
+            String serviceName,
+            ConcurrencyLimiterScope scope,
+            Duration maxQueueWait) {
+        super(next);
+        checkNotNull(interfaceClass, "interfaceClass");
+        checkNotNull(registry, "registry");
+        checkNotNull(serviceName, "serviceName");
+        checkNotNull(scope, "scope");
+        long maxQueueWaitNanos = checkNotNull(maxQueueWait, "maxQueueWait").toNanos();
+        if (scope == ConcurrencyLimiterScope.METHOD) {
+            this.limiterFunction = method -> createLimiter(
+                    registry, serviceName, interfaceClass, method.getName(), maxQueueWaitNanos);
+        } else {
+            ConcurrencyLimiter limiter = createLimiter(registry, serviceName, interfaceClass, null, maxQueueWaitNanos);
+            this.limiterFunction = _method -> limiter;
+        }
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Method method, Object[] args) throws Throwable {
+        ConcurrencyLimiter limiter = limiters.computeIfAbsent(method, limiterFunction);
+        if (!limiter.acquire()) {
+            throw new RejectedExecutionException("Concurrency limit exceeded");
+        }
+        long startNanos = System.nanoTime();
+        try {
+            return invokeDelegate(method, args);
+        } finally {
+            limiter.release(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static ConcurrencyLimiter createLimiter(
+            TaggedMetricRegistry registry,
+            String serviceName,
+            Class<?> interfaceClass,
+            @Nullable String endpoint,
+            long maxQueueWaitNanos) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                maxQueueWaitNanos,
+                registry.meter(name(serviceName + "-limiter-rejected", interfaceClass, endpoint)),
+                registry.timer(name(serviceName + "-limiter-queue-wait", interfaceClass, endpoint)));
+        registry.registerWithReplacement(
+                name(serviceName + "-limiter-limit", interfaceClass, endpoint), (Gauge<Integer>) limiter::limit);
+        registry.registerWithReplacement(
+                name(serviceName + "-limiter-in-flight", interfaceClass, endpoint), (Gauge<Integer>) limiter::inFlight);
+        return limiter;
+    }
+
+    private static MetricName name(String safeName, Class<?> interfaceClass, @Nullable String endpoint) {
+        MetricName.Builder builder =
+                MetricName.builder().safeName(safeName).putSafeTags("service-name", interfaceClass.getSimpleName());
+        if (endpoint != null) {
+            builder.putSafeTags("endpoint", endpoint);
+        }
+        return builder.build();
+    }
+}
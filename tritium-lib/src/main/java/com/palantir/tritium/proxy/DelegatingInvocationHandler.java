@@ -0,0 +1,55 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import javax.annotation.Nullable;
+
+/**
+ * Base class of the decorations which {@link Instrumentation.Builder} applies to invocations of a delegate, for example
+ * to limit their concurrency. Decorations are chained: each proceeds by invoking the next, and the last invokes the
+ * delegate. The whole chain runs within the single {@link InstrumentationProxy} of the delegate.
+ */
+abstract class DelegatingInvocationHandler implements Invocable {
+
+    private final Invocable next;
+
+    DelegatingInvocationHandler(Invocable next) {
+        this.next = checkNotNull(next, "next");
+    }
+
+    /** Proceeds with the invocation of the specified interface method through the rest of the chain. */
+    @Nullable
+    final Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        return next.invoke(method, args);
+    }
+
+    /** Returns the end of a chain, which invokes interface methods on the specified delegate. */
+    static Invocable delegate(Object delegate) {
+        checkNotNull(delegate, "delegate");
+        return (method, args) -> {
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+}
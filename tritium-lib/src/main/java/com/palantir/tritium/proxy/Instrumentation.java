@@ -19,6 +19,8 @@ package com.palantir.tritium.proxy;
 import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.palantir.tritium.api.event.InstrumentationFilter;
@@ -30,10 +32,16 @@ import com.palantir.tritium.event.log.LoggingInvocationEventHandler;
 import com.palantir.tritium.event.log.LoggingLevel;
 import com.palantir.tritium.event.metrics.MetricsInvocationEventHandler;
 import com.palantir.tritium.event.metrics.TaggedMetricsServiceInvocationEventHandler;
+import com.palantir.tritium.metrics.registry.ExemplarReservoir;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import com.palantir.tritium.tracing.TraceIds;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -113,6 +121,28 @@ public final class Instrumentation {
                 ImmutableList.builder();
         private InstrumentationFilter filter = InstrumentationFilters.INSTRUMENT_ALL;
 
+        @Nullable
+        private TaggedMetricRegistry limiterRegistry;
+
+        private ConcurrencyLimiterScope limiterScope = ConcurrencyLimiterScope.INTERFACE;
+        private Duration limiterMaxQueueWait = Duration.ZERO;
+
+        @Nullable
+        private TaggedMetricRegistry batchingRegistry;
+
+        private int batchingMaxBatchSize;
+        private Duration batchingMaxDelay = Duration.ZERO;
+
+        @Nullable
+        private TaggedMetricRegistry cacheRegistry;
+
+        private long cacheMaximumSize;
+        private Duration cacheExpireAfterWrite = Duration.ZERO;
+        private Function<Object[], ?> cacheKeyFunction = CachingInvocationHandler::argumentsKey;
+
+        @Nullable
+        private TaggedMetricRegistry coalescingRegistry;
+
         private Builder(Class<T> interfaceClass, U delegate) {
             this.interfaceClass = checkNotNull(interfaceClass, "class");
             this.delegate = checkNotNull(delegate, "delegate");
@@ -132,6 +162,24 @@ public final class Instrumentation {
             return this;
         }
 
+        /**
+         * Supplies a MetricRegistry, a name prefix and the timers to be used across service invocations, for example
+         * {@link com.palantir.tritium.metrics.registry.SampledTimer sampled timers} for hot services.
+         *
+         * @param metricRegistry - MetricsRegistry used for this application
+         * @param globalPrefix - Metrics name prefix to be used
+         * @param timerSupplier - supplier of the timers for each invoked method
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withMetrics(
+                MetricRegistry metricRegistry, String globalPrefix, Supplier<Timer> timerSupplier) {
+            checkNotNull(metricRegistry, "metricRegistry");
+            checkNotNull(timerSupplier, "timerSupplier");
+            this.handlers.add(new MetricsInvocationEventHandler(
+                    metricRegistry, delegate.getClass(), interfaceClass.getName(), globalPrefix, timerSupplier));
+            return this;
+        }
+
         public Builder<T, U> withMetrics(MetricRegistry metricRegistry) {
             return withMetrics(metricRegistry, "");
         }
@@ -153,10 +201,45 @@ public final class Instrumentation {
             return this;
         }
 
+        /**
+         * Supplies a TaggedMetricRegistry, a name prefix and the timers to be used across service invocations, for
+         * example {@link com.palantir.tritium.metrics.registry.FixedBucketReservoir#timers fixed bucket timers} for
+         * services which are only tracked against latency thresholds.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for this application.
+         * @param prefix - Metrics name prefix to be used
+         * @param timerSupplier - supplier of the timers for each invoked method
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withTaggedMetrics(
+                TaggedMetricRegistry metricRegistry, String prefix, Supplier<Timer> timerSupplier) {
+            checkNotNull(metricRegistry, "metricRegistry");
+            checkNotNull(timerSupplier, "timerSupplier");
+            String serviceName = Strings.isNullOrEmpty(prefix) ? interfaceClass.getName() : prefix;
+            this.handlers.add(
+                    new TaggedMetricsServiceInvocationEventHandler(metricRegistry, serviceName, timerSupplier));
+            return this;
+        }
+
         public Builder<T, U> withTaggedMetrics(TaggedMetricRegistry metricRegistry) {
             return withTaggedMetrics(metricRegistry, "");
         }
 
+        /**
+         * Supplies a TaggedMetricRegistry and a name prefix to be used across service invocations, with timers which
+         * capture {@link ExemplarReservoir exemplars} of slow invocations linked to their trace IDs.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for this application.
+         * @param prefix - Metrics name prefix to be used
+         * @param reservoirSupplier - supplier of the reservoirs for each invoked method's timer
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withTaggedMetricsAndExemplars(
+                TaggedMetricRegistry metricRegistry, String prefix, Supplier<Reservoir> reservoirSupplier) {
+            return withTaggedMetrics(
+                    metricRegistry, prefix, ExemplarReservoir.timers(reservoirSupplier, TraceIds::currentTraceId));
+        }
+
         public Builder<T, U> withPerformanceTraceLogging() {
             return withLogging(getPerformanceLoggerForInterface(interfaceClass), LoggingLevel.TRACE, (LongPredicate)
                     LoggingInvocationEventHandler.LOG_DURATIONS_GREATER_THAN_1_MICROSECOND);
@@ -199,8 +282,162 @@ public final class Instrumentation {
             return this;
         }
 
+        /**
+         * Limits the number of concurrent invocations of the delegate. The limit adapts to the observed latency of
+         * invocations, growing while latency is stable and shrinking as latency rises, which sheds load before a
+         * backend degrades into latency collapse.
+         *
+         * <p>Invocations exceeding the limit wait up to {@code maxQueueWait} for a permit, and are then rejected with a
+         * {@link java.util.concurrent.RejectedExecutionException}. Rejections are visible as failures to the other
+         * handlers of this builder. Limiter metrics are named after the interface, see
+         * {@link ConcurrencyLimitingInvocationHandler}.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for limiter metrics
+         * @param scope - whether to limit each method independently or the interface as a whole
+         * @param maxQueueWait - maximum time to wait for a permit, zero to reject immediately
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withConcurrencyLimiter(
+                TaggedMetricRegistry metricRegistry, ConcurrencyLimiterScope scope, Duration maxQueueWait) {
+            this.limiterRegistry = checkNotNull(metricRegistry, "metricRegistry");
+            this.limiterScope = checkNotNull(scope, "scope");
+            this.limiterMaxQueueWait = checkNotNull(maxQueueWait, "maxQueueWait");
+            return this;
+        }
+
+        /**
+         * Collects invocations of interface methods annotated with {@link com.palantir.tritium.api.annotations.Batched}
+         * and dispatches them through the declared batch method once {@code maxBatchSize} invocations have been
+         * collected or {@code maxDelay} has elapsed since the first of them. Each invocation returns the result of the
+         * batch mapped to its argument. See {@link BatchingInvocationHandler} for batch method requirements and
+         * metrics.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for batching metrics
+         * @param maxBatchSize - maximum number of invocations dispatched in a single batch
+         * @param maxDelay - maximum time an invocation waits for its batch to fill
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withBatching(TaggedMetricRegistry metricRegistry, int maxBatchSize, Duration maxDelay) {
+            this.batchingRegistry = checkNotNull(metricRegistry, "metricRegistry");
+            this.batchingMaxBatchSize = maxBatchSize;
+            this.batchingMaxDelay = checkNotNull(maxDelay, "maxDelay");
+            return this;
+        }
+
+        /**
+         * Caches results of interface methods annotated with {@link com.palantir.tritium.api.annotations.Cached}, keyed
+         * by the invocation arguments, comparing array arguments by their contents. Cached invocations are visible to
+         * the other handlers of this builder, so their metrics reflect the latency observed by callers. Futures are
+         * cached while pending and removed if they fail.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for cache stats
+         * @param maximumSize - maximum number of entries cached for each method
+         * @param expireAfterWrite - time after which a cached result expires
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withCaching(
+                TaggedMetricRegistry metricRegistry, long maximumSize, Duration expireAfterWrite) {
+            return withCaching(metricRegistry, maximumSize, expireAfterWrite, CachingInvocationHandler::argumentsKey);
+        }
+
+        /**
+         * Caches results of interface methods annotated with {@link com.palantir.tritium.api.annotations.Cached}, keyed
+         * by the value derived from the invocation arguments by {@code keyFunction}. Keys must implement
+         * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for cache stats
+         * @param maximumSize - maximum number of entries cached for each method
+         * @param expireAfterWrite - time after which a cached result expires
+         * @param keyFunction - derives the cache key from the invocation arguments
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withCaching(
+                TaggedMetricRegistry metricRegistry,
+                long maximumSize,
+                Duration expireAfterWrite,
+                Function<Object[], ?> keyFunction) {
+            this.cacheRegistry = checkNotNull(metricRegistry, "metricRegistry");
+            this.cacheMaximumSize = maximumSize;
+            this.cacheExpireAfterWrite = checkNotNull(expireAfterWrite, "expireAfterWrite");
+            this.cacheKeyFunction = checkNotNull(keyFunction, "keyFunction");
+            return this;
+        }
+
+        /**
+         * Coalesces concurrent invocations of interface methods annotated with
+         * {@link com.palantir.tritium.api.annotations.Idempotent} that have equal arguments into a single invocation
+         * of the delegate, whose result or exception is shared by all of them. Coalesced invocations are visible to the
+         * other handlers of this builder, so their metrics reflect the latency observed by each caller, while the
+         * executed and coalesced meters distinguish them. See {@link CoalescingInvocationHandler} for supported return
+         * types and metrics.
+         *
+         * @param metricRegistry - TaggedMetricsRegistry used for coalescing metrics
+         * @return - InstrumentationBuilder
+         */
+        public Builder<T, U> withCoalescing(TaggedMetricRegistry metricRegistry) {
+            this.coalescingRegistry = checkNotNull(metricRegistry, "metricRegistry");
+            return this;
+        }
+
         public T build() {
-            return wrap(interfaceClass, delegate, handlers.build(), filter);
+            Invocable chain = decorate();
+            if (chain == null) {
+                return wrap(interfaceClass, delegate, handlers.build(), filter);
+            }
+            return Proxies.newProxy(
+                    interfaceClass,
+                    delegate,
+                    new InstrumentationProxy<>(filter, handlers.build(), delegate, chain));
+        }
+
+        /**
+         * Returns the chain of decorations of the delegate, or null if there are none. Decorations run within the
+         * instrumentation proxy, after the handlers, and apply from the outside in: caching, coalescing, batching and
+         * then concurrency limiting.
+         */
+        @Nullable
+        private Invocable decorate() {
+            Invocable chain = DelegatingInvocationHandler.delegate(delegate);
+            boolean decorated = false;
+            if (limiterRegistry != null) {
+                chain = new ConcurrencyLimitingInvocationHandler(
+                        chain,
+                        interfaceClass,
+                        limiterRegistry,
+                        interfaceClass.getName(),
+                        limiterScope,
+                        limiterMaxQueueWait);
+                decorated = true;
+            }
+            if (batchingRegistry != null) {
+                // batches are limited as a single invocation of the batch method
+                chain = new BatchingInvocationHandler(
+                        chain,
+                        interfaceClass,
+                        batchingRegistry,
+                        interfaceClass.getName(),
+                        batchingMaxBatchSize,
+                        batchingMaxDelay);
+                decorated = true;
+            }
+            if (coalescingRegistry != null) {
+                // only executed invocations are batched or limited
+                chain = new CoalescingInvocationHandler(
+                        chain, interfaceClass, coalescingRegistry, interfaceClass.getName());
+                decorated = true;
+            }
+            if (cacheRegistry != null) {
+                // cache hits are never coalesced, batched or limited
+                chain = new CachingInvocationHandler(
+                        chain,
+                        interfaceClass,
+                        cacheRegistry,
+                        cacheMaximumSize,
+                        cacheExpireAfterWrite,
+                        cacheKeyFunction);
+                decorated = true;
+            }
+            return decorated ? chain : null;
         }
     }
 }
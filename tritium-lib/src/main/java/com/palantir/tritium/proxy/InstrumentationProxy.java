@@ -33,6 +33,15 @@ class InstrumentationProxy<T> extends InvocationEventProxy {
         this.delegate = delegate;
     }
 
+    InstrumentationProxy(
+            InstrumentationFilter instrumentationFilter,
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            T delegate,
+            Invocable decorations) {
+        super(handlers, instrumentationFilter, decorations);
+        this.delegate = delegate;
+    }
+
     @Override
     T getDelegate() {
         return delegate;
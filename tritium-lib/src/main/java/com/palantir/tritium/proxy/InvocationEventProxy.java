@@ -44,6 +44,9 @@ abstract class InvocationEventProxy implements InvocationHandler {
     private final InstrumentationFilter filter;
     private final InvocationEventHandler<?> eventHandler;
 
+    @Nullable
+    private final Invocable decorations;
+
     /**
      * Always enabled instrumentation handler.
      *
@@ -55,10 +58,22 @@ abstract class InvocationEventProxy implements InvocationHandler {
 
     protected InvocationEventProxy(
             List<InvocationEventHandler<InvocationContext>> handlers, InstrumentationFilter filter) {
+        this(handlers, filter, null);
+    }
+
+    /**
+     * Instrumentation handler which invokes the delegate through the specified chain of
+     * {@link DelegatingInvocationHandler} decorations, if any, so that handlers observe decorated invocations.
+     */
+    protected InvocationEventProxy(
+            List<InvocationEventHandler<InvocationContext>> handlers,
+            InstrumentationFilter filter,
+            @Nullable Invocable decorations) {
         checkNotNull(filter, "filter");
         checkNotNull(handlers, "handlers");
         this.eventHandler = CompositeInvocationEventHandler.of(handlers);
         this.filter = filter;
+        this.decorations = decorations;
     }
 
     /**
@@ -98,7 +113,9 @@ abstract class InvocationEventProxy implements InvocationHandler {
         if (isEnabled(proxy, method, arguments)) {
             InvocationContext context = handlePreInvocation(proxy, method, arguments);
             try {
-                Object result = method.invoke(getDelegate(), arguments);
+                Object result = decorations == null
+                        ? method.invoke(getDelegate(), arguments)
+                        : invokeDecorated(decorations, method, arguments);
                 return handleOnSuccess(context, result);
             } catch (InvocationTargetException ite) {
                 throw handleOnFailure(context, ite.getCause());
@@ -107,13 +124,26 @@ abstract class InvocationEventProxy implements InvocationHandler {
             }
         } else {
             try {
-                return method.invoke(getDelegate(), arguments);
+                return decorations == null
+                        ? method.invoke(getDelegate(), arguments)
+                        : invokeDecorated(decorations, method, arguments);
             } catch (InvocationTargetException e) {
                 throw e.getCause();
             }
         }
     }
 
+    /** Wraps failures of decorated invocations like {@link Method#invoke} wraps those of the delegate. */
+    @Nullable
+    private static Object invokeDecorated(Invocable decorations, Method method, Object[] arguments)
+            throws InvocationTargetException {
+        try {
+            return decorations.invoke(method, arguments);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
     private static boolean isSpecialMethod(Method method, Object[] arguments) {
         return isHashCode(method, arguments) || isEquals(method, arguments) || isToString(method, arguments);
     }
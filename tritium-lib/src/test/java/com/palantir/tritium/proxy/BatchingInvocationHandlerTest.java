@@ -0,0 +1,167 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableSet;
+import com.palantir.tritium.api.annotations.Batched;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public final class BatchingInvocationHandlerTest {
+
+    public interface Service {
+        @Batched("getAll")
+        String get(String id);
+
+        Map<String, String> getAll(Set<String> ids);
+    }
+
+    public interface InvalidService {
+        @Batched("missing")
+        String get(String id);
+    }
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+    private final Service delegate = new Service() {
+        @Override
+        public String get(String id) {
+            throw new UnsupportedOperationException("single item calls should be batched");
+        }
+
+        @Override
+        public Map<String, String> getAll(Set<String> ids) {
+            batches.add(ids);
+            if (ids.contains("fail")) {
+                throw new IllegalStateException("failed");
+            }
+            return ids.stream()
+                    .filter(id -> !id.equals("missing"))
+                    .collect(Collectors.toMap(Function.identity(), id -> "value-" + id));
+        }
+    };
+
+    @AfterEach
+    void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testBatchesByCount() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withBatching(registry, 4, Duration.ofMinutes(1))
+                .build();
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String id = Integer.toString(i);
+            futures.add(executor.submit(() -> service.get(id)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get(10, TimeUnit.SECONDS)).isEqualTo("value-" + i);
+        }
+        assertThat(batches).hasSize(2).allSatisfy(batch -> assertThat(batch).hasSize(4));
+
+        Histogram batchSize = registry.histogram(name("batching-batch-size"));
+        assertThat(batchSize.getCount()).isEqualTo(2);
+        assertThat(batchSize.getSnapshot().getMin()).isEqualTo(4);
+        assertThat(registry.timer(name("batching-queue-delay")).getCount()).isEqualTo(8);
+    }
+
+    @Test
+    void testBatchesByTime() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withBatching(registry, 100, Duration.ofMillis(50))
+                .build();
+
+        assertThat(service.get("a")).isEqualTo("value-a");
+        assertThat(batches).containsExactly(ImmutableSet.of("a"));
+        Timer queueDelay = registry.timer(name("batching-queue-delay"));
+        assertThat(queueDelay.getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void testMissingResultIsNull() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withBatching(registry, 1, Duration.ZERO)
+                .build();
+
+        assertThat(service.get("missing")).isNull();
+    }
+
+    @Test
+    void testBatchFailureFailsAllItems() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withBatching(registry, 2, Duration.ofMinutes(1))
+                .build();
+
+        Future<String> first = executor.submit(() -> service.get("fail"));
+        Future<String> second = executor.submit(() -> service.get("b"));
+        assertThatThrownBy(first::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("failed");
+        assertThatThrownBy(second::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("failed");
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    void testBatchMethodIsNotBatched() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withBatching(registry, 100, Duration.ofMinutes(1))
+                .build();
+
+        assertThat(service.getAll(ImmutableSet.of("a"))).containsEntry("a", "value-a");
+    }
+
+    @Test
+    void testInvalidBatchMethod() {
+        InvalidService invalid = id -> id;
+        assertThatThrownBy(() -> Instrumentation.builder(InvalidService.class, invalid)
+                        .withBatching(registry, 10, Duration.ofMillis(1))
+                        .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Batch method");
+    }
+
+    private static MetricName name(String suffix) {
+        return MetricName.builder()
+                .safeName(Service.class.getName() + "-" + suffix)
+                .putSafeTags("service-name", "Service")
+                .putSafeTags("endpoint", "get")
+                .build();
+    }
+}
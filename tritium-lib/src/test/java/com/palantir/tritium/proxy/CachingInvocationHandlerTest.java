@@ -0,0 +1,229 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.palantir.tritium.api.annotations.Cached;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+public final class CachingInvocationHandlerTest {
+
+    public interface Service {
+        @Cached
+        String lookup(String key, int version);
+
+        @Cached
+        String failing(String key) throws IOException;
+
+        String uncached(String key);
+    }
+
+    public interface AsyncService {
+        @Cached
+        CompletableFuture<String> lookup(String key);
+
+        @Cached
+        String join(String[] parts);
+    }
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final Service delegate = new Service() {
+        @Override
+        public String lookup(String key, int version) {
+            invocations.incrementAndGet();
+            return key + version;
+        }
+
+        @Override
+        public String failing(String key) throws IOException {
+            invocations.incrementAndGet();
+            throw new IOException(key);
+        }
+
+        @Override
+        public String uncached(String key) {
+            invocations.incrementAndGet();
+            return key;
+        }
+    };
+
+    @Test
+    void testCachesAnnotatedMethods() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withTaggedMetrics(registry)
+                .withCaching(registry, 100, Duration.ofMinutes(1))
+                .build();
+
+        assertThat(service.lookup("a", 1)).isEqualTo("a1");
+        assertThat(service.lookup("a", 1)).isEqualTo("a1");
+        assertThat(service.lookup("a", 2)).isEqualTo("a2");
+        assertThat(invocations).hasValue(2);
+
+        assertThat(service.uncached("b")).isEqualTo("b");
+        assertThat(service.uncached("b")).isEqualTo("b");
+        assertThat(invocations).hasValue(4);
+
+        assertThat(cacheGauge("cache.hit.count", "lookup").getValue()).isEqualTo(1L);
+        assertThat(cacheGauge("cache.miss.count", "lookup").getValue()).isEqualTo(2L);
+        assertThat(cacheGauge("cache.load.success.count", "lookup").getValue()).isEqualTo(2L);
+        // cache hits are visible to instrumentation
+        assertThat(registry.timer(MetricName.builder()
+                                .safeName(Service.class.getName())
+                                .putSafeTags("service-name", "Service")
+                                .putSafeTags("endpoint", "lookup")
+                                .build())
+                        .getCount())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void testCustomKeyFunction() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withCaching(registry, 100, Duration.ofMinutes(1), args -> args[0])
+                .build();
+
+        assertThat(service.lookup("a", 1)).isEqualTo("a1");
+        assertThat(service.lookup("a", 2)).isEqualTo("a1");
+        assertThat(invocations).hasValue(1);
+    }
+
+    @Test
+    void testExceptionsAreNotCached() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withCaching(registry, 100, Duration.ofMinutes(1))
+                .build();
+
+        assertThatThrownBy(() -> service.failing("x")).isInstanceOf(IOException.class).hasMessage("x");
+        assertThatThrownBy(() -> service.failing("x")).isInstanceOf(IOException.class).hasMessage("x");
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    void testFailedFuturesAreNotCached() {
+        Queue<CompletableFuture<String>> results = new ArrayDeque<>();
+        AsyncService service = Instrumentation.builder(AsyncService.class, asyncService(results))
+                .withCaching(registry, 100, Duration.ofMinutes(1))
+                .build();
+
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        results.add(failing);
+        assertThat(service.lookup("a")).isSameAs(failing);
+        // pending futures are shared
+        assertThat(service.lookup("a")).isSameAs(failing);
+        failing.completeExceptionally(new IOException("a"));
+
+        CompletableFuture<String> succeeding = CompletableFuture.completedFuture("a");
+        results.add(succeeding);
+        assertThat(service.lookup("a")).isSameAs(succeeding);
+        assertThat(service.lookup("a")).isSameAs(succeeding);
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    void testArrayArgumentsAreComparedByContents() {
+        AsyncService service = Instrumentation.builder(AsyncService.class, asyncService(new ArrayDeque<>()))
+                .withCaching(registry, 100, Duration.ofMinutes(1))
+                .build();
+
+        String[] parts = {"a", "b"};
+        assertThat(service.join(parts)).isEqualTo("ab");
+        // modifying the array after the invocation does not modify the cached key
+        parts[1] = "c";
+        assertThat(service.join(new String[] {"a", "b"})).isEqualTo("ab");
+        assertThat(service.join(parts)).isEqualTo("ac");
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    void testLoadsMayInvokeCachedMethods() {
+        AtomicReference<Service> proxy = new AtomicReference<>();
+        Service recursive = new Service() {
+            @Override
+            public String lookup(String key, int version) {
+                invocations.incrementAndGet();
+                return version == 0 ? key : proxy.get().lookup(key, version - 1) + version;
+            }
+
+            @Override
+            public String failing(String key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String uncached(String key) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        proxy.set(Instrumentation.builder(Service.class, recursive)
+                .withCaching(registry, 100, Duration.ofMinutes(1))
+                .build());
+
+        assertThat(proxy.get().lookup("a", 20)).isEqualTo("a1234567891011121314151617181920");
+        assertThat(proxy.get().lookup("a", 10)).isEqualTo("a12345678910");
+        assertThat(invocations).hasValue(21);
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThatThrownBy(() -> Instrumentation.builder(Service.class, delegate)
+                        .withCaching(registry, 100, Duration.ZERO)
+                        .build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsyncService asyncService(Queue<CompletableFuture<String>> results) {
+        return new AsyncService() {
+            @Override
+            public CompletableFuture<String> lookup(String _key) {
+                invocations.incrementAndGet();
+                return results.remove();
+            }
+
+            @Override
+            public String join(String[] parts) {
+                invocations.incrementAndGet();
+                return String.join("", parts);
+            }
+        };
+    }
+
+    private Gauge<Long> cacheGauge(String safeName, String endpoint) {
+        Metric metric = registry.getMetrics()
+                .get(MetricName.builder()
+                        .safeName(safeName)
+                        .putSafeTags("service-name", "Service")
+                        .putSafeTags("endpoint", endpoint)
+                        .build());
+        return (Gauge<Long>) metric;
+    }
+}
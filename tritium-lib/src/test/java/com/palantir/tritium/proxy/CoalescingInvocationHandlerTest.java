@@ -0,0 +1,286 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.palantir.tritium.api.annotations.Idempotent;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public final class CoalescingInvocationHandlerTest {
+
+    public interface Service {
+        @Idempotent
+        String get(String key) throws IOException;
+
+        @Idempotent
+        CompletableFuture<String> getAsync(String key);
+
+        @Idempotent
+        ListenableFuture<String> getListenable(String key);
+
+        String notIdempotent(String key);
+    }
+
+    private static final int CALLERS = 8;
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        threads.add(thread);
+        return thread;
+    });
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CompletableFuture<String> asyncResult = new CompletableFuture<>();
+    private final SettableFuture<String> listenableResult = SettableFuture.create();
+    private final Service delegate = new Service() {
+        @Override
+        public String get(String key) throws IOException {
+            invocations.incrementAndGet();
+            awaitRelease();
+            if (key.equals("fail")) {
+                throw new IOException("failed");
+            }
+            return key;
+        }
+
+        @Override
+        public CompletableFuture<String> getAsync(String key) {
+            invocations.incrementAndGet();
+            return asyncResult;
+        }
+
+        @Override
+        public ListenableFuture<String> getListenable(String key) {
+            invocations.incrementAndGet();
+            return listenableResult;
+        }
+
+        @Override
+        public String notIdempotent(String key) {
+            invocations.incrementAndGet();
+            awaitRelease();
+            return key;
+        }
+    };
+
+    private final Service service = Instrumentation.builder(Service.class, delegate)
+            .withTaggedMetrics(registry)
+            .withCoalescing(registry)
+            .build();
+
+    @AfterEach
+    void after() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testCoalescesConcurrentInvocations() throws Exception {
+        List<Future<String>> futures = submit(() -> service.get("a"));
+        awaitCallersBlocked();
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("a");
+        }
+        assertThat(invocations).hasValue(1);
+        assertThat(meter("executed", "get")).isOne();
+        assertThat(meter("coalesced", "get")).isEqualTo(CALLERS - 1);
+        // coalesced invocations are timed like any other invocation
+        assertThat(registry.timer(MetricName.builder()
+                                .safeName(Service.class.getName())
+                                .putSafeTags("service-name", "Service")
+                                .putSafeTags("endpoint", "get")
+                                .build())
+                        .getCount())
+                .isEqualTo(CALLERS);
+
+        // completed invocations are no longer shared
+        assertThat(service.get("a")).isEqualTo("a");
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    void testDifferentArgumentsAreNotCoalesced() throws Exception {
+        release.countDown();
+        assertThat(service.get("a")).isEqualTo("a");
+        assertThat(service.get("b")).isEqualTo("b");
+        assertThat(invocations).hasValue(2);
+        assertThat(meter("coalesced", "get")).isZero();
+    }
+
+    @Test
+    void testExceptionsAreShared() throws Exception {
+        List<Future<String>> futures = submit(() -> service.get("fail"));
+        awaitCallersBlocked();
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertThatThrownBy(future::get)
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IOException.class);
+        }
+        assertThat(invocations).hasValue(1);
+    }
+
+    @Test
+    void testCompletableFutureInFlightUntilComplete() throws Exception {
+        CompletableFuture<String> first = service.getAsync("a");
+        CompletableFuture<String> second = service.getAsync("a");
+        assertThat(invocations).hasValue(1);
+        assertThat(meter("coalesced", "getAsync")).isOne();
+
+        // cancelling a coalesced view does not cancel the shared invocation
+        second.cancel(true);
+        assertThat(first).isNotCancelled();
+
+        asyncResult.complete("done");
+        assertThat(first.get()).isEqualTo("done");
+        assertThat(service.getAsync("a").get()).isEqualTo("done");
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    void testListenableFutureInFlightUntilComplete() throws Exception {
+        ListenableFuture<String> first = service.getListenable("a");
+        ListenableFuture<String> second = service.getListenable("a");
+        assertThat(invocations).hasValue(1);
+
+        listenableResult.set("done");
+        assertThat(first.get()).isEqualTo("done");
+        assertThat(second.get()).isEqualTo("done");
+        service.getListenable("a");
+        assertThat(invocations).hasValue(2);
+        assertThat(meter("executed", "getListenable")).isEqualTo(2);
+    }
+
+    @Test
+    void testReentrantInvocationsAreNotCoalesced() throws Exception {
+        AtomicReference<Service> proxy = new AtomicReference<>();
+        Service reentrant = new Service() {
+            @Override
+            public String get(String key) throws IOException {
+                return invocations.incrementAndGet() == 1 ? proxy.get().get(key) : key;
+            }
+
+            @Override
+            public CompletableFuture<String> getAsync(String key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ListenableFuture<String> getListenable(String key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String notIdempotent(String key) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        proxy.set(Instrumentation.builder(Service.class, reentrant)
+                .withCoalescing(registry)
+                .build());
+
+        assertThat(executor.submit(() -> proxy.get().get("a")).get(5, TimeUnit.SECONDS))
+                .isEqualTo("a");
+        assertThat(invocations).hasValue(2);
+        assertThat(meter("coalesced", "get")).isZero();
+    }
+
+    @Test
+    void testInterruptedInvocationsExecute() throws Exception {
+        Future<String> executing = executor.submit(() -> service.get("a"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> invocations.get() == 1);
+        Future<Boolean> interrupted = executor.submit(() -> {
+            Thread.currentThread().interrupt();
+            assertThat(service.get("a")).isEqualTo("a");
+            return Thread.currentThread().isInterrupted();
+        });
+        assertThat(interrupted.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(invocations).hasValue(2);
+        assertThat(meter("executed", "get")).isEqualTo(2);
+        assertThat(meter("coalesced", "get")).isZero();
+        release.countDown();
+        assertThat(executing.get()).isEqualTo("a");
+    }
+
+    @Test
+    void testNotIdempotentIsNotCoalesced() throws Exception {
+        List<Future<String>> futures = submit(() -> service.notIdempotent("a"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> invocations.get() == CALLERS);
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("a");
+        }
+    }
+
+    private List<Future<String>> submit(Callable<String> callable) {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(callable));
+        }
+        return futures;
+    }
+
+    /** Waits until every caller either executes the invocation or waits on its shared outcome. */
+    private void awaitCallersBlocked() {
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> threads.size() == CALLERS
+                        && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING));
+    }
+
+    private long meter(String suffix, String endpoint) {
+        return registry.meter(MetricName.builder()
+                        .safeName(Service.class.getName() + "-coalescing-" + suffix)
+                        .putSafeTags("service-name", "Service")
+                        .putSafeTags("endpoint", endpoint)
+                        .build())
+                .getCount();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public final class ConcurrencyLimiterTest {
+
+    public interface Service {
+        String block() throws InterruptedException;
+
+        String fast();
+    }
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final CountDownLatch blocked = new CountDownLatch(ConcurrencyLimiter.INITIAL_LIMIT);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Service delegate = new Service() {
+        @Override
+        public String block() throws InterruptedException {
+            blocked.countDown();
+            release.await();
+            return "blocked";
+        }
+
+        @Override
+        public String fast() {
+            return "fast";
+        }
+    };
+
+    @AfterEach
+    void after() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testRejectsWhenLimitExceeded() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withTaggedMetrics(registry)
+                .withConcurrencyLimiter(registry, ConcurrencyLimiterScope.INTERFACE, Duration.ZERO)
+                .build();
+        List<Future<String>> futures = saturate(service);
+
+        assertThat(gauge("limiter-in-flight", null).getValue()).isEqualTo(ConcurrencyLimiter.INITIAL_LIMIT);
+        assertThatThrownBy(service::fast).isInstanceOf(RejectedExecutionException.class);
+        assertThat(registry.meter(name("limiter-rejected", null)).getCount()).isOne();
+        // rejections are visible to instrumentation as failures
+        assertThat(registry.getMetrics().keySet())
+                .anySatisfy(metricName -> assertThat(metricName.safeTags())
+                        .containsEntry("cause", RejectedExecutionException.class.getName()));
+
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("blocked");
+        }
+        assertThat(service.fast()).isEqualTo("fast");
+        assertThat(gauge("limiter-in-flight", null).getValue()).isZero();
+    }
+
+    @Test
+    void testQueuesUntilPermitAvailable() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withConcurrencyLimiter(registry, ConcurrencyLimiterScope.INTERFACE, Duration.ofMinutes(1))
+                .build();
+        List<Future<String>> futures = saturate(service);
+
+        Future<String> queued = executor.submit(service::fast);
+        assertThatThrownBy(() -> queued.get(100, TimeUnit.MILLISECONDS))
+                .isInstanceOf(java.util.concurrent.TimeoutException.class);
+        release.countDown();
+        assertThat(queued.get()).isEqualTo("fast");
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("blocked");
+        }
+        Timer queueWait = registry.timer(name("limiter-queue-wait", null));
+        assertThat(queueWait.getCount()).isOne();
+        assertThat(queueWait.getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(registry.meter(name("limiter-rejected", null)).getCount()).isZero();
+    }
+
+    @Test
+    void testQueueTimeout() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withConcurrencyLimiter(registry, ConcurrencyLimiterScope.INTERFACE, Duration.ofMillis(10))
+                .build();
+        saturate(service);
+        assertThatThrownBy(service::fast).isInstanceOf(RejectedExecutionException.class);
+        assertThat(registry.meter(name("limiter-rejected", null)).getCount()).isOne();
+        assertThat(registry.timer(name("limiter-queue-wait", null)).getCount()).isOne();
+    }
+
+    @Test
+    void testMethodScope() throws Exception {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withConcurrencyLimiter(registry, ConcurrencyLimiterScope.METHOD, Duration.ZERO)
+                .build();
+        saturate(service);
+        assertThat(service.fast()).isEqualTo("fast");
+        assertThat(gauge("limiter-in-flight", "block").getValue()).isEqualTo(ConcurrencyLimiter.INITIAL_LIMIT);
+        assertThat(gauge("limiter-limit", "fast").getValue()).isPositive();
+        assertThatThrownBy(service::block).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void testObjectMethods() {
+        Service service = Instrumentation.builder(Service.class, delegate)
+                .withConcurrencyLimiter(registry, ConcurrencyLimiterScope.INTERFACE, Duration.ZERO)
+                .build();
+        assertThat(service.toString()).isEqualTo(delegate.toString());
+        assertThat(service).isEqualTo(service);
+        assertThat(service.hashCode()).isEqualTo(service.hashCode());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyIsStable() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(0, new Meter(), new Timer());
+        for (int i = 0; i < 1000; i++) {
+            limiter.update(1_000_000, limiter.limit());
+        }
+        assertThat(limiter.limit()).isEqualTo(ConcurrencyLimiter.MAX_LIMIT);
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenUnderutilized() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(0, new Meter(), new Timer());
+        for (int i = 0; i < 1000; i++) {
+            limiter.update(1_000_000, 1);
+        }
+        assertThat(limiter.limit()).isEqualTo(ConcurrencyLimiter.INITIAL_LIMIT);
+    }
+
+    @Test
+    void testLimitShrinksAsLatencyIncreases() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(0, new Meter(), new Timer());
+        for (int i = 0; i < 100; i++) {
+            limiter.update(1_000_000, limiter.limit());
+        }
+        int stableLimit = limiter.limit();
+        for (int i = 0; i < 20; i++) {
+            limiter.update(10_000_000, limiter.limit());
+        }
+        assertThat(limiter.limit()).isLessThan(stableLimit / 4);
+        for (int i = 0; i < 1000; i++) {
+            limiter.update(100_000_000, limiter.limit());
+        }
+        assertThat(limiter.limit()).isGreaterThanOrEqualTo(ConcurrencyLimiter.MIN_LIMIT);
+    }
+
+    private List<Future<String>> saturate(Service service) throws InterruptedException {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < ConcurrencyLimiter.INITIAL_LIMIT; i++) {
+            futures.add(executor.submit(service::block));
+        }
+        blocked.await();
+        return futures;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Gauge<Integer> gauge(String suffix, String endpoint) {
+        return (Gauge<Integer>) registry.getMetrics().get(name(suffix, endpoint));
+    }
+
+    private static MetricName name(String suffix, String endpoint) {
+        MetricName.Builder builder = MetricName.builder()
+                .safeName(Service.class.getName() + "-" + suffix)
+                .putSafeTags("service-name", "Service");
+        if (endpoint != null) {
+            builder.putSafeTags("endpoint", endpoint);
+        }
+        return builder.build();
+    }
+}
@@ -34,6 +34,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Slf4jReporter;
 import com.codahale.metrics.Slf4jReporter.LoggingLevel;
 import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Runnables;
@@ -51,6 +52,7 @@ import com.palantir.tritium.event.metrics.TaggedMetricsServiceInvocationEventHan
 import com.palantir.tritium.event.metrics.annotations.MetricGroup;
 import com.palantir.tritium.metrics.MetricRegistries;
 import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.ExemplarSnapshot;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import com.palantir.tritium.test.LessSpecificReturn;
@@ -398,6 +400,25 @@ public abstract class InstrumentationTest {
                 .isEqualTo(1L);
     }
 
+    @Test
+    void testTaggedMetricsAndExemplars() {
+        TestImplementation delegate = new TestImplementation();
+        TestInterface runnable = Instrumentation.builder(TestInterface.class, delegate)
+                .withTaggedMetricsAndExemplars(taggedMetricRegistry, "testPrefix", UniformReservoir::new)
+                .build();
+        runnable.test();
+        Timer timer = taggedMetricRegistry.timer(MetricName.builder()
+                .safeName("testPrefix")
+                .putSafeTags("service-name", "TestInterface")
+                .putSafeTags("endpoint", "test")
+                .build());
+        assertThat(timer.getCount()).isOne();
+        assertThat(timer.getSnapshot())
+                .isInstanceOfSatisfying(ExemplarSnapshot.class, snapshot -> assertThat(snapshot.exemplars())
+                        .hasSize(1)
+                        .allSatisfy(exemplar -> assertThat(exemplar.traceId()).isEmpty()));
+    }
+
     @Test
     void testInaccessibleConstructor() throws NoSuchMethodException {
         Constructor<Instrumentation> constructor = Instrumentation.class.getDeclaredConstructor();
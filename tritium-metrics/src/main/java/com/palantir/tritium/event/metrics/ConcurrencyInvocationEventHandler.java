@@ -0,0 +1,269 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Gauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link AbstractInvocationEventHandler} which tracks the number of concurrent invocations of each endpoint.
+ * Together with the rate and latency recorded by {@link TaggedMetricsServiceInvocationEventHandler}, these gauges
+ * complete a Little's law view of a service.
+ *
+ * <p>Specifically, this class will generate gauges with the following parameters:
+ *
+ * <ul>
+ *   <li>{@code <serviceName>-concurrency}: current number of in-flight invocations
+ *   <li>{@code <serviceName>-concurrency-max}: maximum number of in-flight invocations since the gauge was last read
+ *   <li>{@code <serviceName>-concurrency-mean}: time-weighted average number of in-flight invocations since the gauge
+ *       was last read
+ *   <li>Tag - service-name: The simple name of the invoked class
+ *   <li>Tag - endpoint: The name of the method that was invoked
+ * </ul>
+ *
+ * <p>The max and mean gauges reset when read, so they should only be read by a single reporter. Invocations are
+ * counted in cells striped by the starting thread, each padded to its own cache line, so that concurrent invocations do
+ * not contend on a shared count. The max is the sum of the peaks of each cell since the last read, which is an upper
+ * bound of the peak concurrency of the endpoint, and is exact when cells peak together.
+ */
+public final class ConcurrencyInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+    private final ConcurrentMap<Method, EndpointConcurrency> endpointCache = new ConcurrentHashMap<>();
+    private final Function<Method, EndpointConcurrency> endpointMappingFunction;
+    private final Clock clock;
+
+    public ConcurrencyInvocationEventHandler(TaggedMetricRegistry taggedMetricRegistry, String serviceName) {
+        this(taggedMetricRegistry, serviceName, Clock.defaultClock());
+    }
+
+    @VisibleForTesting
+    ConcurrencyInvocationEventHandler(TaggedMetricRegistry taggedMetricRegistry, String serviceName, Clock clock) {
+        super(getEnabledSupplier(serviceName));
+        checkNotNull(taggedMetricRegistry, "metricRegistry");
+        checkNotNull(serviceName, "serviceName");
+        this.clock = checkNotNull(clock, "clock");
+        this.endpointMappingFunction = method -> register(taggedMetricRegistry, serviceName, method);
+    }
+
+    @SuppressWarnings("NoFunctionalReturnType") // helper
+    private static BooleanSupplier getEnabledSupplier(String serviceName) {
+        return InstrumentationProperties.getSystemPropertySupplier(serviceName);
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        EndpointConcurrency endpoint = endpointCache.computeIfAbsent(method, endpointMappingFunction);
+        long startTick = clock.getTick();
+        Cell cell = endpoint.start(startTick);
+        return new ConcurrencyInvocationContext(startTick, instance, method, args, endpoint, cell);
+    }
+
+    @Override
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+        complete(context);
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+        complete(context);
+    }
+
+    private void complete(@Nullable InvocationContext context) {
+        debugIfNullContext(context);
+        if (context instanceof ConcurrencyInvocationContext) {
+            ConcurrencyInvocationContext concurrencyContext = (ConcurrencyInvocationContext) context;
+            concurrencyContext.endpoint.complete(concurrencyContext.cell, clock.getTick());
+        }
+    }
+
+    private EndpointConcurrency register(TaggedMetricRegistry registry, String serviceName, Method method) {
+        EndpointConcurrency endpoint = new EndpointConcurrency(clock.getTick());
+        registry.registerWithReplacement(
+                name(serviceName + "-concurrency", method), (Gauge<Long>) endpoint::current);
+        registry.registerWithReplacement(
+                name(serviceName + "-concurrency-max", method), (Gauge<Long>) endpoint::maxAndReset);
+        registry.registerWithReplacement(
+                name(serviceName + "-concurrency-mean", method), (Gauge<Double>) () -> endpoint.meanAndReset(clock));
+        return endpoint;
+    }
+
+    private static MetricName name(String safeName, Method method) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
+                .putSafeTags("endpoint", method.getName())
+                .build();
+    }
+
+    private static final class ConcurrencyInvocationContext extends DefaultInvocationContext {
+        private final EndpointConcurrency endpoint;
+        private final Cell cell;
+
+        ConcurrencyInvocationContext(
+                long startTimeNanos,
+                Object instance,
+                Method method,
+                Object[] args,
+                EndpointConcurrency endpoint,
+                Cell cell) {
+            super(startTimeNanos, instance, method, args);
+            this.endpoint = endpoint;
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * Concurrency of a single endpoint. The integral of concurrency over time is tracked in striped cells, each holding
+     * the number of invocations in flight which started on it and the sum of completed ticks less started ticks, such
+     * that at any tick {@code t} the integral is the sum of {@code count * t + ticks} over all cells. An invocation
+     * completes on the cell it started on, even if it completes on another thread, so the count of each cell is never
+     * negative. Each cell is updated atomically so a concurrent read can only miss whole start or completion events,
+     * which bounds the error of a read by its own duration.
+     */
+    private static final class EndpointConcurrency {
+        private static final int CELLS =
+                Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+
+        private final Cell[] cells = new Cell[CELLS];
+        private final long origin;
+
+        // guarded by this
+        private long lastReadTick;
+        private long lastReadIntegral;
+
+        EndpointConcurrency(long origin) {
+            this.origin = origin;
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = new Cell();
+            }
+        }
+
+        Cell start(long tick) {
+            Cell cell = cells[(int) Thread.currentThread().getId() & (cells.length - 1)];
+            cell.start(tick - origin);
+            return cell;
+        }
+
+        void complete(Cell cell, long tick) {
+            cell.complete(tick - origin);
+        }
+
+        long current() {
+            long current = 0;
+            for (Cell cell : cells) {
+                current += cell.count();
+            }
+            return current;
+        }
+
+        long maxAndReset() {
+            long max = 0;
+            for (Cell cell : cells) {
+                max += cell.peakAndReset();
+            }
+            return max;
+        }
+
+        synchronized double meanAndReset(Clock clock) {
+            long tick = clock.getTick() - origin;
+            long integral = 0;
+            for (Cell cell : cells) {
+                integral += cell.integral(tick);
+            }
+            long elapsed = tick - lastReadTick;
+            double mean = elapsed > 0 ? (double) (integral - lastReadIntegral) / elapsed : current();
+            lastReadTick = tick;
+            lastReadIntegral = integral;
+            return mean;
+        }
+    }
+
+    /** Cache line of padding laid out before the fields of a {@link Cell}. */
+    @SuppressWarnings("unused")
+    private static class CellPadding {
+        long p1;
+        long p2;
+        long p3;
+        long p4;
+        long p5;
+        long p6;
+        long p7;
+    }
+
+    /**
+     * Cell padded on both sides, so that updates from threads on adjacent cells do not contend for the same cache line.
+     */
+    @SuppressWarnings("unused")
+    private static final class Cell extends CellPadding {
+        private long count;
+        private long ticks;
+        private long peak;
+
+        // trailing padding, as the fields of a class are laid out after those of its superclass
+        long q1;
+        long q2;
+        long q3;
+        long q4;
+        long q5;
+        long q6;
+        long q7;
+
+        synchronized void start(long tick) {
+            count++;
+            ticks -= tick;
+            if (count > peak) {
+                peak = count;
+            }
+        }
+
+        synchronized void complete(long tick) {
+            count--;
+            ticks += tick;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        /** Returns the peak count since the previous call, resetting it to the current count. */
+        synchronized long peakAndReset() {
+            long result = peak;
+            peak = count;
+            return result;
+        }
+
+        synchronized long integral(long tick) {
+            return count * tick + ticks;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link AbstractInvocationEventHandler} which tracks invocations that are currently executing, so that hung or
+ * saturated dependencies are visible before the calls complete.
+ *
+ * <p>In-flight invocations are stored in a fixed size array of slots. Each thread starts probing for a free slot at its
+ * own stripe of the array, so registering and completing an invocation is a single uncontended compare-and-set in the
+ * common case. A watchdog thread periodically scans the slots and publishes the following gauges:
+ *
+ * <ul>
+ *   <li>{@code <serviceName>-in-flight}: number of in-flight invocations of the endpoint
+ *   <li>{@code <serviceName>-in-flight-oldest-age}: age in milliseconds of the oldest in-flight invocation of the
+ *       endpoint
+ * </ul>
+ *
+ * Both gauges are tagged with service-name (the simple name of the invoked class) and endpoint (the invoked method
+ * name). Invocations which are older than the stuck threshold have the stack trace of their thread captured once into
+ * a bounded ring buffer, available via {@link #stuckInvocations()}. Invocations started while all probed slots are
+ * occupied are not tracked and are counted by {@code <serviceName>-in-flight-untracked}.
+ */
+public final class InFlightInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext>
+        implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(InFlightInvocationEventHandler.class);
+
+    private static final int DEFAULT_SLOTS = 4096;
+    private static final int DEFAULT_STUCK_CAPACITY = 64;
+    private static final int STRIPE_SIZE = 16;
+    private static final int MAX_PROBES = 256;
+
+    private final TaggedMetricRegistry registry;
+    private final String serviceName;
+    private final long stuckThresholdNanos;
+    private final AtomicReferenceArray<InFlightInvocationContext> slots;
+    private final int slotMask;
+    private final MetricName untrackedName;
+    private final Counter untracked;
+    private final ConcurrentMap<Method, EndpointState> endpoints = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<StuckInvocation> stuck;
+    private volatile long stuckWrites;
+
+    @Nullable
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Creates a handler whose watchdog thread scans in-flight invocations at the specified interval.
+     *
+     * @param registry metric registry
+     * @param serviceName service name
+     * @param stuckThreshold age after which the stack trace of an in-flight invocation is captured
+     * @param scanInterval interval between watchdog scans
+     */
+    public InFlightInvocationEventHandler(
+            TaggedMetricRegistry registry, String serviceName, Duration stuckThreshold, Duration scanInterval) {
+        this(registry, serviceName, stuckThreshold, DEFAULT_SLOTS, DEFAULT_STUCK_CAPACITY, newWatchdog(serviceName));
+        checkArgument(!scanInterval.isNegative() && !scanInterval.isZero(), "scanInterval must be positive");
+        checkNotNull(watchdog, "watchdog")
+                .scheduleWithFixedDelay(
+                        this::scanSafely, scanInterval.toNanos(), scanInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @VisibleForTesting
+    InFlightInvocationEventHandler(
+            TaggedMetricRegistry registry,
+            String serviceName,
+            Duration stuckThreshold,
+            int slotCount,
+            int stuckCapacity,
+            @Nullable ScheduledExecutorService watchdog) {
+        super(getEnabledSupplier(serviceName));
+        this.registry = checkNotNull(registry, "registry");
+        this.serviceName = checkNotNull(serviceName, "serviceName");
+        checkArgument(!stuckThreshold.isNegative(), "stuckThreshold must not be negative");
+        checkArgument(
+                slotCount > 0 && Integer.bitCount(slotCount) == 1,
+                "slotCount must be a positive power of two",
+                SafeArg.of("slotCount", slotCount));
+        checkArgument(stuckCapacity > 0, "stuckCapacity must be positive", SafeArg.of("stuckCapacity", stuckCapacity));
+        this.stuckThresholdNanos = stuckThreshold.toNanos();
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.slotMask = slotCount - 1;
+        this.stuck = new AtomicReferenceArray<>(stuckCapacity);
+        this.untrackedName =
+                MetricName.builder().safeName(serviceName + "-in-flight-untracked").build();
+        this.untracked = registry.counter(untrackedName);
+        this.watchdog = watchdog;
+    }
+
+    @SuppressWarnings("NoFunctionalReturnType") // helper
+    private static BooleanSupplier getEnabledSupplier(String serviceName) {
+        return InstrumentationProperties.getSystemPropertySupplier(serviceName);
+    }
+
+    private static ScheduledExecutorService newWatchdog(String serviceName) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("tritium-in-flight-watchdog-" + serviceName + "-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        Thread thread = Thread.currentThread();
+        InFlightInvocationContext context =
+                new InFlightInvocationContext(System.nanoTime(), instance, method, args, thread);
+        int start = (int) (thread.getId() * STRIPE_SIZE);
+        int probes = Math.min(MAX_PROBES, slots.length());
+        for (int i = 0; i < probes; i++) {
+            int index = (start + i) & slotMask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, context)) {
+                context.slot = index;
+                return context;
+            }
+        }
+        untracked.inc();
+        return context;
+    }
+
+    @Override
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+        release(context);
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+        release(context);
+    }
+
+    private void release(@Nullable InvocationContext context) {
+        debugIfNullContext(context);
+        if (context instanceof InFlightInvocationContext) {
+            InFlightInvocationContext inFlightContext = (InFlightInvocationContext) context;
+            if (inFlightContext.slot >= 0) {
+                slots.compareAndSet(inFlightContext.slot, inFlightContext, null);
+            }
+        }
+    }
+
+    /** Returns the most recently captured stuck invocations, newest first. */
+    public List<StuckInvocation> stuckInvocations() {
+        long writes = stuckWrites;
+        int capacity = stuck.length();
+        ImmutableList.Builder<StuckInvocation> result = ImmutableList.builder();
+        for (long i = writes - 1; i >= 0 && i >= writes - capacity; i--) {
+            StuckInvocation invocation = stuck.get((int) (i % capacity));
+            if (invocation != null) {
+                result.add(invocation);
+            }
+        }
+        return result.build();
+    }
+
+    /** Stops the watchdog and removes the metrics registered by this handler. */
+    @Override
+    public void close() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        endpoints.values().forEach(state -> {
+            registry.remove(state.countName);
+            registry.remove(state.oldestAgeName);
+        });
+        endpoints.clear();
+        registry.remove(untrackedName);
+    }
+
+    private void scanSafely() {
+        try {
+            scan();
+        } catch (RuntimeException e) {
+            log.warn("Failed to scan in-flight invocations", SafeArg.of("serviceName", serviceName), e);
+        }
+    }
+
+    /** Publishes per-endpoint in-flight gauges and captures stack traces of stuck invocations. */
+    @VisibleForTesting
+    void scan() {
+        long now = System.nanoTime();
+        Map<Method, long[]> observed = new HashMap<>();
+        for (int i = 0; i < slots.length(); i++) {
+            InFlightInvocationContext context = slots.get(i);
+            if (context == null) {
+                continue;
+            }
+            long ageNanos = Math.max(0L, now - context.getStartTimeNanos());
+            long[] stats = observed.computeIfAbsent(context.getMethod(), _method -> new long[2]);
+            stats[0]++;
+            stats[1] = Math.max(stats[1], ageNanos);
+            if (ageNanos >= stuckThresholdNanos && !context.captured) {
+                context.captured = true;
+                StackTraceElement[] stackTrace = context.thread.getStackTrace();
+                // the thread may have moved on while the trace was captured
+                if (slots.get(i) == context) {
+                    recordStuck(new StuckInvocation(
+                            context.getMethod(), context.thread.getName(), ageNanos, stackTrace));
+                }
+            }
+        }
+        observed.keySet().forEach(method -> endpoints.computeIfAbsent(method, this::registerGauges));
+        endpoints.forEach((method, state) -> {
+            long[] stats = observed.get(method);
+            state.count = stats == null ? 0L : stats[0];
+            state.oldestAgeNanos = stats == null ? 0L : stats[1];
+        });
+    }
+
+    private void recordStuck(StuckInvocation invocation) {
+        // only the scanning thread writes to the ring buffer
+        long index = stuckWrites;
+        stuck.set((int) (index % stuck.length()), invocation);
+        stuckWrites = index + 1;
+    }
+
+    private EndpointState registerGauges(Method method) {
+        EndpointState state = new EndpointState(
+                endpointName(method, serviceName + "-in-flight"),
+                endpointName(method, serviceName + "-in-flight-oldest-age"));
+        registry.registerWithReplacement(state.countName, (Gauge<Long>) () -> state.count);
+        registry.registerWithReplacement(
+                state.oldestAgeName, (Gauge<Long>) () -> TimeUnit.NANOSECONDS.toMillis(state.oldestAgeNanos));
+        return state;
+    }
+
+    private static MetricName endpointName(Method method, String safeName) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
+                .putSafeTags("endpoint", method.getName())
+                .build();
+    }
+
+    /** An in-flight invocation whose age exceeded the stuck threshold when it was observed by the watchdog. */
+    public static final class StuckInvocation {
+        private final Method method;
+        private final String threadName;
+        private final long ageNanos;
+        private final List<StackTraceElement> stackTrace;
+
+        StuckInvocation(Method method, String threadName, long ageNanos, StackTraceElement[] stackTrace) {
+            this.method = method;
+            this.threadName = threadName;
+            this.ageNanos = ageNanos;
+            this.stackTrace = ImmutableList.copyOf(stackTrace);
+        }
+
+        public Method method() {
+            return method;
+        }
+
+        public String threadName() {
+            return threadName;
+        }
+
+        /** Age of the invocation when its stack trace was captured. */
+        public Duration age() {
+            return Duration.ofNanos(ageNanos);
+        }
+
+        public List<StackTraceElement> stackTrace() {
+            return stackTrace;
+        }
+
+        @Override
+        public String toString() {
+            return "StuckInvocation{method=" + method + ", threadName=" + threadName + ", age=" + age() + '}';
+        }
+    }
+
+    private static final class EndpointState {
+        private final MetricName countName;
+        private final MetricName oldestAgeName;
+        private volatile long count;
+        private volatile long oldestAgeNanos;
+
+        EndpointState(MetricName countName, MetricName oldestAgeName) {
+            this.countName = countName;
+            this.oldestAgeName = oldestAgeName;
+        }
+    }
+
+    private static final class InFlightInvocationContext extends DefaultInvocationContext {
+        private final Thread thread;
+        private int slot = -1;
+        // only accessed by the watchdog thread
+        private boolean captured;
+
+        InFlightInvocationContext(long startTimeNanos, Object instance, Method method, Object[] args, Thread thread) {
+            super(startTimeNanos, instance, method, args);
+            this.thread = thread;
+        }
+    }
+}
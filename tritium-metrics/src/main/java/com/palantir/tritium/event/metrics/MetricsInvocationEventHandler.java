@@ -19,6 +19,7 @@ package com.palantir.tritium.event.metrics;
 import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
@@ -30,6 +31,7 @@ import com.palantir.tritium.event.metrics.annotations.AnnotationHelper;
 import com.palantir.tritium.event.metrics.annotations.MetricGroup;
 import java.lang.reflect.Method;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -47,6 +49,9 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     @Nullable
     private final String globalGroupPrefix;
 
+    @Nullable
+    private final MetricRegistry.MetricSupplier<Timer> timerSupplier;
+
     @SuppressWarnings("WeakerAccess") // public API
     public MetricsInvocationEventHandler(MetricRegistry metricRegistry, String serviceName) {
         super(getEnabledSupplier(serviceName));
@@ -54,6 +59,7 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
         this.serviceName = checkNotNull(serviceName, "serviceName");
         this.metricGroups = ImmutableMap.of();
         this.globalGroupPrefix = null;
+        this.timerSupplier = null;
     }
 
     @SuppressWarnings("InconsistentOverloads")
@@ -62,11 +68,27 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
             Class<?> serviceClass,
             String serviceName,
             @Nullable String globalGroupPrefix) {
+        this(metricRegistry, serviceClass, serviceName, globalGroupPrefix, null);
+    }
+
+    /**
+     * Creates a handler whose timers are created by the specified supplier, for example {@link
+     * com.palantir.tritium.metrics.registry.SampledTimer sampled timers} for a hot service, or by the registry if the
+     * supplier is {@code null}.
+     */
+    @SuppressWarnings("InconsistentOverloads")
+    public MetricsInvocationEventHandler(
+            MetricRegistry metricRegistry,
+            Class<?> serviceClass,
+            String serviceName,
+            @Nullable String globalGroupPrefix,
+            @Nullable Supplier<Timer> timerSupplier) {
         super(getEnabledSupplier(serviceName));
         this.metricRegistry = checkNotNull(metricRegistry, "metricRegistry");
         this.serviceName = checkNotNull(serviceName, "serviceName");
         this.metricGroups = createMethodGroupMapping(checkNotNull(serviceClass));
         this.globalGroupPrefix = Strings.emptyToNull(globalGroupPrefix);
+        this.timerSupplier = timerSupplier == null ? null : timerSupplier::get;
     }
 
     @SuppressWarnings("WeakerAccess") // public API
@@ -131,10 +153,14 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
 
     private long updateTimer(InvocationContext context) {
         long nanos = System.nanoTime() - context.getStartTimeNanos();
-        metricRegistry.timer(getBaseMetricName(context)).update(nanos, TimeUnit.NANOSECONDS);
+        timer(getBaseMetricName(context)).update(nanos, TimeUnit.NANOSECONDS);
         return nanos;
     }
 
+    private Timer timer(String name) {
+        return timerSupplier == null ? metricRegistry.timer(name) : metricRegistry.timer(name, timerSupplier);
+    }
+
     private String getBaseMetricName(InvocationContext context) {
         return serviceName + '.' + context.getMethod().getName();
     }
@@ -146,10 +172,10 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     private void handleSuccessAnnotations(InvocationContext context, long nanos) {
         String metricName = getAnnotatedMetricName(context);
         if (metricName != null) {
-            metricRegistry.timer(serviceName + '.' + metricName).update(nanos, TimeUnit.NANOSECONDS);
+            timer(serviceName + '.' + metricName).update(nanos, TimeUnit.NANOSECONDS);
 
             if (globalGroupPrefix != null) {
-                metricRegistry.timer(globalGroupPrefix + '.' + metricName).update(nanos, TimeUnit.NANOSECONDS);
+                timer(globalGroupPrefix + '.' + metricName).update(nanos, TimeUnit.NANOSECONDS);
             }
         }
     }
@@ -157,14 +183,10 @@ public final class MetricsInvocationEventHandler extends AbstractInvocationEvent
     private void handleFailureAnnotations(InvocationContext context, long nanos) {
         String metricName = getAnnotatedMetricName(context);
         if (metricName != null) {
-            metricRegistry
-                    .timer(serviceName + '.' + metricName + '.' + FAILURES)
-                    .update(nanos, TimeUnit.NANOSECONDS);
+            timer(serviceName + '.' + metricName + '.' + FAILURES).update(nanos, TimeUnit.NANOSECONDS);
 
             if (globalGroupPrefix != null) {
-                metricRegistry
-                        .timer(globalGroupPrefix + '.' + metricName + '.' + FAILURES)
-                        .update(nanos, TimeUnit.NANOSECONDS);
+                timer(globalGroupPrefix + '.' + metricName + '.' + FAILURES).update(nanos, TimeUnit.NANOSECONDS);
             }
         }
     }
@@ -0,0 +1,65 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Metric;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Caches metrics looked up from a {@link TaggedMetricRegistry}, looking each one up again on its next use after the
+ * registry's {@link TaggedMetricRegistry#removalEpoch() removal epoch} changes, so that a metric removed or evicted
+ * from the registry is registered again rather than updated while detached. Metrics are only looked up again
+ * individually, so removing an unrelated metric costs each cached metric a single registry lookup.
+ */
+final class RegisteredMetricCache<K, T extends Metric> {
+
+    private final TaggedMetricRegistry registry;
+    private final Function<K, T> lookup;
+    private final ConcurrentMap<K, Resolved<T>> metrics = new ConcurrentHashMap<>();
+
+    RegisteredMetricCache(TaggedMetricRegistry registry, Function<K, T> lookup) {
+        this.registry = checkNotNull(registry, "registry");
+        this.lookup = checkNotNull(lookup, "lookup");
+    }
+
+    T get(K key) {
+        // read the epoch before looking up, so that a removal racing with the lookup invalidates the result
+        long epoch = registry.removalEpoch();
+        Resolved<T> resolved = metrics.get(key);
+        if (resolved != null && resolved.epoch == epoch) {
+            return resolved.metric;
+        }
+        T metric = lookup.apply(key);
+        metrics.put(key, new Resolved<>(metric, epoch));
+        return metric;
+    }
+
+    private static final class Resolved<T> {
+        private final T metric;
+        private final long epoch;
+
+        Resolved(T metric, long epoch) {
+            this.metric = metric;
+            this.epoch = epoch;
+        }
+    }
+}
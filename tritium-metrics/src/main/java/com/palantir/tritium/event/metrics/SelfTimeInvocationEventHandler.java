@@ -0,0 +1,171 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.palantir.tritium.event.AbstractInvocationEventHandler;
+import com.palantir.tritium.event.DefaultInvocationContext;
+import com.palantir.tritium.event.InstrumentationProperties;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link AbstractInvocationEventHandler} which records the exclusive (self) time of each invocation, that is the
+ * total time of the invocation minus the time spent in nested invocations on the same thread which are themselves
+ * instrumented with a {@link SelfTimeInvocationEventHandler}.
+ *
+ * <p>Specifically, this class will generate timers with the following parameters:
+ *
+ * <ul>
+ *   <li>Metric Name: the service name supplied to the constructor suffixed with {@code -self-time}
+ *   <li>Tag - service-name: The simple name of the invoked class
+ *   <li>Tag - endpoint: The name of the method that was invoked
+ * </ul>
+ *
+ * <p>Active invocations are tracked on a per-thread, array backed call stack shared by all instances of this handler,
+ * so no allocation beyond the invocation context occurs per call. Invocations which complete without their nested
+ * invocations completing (for example when a nested handler was disabled mid-flight) unwind the abandoned frames, and
+ * the time of those frames is attributed to the enclosing invocation.
+ */
+public final class SelfTimeInvocationEventHandler extends AbstractInvocationEventHandler<InvocationContext> {
+
+    private static final String SELF_TIME_SUFFIX = "-self-time";
+    private static final ThreadLocal<CallStack> callStack = ThreadLocal.withInitial(CallStack::new);
+
+    private final RegisteredMetricCache<Method, Timer> timerCache;
+
+    public SelfTimeInvocationEventHandler(TaggedMetricRegistry taggedMetricRegistry, String serviceName) {
+        super(getEnabledSupplier(serviceName));
+        checkNotNull(taggedMetricRegistry, "metricRegistry");
+        checkNotNull(serviceName, "serviceName");
+        this.timerCache = new RegisteredMetricCache<>(taggedMetricRegistry, method -> taggedMetricRegistry.timer(
+                MetricName.builder()
+                        .safeName(serviceName + SELF_TIME_SUFFIX)
+                        .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
+                        .putSafeTags("endpoint", method.getName())
+                        .build()));
+    }
+
+    @SuppressWarnings("NoFunctionalReturnType") // helper
+    private static BooleanSupplier getEnabledSupplier(String serviceName) {
+        return InstrumentationProperties.getSystemPropertySupplier(serviceName);
+    }
+
+    @Override
+    public InvocationContext preInvocation(@Nonnull Object instance, @Nonnull Method method, @Nonnull Object[] args) {
+        CallStack stack = callStack.get();
+        SelfTimeInvocationContext context =
+                new SelfTimeInvocationContext(System.nanoTime(), instance, method, args, stack, stack.depth());
+        // push last so a failure constructing the context cannot leave an unbalanced frame
+        stack.push();
+        return context;
+    }
+
+    @Override
+    public void onSuccess(@Nullable InvocationContext context, @Nullable Object _result) {
+        complete(context);
+    }
+
+    @Override
+    public void onFailure(@Nullable InvocationContext context, @Nonnull Throwable _cause) {
+        complete(context);
+    }
+
+    private void complete(@Nullable InvocationContext context) {
+        debugIfNullContext(context);
+        if (context instanceof SelfTimeInvocationContext) {
+            SelfTimeInvocationContext selfTimeContext = (SelfTimeInvocationContext) context;
+            long nanos = System.nanoTime() - selfTimeContext.getStartTimeNanos();
+            long nestedNanos = selfTimeContext.stack.pop(selfTimeContext.frame, nanos);
+            if (nestedNanos >= 0) {
+                getTimer(context.getMethod()).update(Math.max(0L, nanos - nestedNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Timer getTimer(Method method) {
+        return timerCache.get(method);
+    }
+
+    @VisibleForTesting
+    static int currentDepth() {
+        return callStack.get().depth();
+    }
+
+    private static final class SelfTimeInvocationContext extends DefaultInvocationContext {
+        private final CallStack stack;
+        private final int frame;
+
+        SelfTimeInvocationContext(
+                long startTimeNanos, Object instance, Method method, Object[] args, CallStack stack, int frame) {
+            super(startTimeNanos, instance, method, args);
+            this.stack = stack;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * Per-thread stack of active instrumented invocations, recording for each frame the total nanoseconds spent in
+     * completed nested invocations. Only accessed by its owning thread.
+     */
+    private static final class CallStack {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final Thread owner = Thread.currentThread();
+        private long[] nestedNanos = new long[INITIAL_CAPACITY];
+        private int depth;
+
+        int depth() {
+            return depth;
+        }
+
+        void push() {
+            if (depth == nestedNanos.length) {
+                nestedNanos = Arrays.copyOf(nestedNanos, depth * 2);
+            }
+            nestedNanos[depth++] = 0L;
+        }
+
+        /**
+         * Pops the specified frame, and any abandoned frames above it, crediting the total time of the frame to its
+         * parent.
+         *
+         * @return nanoseconds spent in nested invocations of the frame, or -1 if the frame is not on this stack
+         */
+        long pop(int frame, long totalNanos) {
+            if (owner != Thread.currentThread() || frame >= depth) {
+                return -1L;
+            }
+            long nested = nestedNanos[frame];
+            depth = frame;
+            if (frame > 0) {
+                nestedNanos[frame - 1] += totalNanos;
+            }
+            return nested;
+        }
+    }
+}
@@ -27,11 +27,9 @@ import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.lang.reflect.Method;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
-import java.util.function.Function;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -56,20 +54,38 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
 
     private final TaggedMetricRegistry taggedMetricRegistry;
     private final String serviceName;
-    private final Meter globalFailureMeter;
-    private final ConcurrentMap<Method, Timer> timerCache = new ConcurrentHashMap<>();
-    private final Function<Method, Timer> onSuccessTimerMappingFunction;
+    private final RegisteredMetricCache<Method, Timer> timerCache;
+    private final RegisteredMetricCache<MetricName, Meter> globalFailureMeter;
 
     public TaggedMetricsServiceInvocationEventHandler(TaggedMetricRegistry taggedMetricRegistry, String serviceName) {
+        this(taggedMetricRegistry, serviceName, null);
+    }
+
+    /**
+     * Creates a handler whose endpoint timers are created by the specified supplier, for example to record latencies
+     * in {@link com.palantir.tritium.metrics.registry.FixedBucketReservoir fixed buckets} for this service only.
+     *
+     * @param taggedMetricRegistry registry used for this service's metrics
+     * @param serviceName metric name of this service's timers
+     * @param timerSupplier supplier of endpoint timers, or {@code null} to use the registry's default timers
+     */
+    public TaggedMetricsServiceInvocationEventHandler(
+            TaggedMetricRegistry taggedMetricRegistry, String serviceName, @Nullable Supplier<Timer> timerSupplier) {
         super(getEnabledSupplier(serviceName));
         this.taggedMetricRegistry = checkNotNull(taggedMetricRegistry, "metricRegistry");
         this.serviceName = checkNotNull(serviceName, "serviceName");
-        this.globalFailureMeter = taggedMetricRegistry.meter(FAILURES_METRIC);
-        this.onSuccessTimerMappingFunction = method -> taggedMetricRegistry.timer(MetricName.builder()
-                .safeName(serviceName)
-                .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
-                .putSafeTags("endpoint", method.getName())
-                .build());
+        this.globalFailureMeter = new RegisteredMetricCache<>(taggedMetricRegistry, taggedMetricRegistry::meter);
+        globalFailureMeter.get(FAILURES_METRIC);
+        this.timerCache = new RegisteredMetricCache<>(taggedMetricRegistry, method -> {
+            MetricName metricName = MetricName.builder()
+                    .safeName(serviceName)
+                    .putSafeTags("service-name", method.getDeclaringClass().getSimpleName())
+                    .putSafeTags("endpoint", method.getName())
+                    .build();
+            return timerSupplier == null
+                    ? taggedMetricRegistry.timer(metricName)
+                    : taggedMetricRegistry.timer(metricName, timerSupplier);
+        });
     }
 
     @SuppressWarnings("NoFunctionalReturnType") // helper
@@ -93,12 +109,12 @@ public class TaggedMetricsServiceInvocationEventHandler extends AbstractInvocati
     }
 
     private Timer getSuccessTimer(Method method) {
-        return timerCache.computeIfAbsent(method, onSuccessTimerMappingFunction);
+        return timerCache.get(method);
     }
 
     @Override
     public final void onFailure(@Nullable InvocationContext context, @Nonnull Throwable cause) {
-        globalFailureMeter.mark();
+        globalFailureMeter.get(FAILURES_METRIC).mark();
         debugIfNullContext(context);
         if (context != null) {
             MetricName failuresMetricName = MetricName.builder()
@@ -0,0 +1,93 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.codahale.metrics.Snapshot;
+import com.palantir.logsafe.SafeArg;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+/** Snapshot of an HdrHistogram which is not modified after the snapshot is created. */
+final class HdrHistogramSnapshot extends Snapshot {
+    private final Histogram histogram;
+
+    HdrHistogramSnapshot(Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        checkArgument(
+                quantile >= 0.0 && quantile <= 1.0,
+                "quantile must be in [0..1]",
+                SafeArg.of("quantile", quantile));
+        return histogram.getValueAtPercentile(quantile * 100.0);
+    }
+
+    @Override
+    public long[] getValues() {
+        long[] values = new long[size()];
+        int index = 0;
+        for (HistogramIterationValue value : histogram.recordedValues()) {
+            long recordedValue = value.getValueIteratedTo();
+            for (long i = 0; i < value.getCountAddedInThisIterationStep() && index < values.length; i++) {
+                values[index++] = recordedValue;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(histogram.getTotalCount(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+        return histogram.getMaxValue();
+    }
+
+    @Override
+    public double getMean() {
+        return histogram.getMean();
+    }
+
+    @Override
+    public long getMin() {
+        return histogram.getMinValue();
+    }
+
+    @Override
+    public double getStdDev() {
+        return histogram.getStdDeviation();
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (long value : getValues()) {
+                writer.printf("%d%n", value);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * HdrHistogram backed reservoir whose snapshots report only the values recorded during the most recently completed
+ * interval. Intervals are completed by {@link IntervalReservoirCycle#advance()}, which swaps out the recorder's
+ * interval histogram, so no value is reported by more than one interval and no state accumulates between intervals.
+ */
+final class IntervalHdrHistogramReservoir implements Reservoir {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    // never modified once published, snapshots may still refer to previous intervals
+    private volatile Histogram completedInterval = new Histogram(SIGNIFICANT_DIGITS);
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        recorder.recordValue(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return new HdrHistogramSnapshot(completedInterval);
+    }
+
+    /** Completes the current interval, making its values visible to subsequent snapshots. */
+    void completeInterval() {
+        completedInterval = recorder.getIntervalHistogram();
+    }
+}
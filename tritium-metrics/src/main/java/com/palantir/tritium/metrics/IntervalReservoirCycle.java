@@ -0,0 +1,75 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.google.common.collect.MapMaker;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Export cycle for reset-on-read HdrHistogram reservoirs, which allows reporters to read percentiles of exactly the
+ * values recorded since the previous export.
+ *
+ * <p>Timers and histograms backed by reservoirs from {@link #reservoirSupplier()} report the values recorded during
+ * the most recently completed interval, until {@link #advance()} completes the next interval for all of them together.
+ * Reporters should call {@link #advance()} once per reporting cycle, immediately before reading the registry:
+ *
+ * <pre>{@code
+ * IntervalReservoirCycle cycle = new IntervalReservoirCycle();
+ * TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+ *         .withReservoirs(cycle.reservoirSupplier())
+ *         .build();
+ * ...
+ * // every reporting interval
+ * cycle.advance();
+ * report(registry);
+ * }</pre>
+ *
+ * <p>Counts of timers and histograms are unaffected and continue to accumulate.
+ */
+public final class IntervalReservoirCycle {
+
+    // weak keys so reservoirs of metrics removed from a registry can be collected
+    private final Set<IntervalHdrHistogramReservoir> reservoirs =
+            Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+    /**
+     * Supplies reservoirs which are advanced by this cycle.
+     *
+     * @return reservoir supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public Supplier<Reservoir> reservoirSupplier() {
+        return () -> {
+            IntervalHdrHistogramReservoir reservoir = new IntervalHdrHistogramReservoir();
+            reservoirs.add(reservoir);
+            return reservoir;
+        };
+    }
+
+    /**
+     * Completes the current interval of every reservoir supplied by this cycle. Snapshots taken afterwards report the
+     * values recorded between the previous call and this call.
+     */
+    public synchronized void advance() {
+        for (IntervalHdrHistogramReservoir reservoir : reservoirs) {
+            reservoir.completeInterval();
+        }
+    }
+}
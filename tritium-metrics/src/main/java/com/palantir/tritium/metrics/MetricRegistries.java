@@ -40,6 +40,8 @@ import com.palantir.logsafe.Safe;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
 import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.QuantileSketch;
+import com.palantir.tritium.metrics.registry.QuantileSketchReservoir;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -82,6 +84,55 @@ public final class MetricRegistries {
         return createWithReservoirType(Reservoirs::hdrHistogramReservoir);
     }
 
+    /**
+     * Create metric registry which produces timers and histograms backed by high dynamic range histograms striped
+     * across recorders by updating thread, that accumulates internal state forever. Prefer this over {@link
+     * #createWithHdrHistogramReservoirs()} when many threads update the same timers or histograms concurrently.
+     *
+     * @return metric registry
+     */
+    public static MetricRegistry createWithStripedHdrHistogramReservoirs() {
+        return createWithReservoirType(stripedHdrHistogramReservoirSupplier());
+    }
+
+    /**
+     * Supplies reservoirs backed by high dynamic range histograms striped across recorders by updating thread, for use
+     * with tagged metric registries, for example {@code
+     * DefaultTaggedMetricRegistry.builder().withReservoirs(MetricRegistries.stripedHdrHistogramReservoirSupplier())}.
+     *
+     * @return reservoir supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Reservoir> stripedHdrHistogramReservoirSupplier() {
+        return Reservoirs::stripedHdrHistogramReservoir;
+    }
+
+    /**
+     * Creates a {@link MetricRegistry} which produces timers and histograms backed by mergeable quantile sketches that
+     * accumulate internal state forever. Snapshots of the registry's timers and histograms are {@link QuantileSketch}
+     * instances, which report quantiles within the specified relative accuracy and can be merged across metrics and
+     * nodes.
+     *
+     * @param relativeAccuracy relative accuracy of reported quantiles, between 0 and 1 exclusive
+     * @param maxBins maximum number of bins retained by each sketch
+     * @return metric registry
+     */
+    public static MetricRegistry createWithQuantileSketchReservoirs(double relativeAccuracy, int maxBins) {
+        return createWithReservoirType(QuantileSketchReservoir.supplier(relativeAccuracy, maxBins));
+    }
+
+    /**
+     * Creates a {@link MetricRegistry} which produces timers and histograms backed by high dynamic range histograms
+     * that report only the values recorded during the most recently completed interval of the specified cycle.
+     *
+     * @param cycle export cycle which completes the intervals of the registry's timers and histograms
+     * @return metric registry
+     */
+    public static MetricRegistry createWithIntervalHdrHistogramReservoirs(IntervalReservoirCycle cycle) {
+        checkNotNull(cycle, "cycle");
+        return createWithReservoirType(cycle.reservoirSupplier());
+    }
+
     /**
      * Creates a {@link MetricRegistry} which produces timers and histograms backed by sliding time window array that
      * store measurements for the specified sliding time window.
@@ -323,7 +374,10 @@ public final class MetricRegistries {
     public static ScheduledExecutorService instrument(
             TaggedMetricRegistry registry, ScheduledExecutorService delegate, String name) {
         return new TaggedMetricsScheduledExecutorService(
-                checkNotNull(delegate, "delegate"), ExecutorMetrics.of(registry), checkNotNull(name, "name"));
+                checkNotNull(delegate, "delegate"),
+                checkNotNull(registry, "registry"),
+                ExecutorMetrics.of(registry),
+                checkNotNull(name, "name"));
     }
 
     /**
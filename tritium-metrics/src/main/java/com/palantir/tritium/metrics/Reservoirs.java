@@ -46,6 +46,15 @@ final class Reservoirs {
         return hdrHistogramReservoir(new Recorder(/* significant digits = */ 2));
     }
 
+    /**
+     * Supplies reservoirs backed by high dynamic range histograms striped across recorders by updating thread, to
+     * reduce contention between threads concurrently updating the same metric.
+     */
+    @Nonnull
+    static Reservoir stripedHdrHistogramReservoir() {
+        return new StripedHdrHistogramReservoir();
+    }
+
     @Nonnull
     private static Reservoir hdrHistogramReservoir(Recorder recorder) {
         checkNotNull(recorder, "recorder");
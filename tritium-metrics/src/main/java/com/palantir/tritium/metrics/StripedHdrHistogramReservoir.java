@@ -0,0 +1,91 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.palantir.logsafe.SafeArg;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * HdrHistogram backed reservoir which spreads updates across a number of independent {@link Recorder recorders},
+ * selected by the updating thread, so that threads concurrently updating the same timer or histogram do not contend on
+ * a single recorder's phaser and counts array. The recorders are merged into a running total when a snapshot is taken.
+ *
+ * <p>Like the single recorder HdrHistogram reservoir, this reservoir accumulates values forever.
+ */
+final class StripedHdrHistogramReservoir implements Reservoir {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_STRIPES = 64;
+
+    private final Recorder[] recorders;
+    private final int mask;
+
+    // guarded by this
+    private final Histogram runningTotals = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram intervalHistogram = new Histogram(SIGNIFICANT_DIGITS);
+
+    StripedHdrHistogramReservoir() {
+        this(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()));
+    }
+
+    StripedHdrHistogramReservoir(int stripes) {
+        checkArgument(stripes > 0, "stripes must be positive", SafeArg.of("stripes", stripes));
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.recorders = new Recorder[size];
+        for (int i = 0; i < size; i++) {
+            recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+        }
+        this.mask = size - 1;
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        recorders[stripe()].recordValue(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        for (Recorder recorder : recorders) {
+            recorder.getIntervalHistogramInto(intervalHistogram);
+            runningTotals.add(intervalHistogram);
+        }
+        return new HdrHistogramSnapshot(runningTotals.copy());
+    }
+
+    int stripes() {
+        return recorders.length;
+    }
+
+    private int stripe() {
+        // spread sequential thread ids across stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & mask;
+    }
+}
@@ -17,9 +17,14 @@
 package com.palantir.tritium.metrics;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.ExpectedIntervalReservoir;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -30,6 +35,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
 
 final class TaggedMetricsScheduledExecutorService implements ScheduledExecutorService {
 
@@ -44,8 +50,13 @@ final class TaggedMetricsScheduledExecutorService implements ScheduledExecutorSe
     private final Meter scheduledRepetitively;
     private final Counter scheduledOverrun;
     private final Histogram scheduledPercentOfPeriod;
+    private final Timer scheduledCorrectedDuration;
 
-    TaggedMetricsScheduledExecutorService(ScheduledExecutorService delegate, ExecutorMetrics metrics, String name) {
+    @Nullable
+    private final Reservoir scheduledCorrections;
+
+    TaggedMetricsScheduledExecutorService(
+            ScheduledExecutorService delegate, TaggedMetricRegistry registry, ExecutorMetrics metrics, String name) {
         this.delegate = delegate;
 
         this.submitted = metrics.submitted(name);
@@ -57,6 +68,16 @@ final class TaggedMetricsScheduledExecutorService implements ScheduledExecutorSe
         this.scheduledRepetitively = metrics.scheduledRepetitively(name);
         this.scheduledOverrun = metrics.scheduledOverrun(name);
         this.scheduledPercentOfPeriod = metrics.scheduledPercentOfPeriod(name);
+        // created here rather than through ExecutorMetrics, so that corrections can bypass the timer's count
+        this.scheduledCorrectedDuration = registry.timer(
+                MetricName.builder()
+                        .safeName("executor.scheduled.corrected-duration")
+                        .putSafeTags("executor", name)
+                        .build(),
+                CorrectedDurationTimer::new);
+        this.scheduledCorrections = scheduledCorrectedDuration instanceof CorrectedDurationTimer
+                ? ((CorrectedDurationTimer) scheduledCorrectedDuration).reservoir
+                : null;
     }
 
     @Override
@@ -215,10 +236,34 @@ final class TaggedMetricsScheduledExecutorService implements ScheduledExecutorSe
                     scheduledOverrun.inc();
                 }
                 scheduledPercentOfPeriod.update((100L * elapsed) / periodInNanos);
+                scheduledCorrectedDuration.update(elapsed, TimeUnit.NANOSECONDS);
+                if (scheduledCorrections != null && elapsed >= 2 * periodInNanos) {
+                    // runs delayed by an overrun are recorded as if they had started on schedule, without counting
+                    // them as runs
+                    ExpectedIntervalReservoir.recordCorrectedValues(
+                            elapsed, periodInNanos, scheduledCorrections::update);
+                }
             }
         }
     }
 
+    /**
+     * Timer whose reservoir is also updated directly with corrected durations, so that its count and rates are those
+     * of actual runs.
+     */
+    private static final class CorrectedDurationTimer extends Timer {
+        private final Reservoir reservoir;
+
+        CorrectedDurationTimer() {
+            this(new ExponentiallyDecayingReservoir());
+        }
+
+        private CorrectedDurationTimer(Reservoir reservoir) {
+            super(reservoir);
+            this.reservoir = reservoir;
+        }
+    }
+
     private final class TaggedMetricsCallable<T> implements Callable<T> {
 
         private final Callable<T> task;
@@ -0,0 +1,145 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Gauge;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.TestClock;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("NullAway")
+final class ConcurrencyInvocationEventHandlerTest {
+
+    public interface Service {
+        void call();
+    }
+
+    private static final Method METHOD = Service.class.getMethods()[0];
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final TestClock clock = new TestClock();
+    private final ConcurrencyInvocationEventHandler handler =
+            new ConcurrencyInvocationEventHandler(registry, "test", clock);
+
+    @Test
+    void testCurrentAndMax() {
+        InvocationContext first = handler.preInvocation(this, METHOD, new Object[0]);
+        InvocationContext second = handler.preInvocation(this, METHOD, new Object[0]);
+        assertThat(gauge("test-concurrency").getValue()).isEqualTo(2L);
+
+        handler.onSuccess(first, null);
+        handler.onFailure(second, new RuntimeException());
+        assertThat(gauge("test-concurrency").getValue()).isEqualTo(0L);
+        assertThat(gauge("test-concurrency-max").getValue()).isEqualTo(2L);
+        // max resets to the current concurrency when read
+        assertThat(gauge("test-concurrency-max").getValue()).isEqualTo(0L);
+    }
+
+    @Test
+    void testTimeWeightedMean() {
+        InvocationContext first = handler.preInvocation(this, METHOD, new Object[0]);
+        clock.advance(1, TimeUnit.SECONDS);
+        InvocationContext second = handler.preInvocation(this, METHOD, new Object[0]);
+        clock.advance(1, TimeUnit.SECONDS);
+        handler.onSuccess(first, null);
+        handler.onSuccess(second, null);
+        clock.advance(2, TimeUnit.SECONDS);
+
+        // 1s at concurrency 1, 1s at concurrency 2 and 2s idle over 4s
+        assertThat(meanGauge("test-concurrency-mean").getValue()).isCloseTo(0.75, within(1e-9));
+
+        InvocationContext third = handler.preInvocation(this, METHOD, new Object[0]);
+        clock.advance(1, TimeUnit.SECONDS);
+        // third call is still in flight, and is accounted for up to the time of the read
+        assertThat(meanGauge("test-concurrency-mean").getValue()).isCloseTo(1.0, within(1e-9));
+        handler.onSuccess(third, null);
+    }
+
+    @Test
+    void testCompletionOnAnotherThread() throws Exception {
+        InvocationContext context = handler.preInvocation(this, METHOD, new Object[0]);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> handler.onSuccess(context, null)).get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(gauge("test-concurrency").getValue()).isEqualTo(0L);
+        assertThat(gauge("test-concurrency-max").getValue()).isEqualTo(1L);
+        assertThat(gauge("test-concurrency-max").getValue()).isEqualTo(0L);
+    }
+
+    @Test
+    void testConcurrentUpdates() throws Exception {
+        ConcurrencyInvocationEventHandler systemClockHandler =
+                new ConcurrencyInvocationEventHandler(registry, "concurrent");
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        InvocationContext context = systemClockHandler.preInvocation(this, METHOD, new Object[0]);
+                        systemClockHandler.onSuccess(context, null);
+                    }
+                    latch.countDown();
+                });
+            }
+            latch.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(gauge("concurrent-concurrency").getValue()).isEqualTo(0L);
+        assertThat(gauge("concurrent-concurrency-max").getValue()).isBetween(1L, (long) threads);
+        assertThat(meanGauge("concurrent-concurrency-mean").getValue()).isBetween(0.0, (double) threads);
+    }
+
+    @Test
+    void testNullContext() {
+        handler.onSuccess(null, null);
+        handler.onFailure(null, new RuntimeException());
+        assertThat(registry.getMetrics()).isEmpty();
+    }
+
+    private Gauge<Long> gauge(String safeName) {
+        return registry.<Long>gauge(name(safeName)).get();
+    }
+
+    private Gauge<Double> meanGauge(String safeName) {
+        return registry.<Double>gauge(name(safeName)).get();
+    }
+
+    private static MetricName name(String safeName) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", "Service")
+                .putSafeTags("endpoint", "call")
+                .build();
+    }
+}
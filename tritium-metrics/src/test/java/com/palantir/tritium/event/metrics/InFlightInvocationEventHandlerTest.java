@@ -0,0 +1,191 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.codahale.metrics.Gauge;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.event.metrics.InFlightInvocationEventHandler.StuckInvocation;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("NullAway")
+final class InFlightInvocationEventHandlerTest {
+
+    public interface Service {
+        void call();
+    }
+
+    private static final Method METHOD = Service.class.getMethods()[0];
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private InFlightInvocationEventHandler handler =
+            new InFlightInvocationEventHandler(registry, "test", Duration.ofDays(1), 64, 4, null);
+
+    @AfterEach
+    void after() {
+        handler.close();
+    }
+
+    @Test
+    void testInFlightGauges() {
+        InvocationContext first = handler.preInvocation(this, METHOD, new Object[0]);
+        InvocationContext second = handler.preInvocation(this, METHOD, new Object[0]);
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(2L);
+        assertThat(gauge("test-in-flight-oldest-age").getValue()).isGreaterThanOrEqualTo(0L);
+
+        handler.onSuccess(first, null);
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(1L);
+
+        handler.onFailure(second, new RuntimeException());
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(0L);
+        assertThat(gauge("test-in-flight-oldest-age").getValue()).isEqualTo(0L);
+        assertThat(handler.stuckInvocations()).isEmpty();
+    }
+
+    @Test
+    void testCloseRemovesMetrics() {
+        handler.preInvocation(this, METHOD, new Object[0]);
+        handler.scan();
+        assertThat(registry.getMetrics()).isNotEmpty();
+
+        handler.close();
+        assertThat(registry.getMetrics()).isEmpty();
+    }
+
+    @Test
+    void testUntrackedWhenSlotsExhausted() {
+        handler.close();
+        handler = new InFlightInvocationEventHandler(registry, "test", Duration.ofDays(1), 2, 4, null);
+        InvocationContext first = handler.preInvocation(this, METHOD, new Object[0]);
+        handler.preInvocation(this, METHOD, new Object[0]);
+        InvocationContext third = handler.preInvocation(this, METHOD, new Object[0]);
+        assertThat(registry.counter(MetricName.builder()
+                                .safeName("test-in-flight-untracked")
+                                .build())
+                        .getCount())
+                .isOne();
+
+        // completing an untracked invocation must not release another invocation's slot
+        handler.onSuccess(third, null);
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(2L);
+        handler.onSuccess(first, null);
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(1L);
+    }
+
+    @Test
+    void testStuckInvocationStackTraceCaptured() throws Exception {
+        handler.close();
+        handler = new InFlightInvocationEventHandler(registry, "test", Duration.ZERO, 64, 2, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread thread = new Thread(
+                () -> {
+                    InvocationContext context = handler.preInvocation(this, METHOD, new Object[0]);
+                    started.countDown();
+                    awaitUninterruptibly(release);
+                    handler.onSuccess(context, null);
+                },
+                "stuck-thread");
+        thread.start();
+        started.await();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> thread.getState() == Thread.State.WAITING);
+
+        handler.scan();
+        handler.scan();
+        List<StuckInvocation> stuck = handler.stuckInvocations();
+        assertThat(stuck).hasSize(1);
+        assertThat(stuck.get(0).method()).isEqualTo(METHOD);
+        assertThat(stuck.get(0).threadName()).isEqualTo("stuck-thread");
+        assertThat(stuck.get(0).stackTrace())
+                .anySatisfy(element -> assertThat(element.getMethodName()).isEqualTo("awaitUninterruptibly"));
+
+        release.countDown();
+        thread.join();
+        handler.scan();
+        assertThat(gauge("test-in-flight").getValue()).isEqualTo(0L);
+    }
+
+    @Test
+    void testStuckRingBufferIsBounded() {
+        handler.close();
+        handler = new InFlightInvocationEventHandler(registry, "test", Duration.ZERO, 64, 2, null);
+        for (int i = 0; i < 5; i++) {
+            handler.preInvocation(this, METHOD, new Object[0]);
+            handler.scan();
+        }
+        assertThat(handler.stuckInvocations()).hasSize(2);
+    }
+
+    @Test
+    void testWatchdogPublishesGauges() {
+        handler.close();
+        handler = new InFlightInvocationEventHandler(registry, "test", Duration.ofDays(1), Duration.ofMillis(10));
+        InvocationContext context = handler.preInvocation(this, METHOD, new Object[0]);
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> registry.gauge(name("test-in-flight")).isPresent()
+                        && Long.valueOf(1L).equals(gauge("test-in-flight").getValue()));
+        handler.onSuccess(context, null);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Long.valueOf(0L).equals(gauge("test-in-flight").getValue()));
+
+        handler.close();
+        assertThat(registry.gauge(name("test-in-flight"))).isEmpty();
+    }
+
+    @Test
+    void testNullContext() {
+        handler.onSuccess(null, null);
+        handler.onFailure(null, new RuntimeException());
+        handler.scan();
+        assertThat(registry.gauge(name("test-in-flight"))).isEmpty();
+    }
+
+    private Gauge<Long> gauge(String safeName) {
+        return registry.<Long>gauge(name(safeName)).get();
+    }
+
+    private static MetricName name(String safeName) {
+        return MetricName.builder()
+                .safeName(safeName)
+                .putSafeTags("service-name", "Service")
+                .putSafeTags("endpoint", "call")
+                .build();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,10 +20,12 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.MetricRegistry;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InvocationContext;
 import com.palantir.tritium.event.metrics.annotations.MetricGroup;
+import com.palantir.tritium.metrics.registry.SampledTimer;
 import org.junit.jupiter.api.Test;
 
 @SuppressWarnings("NullAway")
@@ -138,6 +140,28 @@ final class MetricsInvocationEventHandlerTest {
         assertThat(metricRegistry.timer(globalPrefix + ".ONE").getCount()).isEqualTo(2L);
     }
 
+    @Test
+    void testTimerSupplier() throws Exception {
+        AnnotatedTestInterface obj = mock(AnnotatedTestInterface.class);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        MetricsInvocationEventHandler handler = new MetricsInvocationEventHandler(
+                metricRegistry,
+                obj.getClass(),
+                "test",
+                "prefix",
+                SampledTimer.sampleRate(0.5, ExponentiallyDecayingReservoir::new));
+
+        for (int i = 0; i < 10; i++) {
+            callVoidMethod(handler, obj, "methodA", /* success= */ true);
+        }
+
+        assertThat(metricRegistry.getTimers())
+                .containsOnlyKeys("test.methodA", "test.ONE", "prefix.ONE")
+                .allSatisfy((_name, timer) -> assertThat(timer)
+                        .isInstanceOfSatisfying(SampledTimer.class, sampled -> assertThat(sampled.getCount())
+                                .isEqualTo(10)));
+    }
+
     private static void callVoidMethod(
             MetricsInvocationEventHandler handler, Object obj, String methodName, boolean success) throws Exception {
         InvocationContext context =
@@ -0,0 +1,135 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.event.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Timer;
+import com.palantir.logsafe.exceptions.SafeRuntimeException;
+import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("NullAway")
+final class SelfTimeInvocationEventHandlerTest {
+
+    public interface Outer {
+        void outer();
+    }
+
+    public interface Inner {
+        void inner();
+    }
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final SelfTimeInvocationEventHandler outerHandler = new SelfTimeInvocationEventHandler(registry, "outer");
+    private final SelfTimeInvocationEventHandler innerHandler = new SelfTimeInvocationEventHandler(registry, "inner");
+
+    @Test
+    void testNestedTimeIsExcluded() throws Exception {
+        InvocationContext outerContext = outerHandler.preInvocation(this, method(Outer.class), new Object[0]);
+        InvocationContext innerContext = innerHandler.preInvocation(this, method(Inner.class), new Object[0]);
+        Thread.sleep(100);
+        innerHandler.onSuccess(innerContext, null);
+        outerHandler.onSuccess(outerContext, null);
+
+        Timer innerTimer = timer("inner", Inner.class);
+        Timer outerTimer = timer("outer", Outer.class);
+        assertThat(innerTimer.getCount()).isOne();
+        assertThat(outerTimer.getCount()).isOne();
+        assertThat(innerTimer.getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(outerTimer.getSnapshot().getMax()).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+    }
+
+    @Test
+    void testFailuresUnwindStack() throws Exception {
+        InvocationContext outerContext = outerHandler.preInvocation(this, method(Outer.class), new Object[0]);
+        InvocationContext innerContext = innerHandler.preInvocation(this, method(Inner.class), new Object[0]);
+        innerHandler.onFailure(innerContext, new SafeRuntimeException("inner"));
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isOne();
+        outerHandler.onFailure(outerContext, new SafeRuntimeException("outer"));
+
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+        assertThat(timer("inner", Inner.class).getCount()).isOne();
+        assertThat(timer("outer", Outer.class).getCount()).isOne();
+    }
+
+    @Test
+    void testAbandonedNestedFramesAreDiscarded() throws Exception {
+        InvocationContext outerContext = outerHandler.preInvocation(this, method(Outer.class), new Object[0]);
+        InvocationContext abandoned = innerHandler.preInvocation(this, method(Inner.class), new Object[0]);
+        outerHandler.onSuccess(outerContext, null);
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+
+        // completing the abandoned frame after its parent must not corrupt the stack
+        innerHandler.onSuccess(abandoned, null);
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+        assertThat(timer("outer", Outer.class).getCount()).isOne();
+        assertThat(timer("inner", Inner.class).getCount()).isZero();
+    }
+
+    @Test
+    void testCompletionOnOtherThreadIsIgnored() throws Exception {
+        InvocationContext context = outerHandler.preInvocation(this, method(Outer.class), new Object[0]);
+        Thread thread = new Thread(() -> outerHandler.onSuccess(context, null));
+        thread.start();
+        thread.join();
+
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isOne();
+        outerHandler.onSuccess(context, null);
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+        assertThat(timer("outer", Outer.class).getCount()).isOne();
+    }
+
+    @Test
+    void testNullContext() {
+        outerHandler.onSuccess(null, null);
+        outerHandler.onFailure(null, new SafeRuntimeException("fail"));
+        assertThat(registry.getMetrics()).isEmpty();
+    }
+
+    @Test
+    void testDeepRecursion() throws Exception {
+        InvocationContext[] contexts = new InvocationContext[100];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = outerHandler.preInvocation(this, method(Outer.class), new Object[0]);
+        }
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isEqualTo(100);
+        for (int i = contexts.length - 1; i >= 0; i--) {
+            outerHandler.onSuccess(contexts[i], null);
+        }
+        assertThat(SelfTimeInvocationEventHandler.currentDepth()).isZero();
+        assertThat(timer("outer", Outer.class).getCount()).isEqualTo(100);
+    }
+
+    private Timer timer(String serviceName, Class<?> iface) {
+        return registry.timer(MetricName.builder()
+                .safeName(serviceName + "-self-time")
+                .putSafeTags("service-name", iface.getSimpleName())
+                .putSafeTags("endpoint", iface.getMethods()[0].getName())
+                .build());
+    }
+
+    private static Method method(Class<?> iface) {
+        return iface.getMethods()[0];
+    }
+}
@@ -19,14 +19,20 @@ package com.palantir.tritium.event.metrics;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
 import com.palantir.logsafe.exceptions.SafeRuntimeException;
 import com.palantir.tritium.event.AbstractInvocationEventHandler;
 import com.palantir.tritium.event.DefaultInvocationContext;
 import com.palantir.tritium.event.InvocationContext;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.FixedBucketReservoir;
+import com.palantir.tritium.metrics.registry.FixedBucketSnapshot;
 import com.palantir.tritium.metrics.registry.MetricName;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import com.palantir.tritium.metrics.test.TestTaggedMetricRegistries;
+import java.time.Duration;
 import java.util.Map;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -59,6 +65,27 @@ final class TaggedMetricsServiceInvocationEventHandlerTest {
         assertThat(metrics).containsKey(expectedMetricName);
     }
 
+    @ParameterizedTest
+    @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
+    void testTaggedServiceMetricsWithTimerSupplier(TaggedMetricRegistry registry) throws Exception {
+        TestImplementation testInterface = new TestImplementation();
+
+        TaggedMetricsServiceInvocationEventHandler handler = new TaggedMetricsServiceInvocationEventHandler(
+                registry, "quux", FixedBucketReservoir.timers(Duration.ofMillis(5), Duration.ofSeconds(1)));
+
+        invokeMethod(handler, testInterface, "doFoo", "bar", /* success= */ true);
+
+        Timer timer = registry.timer(MetricName.builder()
+                .safeName("quux")
+                .putSafeTags("service-name", "TestImplementation")
+                .putSafeTags("endpoint", "doFoo")
+                .build());
+        assertThat(timer.getCount()).isOne();
+        assertThat(timer.getSnapshot()).isInstanceOfSatisfying(FixedBucketSnapshot.class, snapshot -> assertThat(
+                        snapshot.cumulativeCounts())
+                .containsExactly(1, 1, 1));
+    }
+
     @ParameterizedTest
     @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
     void testTaggedServiceMetricsCapturedAsErrors(TaggedMetricRegistry registry) throws Exception {
@@ -79,6 +106,30 @@ final class TaggedMetricsServiceInvocationEventHandlerTest {
         assertThat(metrics).containsKey(expectedMetricName);
     }
 
+    @Test
+    void testReregistersEvictedMetrics() throws Exception {
+        DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        TestImplementation testInterface = new TestImplementation();
+        TaggedMetricsServiceInvocationEventHandler handler =
+                new TaggedMetricsServiceInvocationEventHandler(registry, "quux");
+        MetricName timerName = MetricName.builder()
+                .safeName("quux")
+                .putSafeTags("service-name", "TestImplementation")
+                .putSafeTags("endpoint", "doFoo")
+                .build();
+        MetricName failuresName = MetricName.builder().safeName("failures").build();
+
+        invokeMethod(handler, testInterface, "doFoo", "bar", /* success= */ true);
+        registry.evictIdleMetrics(Duration.ZERO);
+        assertThat(registry.evictIdleMetrics(Duration.ZERO)).isEqualTo(2);
+        assertThat(registry.getMetrics()).doesNotContainKeys(timerName, failuresName);
+
+        invokeMethod(handler, testInterface, "doFoo", "bar", /* success= */ true);
+        invokeMethod(handler, testInterface, "doFoo", "bar", /* success= */ false);
+        assertThat(registry.timer(timerName).getCount()).isOne();
+        assertThat(registry.meter(failuresName).getCount()).isOne();
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static void invokeMethod(
             AbstractInvocationEventHandler<?> handler, Object obj, String methodName, Object result, boolean success)
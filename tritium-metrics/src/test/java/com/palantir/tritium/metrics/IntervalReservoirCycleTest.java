@@ -0,0 +1,83 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class IntervalReservoirCycleTest {
+
+    private final IntervalReservoirCycle cycle = new IntervalReservoirCycle();
+
+    @Test
+    void testSnapshotsReportCompletedInterval() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withReservoirs(cycle.reservoirSupplier())
+                .build();
+        Timer first = registry.timer(MetricName.builder().safeName("first").build());
+        Histogram second = registry.histogram(MetricName.builder().safeName("second").build());
+
+        first.update(10, TimeUnit.NANOSECONDS);
+        second.update(100);
+        assertThat(first.getSnapshot().size()).isZero();
+        assertThat(second.getSnapshot().size()).isZero();
+
+        cycle.advance();
+        first.update(20, TimeUnit.NANOSECONDS);
+        assertThat(first.getSnapshot().getValues()).containsExactly(10);
+        assertThat(second.getSnapshot().getValues()).containsExactly(100);
+
+        cycle.advance();
+        assertThat(first.getSnapshot().getValues()).containsExactly(20);
+        assertThat(second.getSnapshot().size()).isZero();
+        // counts continue to accumulate
+        assertThat(first.getCount()).isEqualTo(2);
+        assertThat(second.getCount()).isOne();
+    }
+
+    @Test
+    void testSnapshotsAreNotModifiedByLaterIntervals() {
+        MetricRegistry registry = MetricRegistries.createWithIntervalHdrHistogramReservoirs(cycle);
+        Histogram histogram = registry.histogram("histogram");
+        histogram.update(42);
+        cycle.advance();
+        Snapshot snapshot = histogram.getSnapshot();
+
+        histogram.update(7);
+        cycle.advance();
+        cycle.advance();
+        assertThat(snapshot.getValues()).containsExactly(42);
+        assertThat(snapshot.getMax()).isEqualTo(42);
+        assertThat(histogram.getSnapshot().size()).isZero();
+    }
+
+    @Test
+    void testReservoirType() {
+        MetricRegistry registry = MetricRegistries.createWithIntervalHdrHistogramReservoirs(cycle);
+        assertThat(registry.getGauges().get(MetricRegistries.RESERVOIR_TYPE_METRIC_NAME).getValue())
+                .isEqualTo(IntervalHdrHistogramReservoir.class.getName());
+    }
+}
@@ -44,6 +44,8 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
 import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.QuantileSketch;
+import com.palantir.tritium.metrics.registry.QuantileSketchReservoir;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -115,6 +117,34 @@ final class MetricRegistriesTest {
         assertThat(metrics.timer("timer").getCount()).isOne();
     }
 
+    @Test
+    void testStripedHdrHistogram() {
+        metrics = MetricRegistries.createWithStripedHdrHistogramReservoirs();
+        assertThat(metrics.getGauges().get(MetricRegistries.RESERVOIR_TYPE_METRIC_NAME).getValue())
+                .isEqualTo(StripedHdrHistogramReservoir.class.getName());
+
+        Histogram histogram = metrics.histogram("histogram");
+        histogram.update(42L);
+        assertThat(histogram.getCount()).isOne();
+        Snapshot histogramSnapshot = histogram.getSnapshot();
+        assertThat(histogramSnapshot.size()).isOne();
+        assertThat(histogramSnapshot.getMax()).isEqualTo(42);
+    }
+
+    @Test
+    void testQuantileSketchHistogram() {
+        metrics = MetricRegistries.createWithQuantileSketchReservoirs(0.01, 2048);
+        assertThat(metrics.getGauges().get(MetricRegistries.RESERVOIR_TYPE_METRIC_NAME).getValue())
+                .isEqualTo(QuantileSketchReservoir.class.getName());
+
+        Histogram histogram = metrics.histogram("histogram");
+        histogram.update(42L);
+        Snapshot histogramSnapshot = histogram.getSnapshot();
+        assertThat(histogramSnapshot).isInstanceOf(QuantileSketch.class);
+        assertThat(histogramSnapshot.size()).isOne();
+        assertThat(histogramSnapshot.getMax()).isEqualTo(42);
+    }
+
     @Test
     void testSlidingTimeWindowHistogram() {
         metrics = MetricRegistries.createWithSlidingTimeWindowReservoirs(1, TimeUnit.MINUTES);
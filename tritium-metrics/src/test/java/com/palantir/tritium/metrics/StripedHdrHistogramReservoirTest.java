@@ -0,0 +1,110 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Snapshot;
+import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.MetricName;
+import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class StripedHdrHistogramReservoirTest {
+
+    @Test
+    void testStripesRoundedToPowerOfTwo() {
+        assertThat(new StripedHdrHistogramReservoir(1).stripes()).isEqualTo(1);
+        assertThat(new StripedHdrHistogramReservoir(3).stripes()).isEqualTo(4);
+        assertThat(new StripedHdrHistogramReservoir(16).stripes()).isEqualTo(16);
+        assertThatThrownBy(() -> new StripedHdrHistogramReservoir(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testEmpty() {
+        Snapshot snapshot = new StripedHdrHistogramReservoir(4).getSnapshot();
+        assertThat(snapshot.size()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+        assertThat(snapshot.getMin()).isZero();
+        assertThat(snapshot.getValues()).isEmpty();
+    }
+
+    @Test
+    void testMergesConcurrentUpdates() throws Exception {
+        StripedHdrHistogramReservoir reservoir = new StripedHdrHistogramReservoir(8);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 16; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int value = 1; value <= 1000; value++) {
+                        reservoir.update(value);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(16_000);
+        assertThat(snapshot.getMin()).isOne();
+        assertThat(snapshot.getMax()).isBetween(1000L, 1010L);
+        assertThat(snapshot.getMean()).isCloseTo(500.5, within(5.0));
+        assertThat(snapshot.getMedian()).isCloseTo(500, within(5.0));
+        assertThat(snapshot.get99thPercentile()).isCloseTo(990, within(10.0));
+        assertThat(snapshot.getValues()).hasSize(16_000);
+    }
+
+    @Test
+    void testAccumulatesAcrossSnapshots() {
+        StripedHdrHistogramReservoir reservoir = new StripedHdrHistogramReservoir(2);
+        reservoir.update(10);
+        assertThat(reservoir.size()).isOne();
+        reservoir.update(20);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.getValues()).containsExactly(10, 20);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.dump(output);
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8)).containsSubsequence("10", "20");
+    }
+
+    @Test
+    void testTaggedMetricRegistrySupplier() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withReservoirs(MetricRegistries.stripedHdrHistogramReservoirSupplier())
+                .build();
+        MetricName name = MetricName.builder().safeName("timer").build();
+        registry.timer(name).update(42, TimeUnit.NANOSECONDS);
+        assertThat(registry.timer(name).getSnapshot().getMax()).isEqualTo(42);
+    }
+}
@@ -44,6 +44,7 @@ final class TaggedMetricsScheduledExecutorServiceTest {
     private static final MetricName SCHEDULED_REPETITIVELY = metricName("scheduled.repetitively");
     private static final MetricName SCHEDULED_OVERRAN = metricName("scheduled.overrun");
     private static final MetricName SCHEDULED_PERCENT_OF_PERIOD = metricName("scheduled.percent-of-period");
+    private static final MetricName SCHEDULED_CORRECTED_DURATION = metricName("scheduled.corrected-duration");
 
     @ParameterizedTest
     @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
@@ -116,7 +117,8 @@ final class TaggedMetricsScheduledExecutorServiceTest {
     void testScheduledDurationMetrics(TaggedMetricRegistry registry) throws Exception {
         ScheduledExecutorService executorService =
                 MetricRegistries.instrument(registry, Executors.newSingleThreadScheduledExecutor(), NAME);
-        assertThat(registry.getMetrics()).containsKeys(SCHEDULED_OVERRAN, SCHEDULED_PERCENT_OF_PERIOD);
+        assertThat(registry.getMetrics())
+                .containsKeys(SCHEDULED_OVERRAN, SCHEDULED_PERCENT_OF_PERIOD, SCHEDULED_CORRECTED_DURATION);
 
         assertThat(registry.counter(SCHEDULED_OVERRAN).getCount()).isZero();
         assertThat(registry.histogram(SCHEDULED_PERCENT_OF_PERIOD).getCount()).isZero();
@@ -138,6 +140,7 @@ final class TaggedMetricsScheduledExecutorServiceTest {
 
         assertThat(registry.counter(SCHEDULED_OVERRAN).getCount()).isZero();
         assertThat(registry.histogram(SCHEDULED_PERCENT_OF_PERIOD).getCount()).isOne();
+        assertThat(registry.timer(SCHEDULED_CORRECTED_DURATION).getCount()).isOne();
 
         TimeUnit.MILLISECONDS.sleep(2);
         finishSemaphore.release();
@@ -145,6 +148,10 @@ final class TaggedMetricsScheduledExecutorServiceTest {
 
         assertThat(registry.counter(SCHEDULED_OVERRAN).getCount()).isOne();
         assertThat(registry.histogram(SCHEDULED_PERCENT_OF_PERIOD).getCount()).isEqualTo(2);
+        // the overrun of at least two periods also records the delayed run, without counting it as a run
+        assertThat(registry.timer(SCHEDULED_CORRECTED_DURATION).getCount()).isEqualTo(2);
+        assertThat(registry.timer(SCHEDULED_CORRECTED_DURATION).getSnapshot().size())
+                .isGreaterThanOrEqualTo(3);
     }
 
     private static MetricName metricName(String metricName) {
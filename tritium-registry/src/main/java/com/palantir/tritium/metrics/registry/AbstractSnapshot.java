@@ -0,0 +1,59 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.codahale.metrics.Snapshot;
+import com.palantir.logsafe.SafeArg;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for snapshots which compute their quantiles and values from counts, such as histograms and sketches,
+ * validating the requested quantile and dumping the reported {@link #getValues() values}.
+ */
+abstract class AbstractSnapshot extends Snapshot {
+
+    @Override
+    public final double getValue(double quantile) {
+        checkArgument(
+                quantile >= 0.0 && quantile <= 1.0,
+                "quantile must be in [0..1]",
+                SafeArg.of("quantile", quantile));
+        return valueAt(quantile);
+    }
+
+    /**
+     * Returns the value at the specified quantile.
+     *
+     * @param quantile quantile in [0..1]
+     * @return value at the quantile
+     */
+    abstract double valueAt(double quantile);
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (long value : getValues()) {
+                writer.printf("%d%n", value);
+            }
+        }
+    }
+}
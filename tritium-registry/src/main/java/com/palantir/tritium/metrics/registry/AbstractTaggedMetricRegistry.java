@@ -16,23 +16,30 @@
 
 package com.palantir.tritium.metrics.registry;
 
+import static com.palantir.logsafe.Preconditions.checkArgument;
 import static com.palantir.logsafe.Preconditions.checkNotNull;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.palantir.logsafe.SafeArg;
 import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
@@ -42,12 +49,30 @@ import org.slf4j.LoggerFactory;
 
 public abstract class AbstractTaggedMetricRegistry implements TaggedMetricRegistry {
 
+    /** Tag value of the series into which series exceeding {@link #maxSeries(String)} are folded. */
+    public static final String OVERFLOW_TAG_VALUE = "__overflow__";
+
+    /** Name of the counter of distinct requested series folded into the overflow series. */
+    public static final String DROPPED_SERIES = "tritium.registry.dropped-series";
+
+    // bounds the requested names remembered for overflow series, so unbounded tag values cannot grow the registry
+    private static final int MAX_OVERFLOWED_SERIES = 10_000;
+
     // Logger must be initialized lazily, otherwise it's possible SharedTaggedMetricRegistries.getSingleton
     // can cause logger initialization, and singleton registry accessors in the logging framework can fail.
     private static final Supplier<Logger> log =
             Suppliers.memoize(() -> LoggerFactory.getLogger(AbstractTaggedMetricRegistry.class));
     private final Map<MetricName, Metric> registry = new ConcurrentHashMap<>();
     private final Map<Map.Entry<String, String>, TaggedMetricSet> taggedRegistries = new ConcurrentHashMap<>();
+    private final Map<Map.Entry<String, String>, MetricNameCache<MetricName>> taggedNames = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> seriesCounts = new ConcurrentHashMap<>();
+    // requested names folded into overflow series, which are not exported
+    private final Map<MetricName, Metric> overflowed = new ConcurrentHashMap<>();
+    // starts at one, as zero means removals are not tracked
+    private final AtomicLong removalEpoch = new AtomicLong(1);
+
+    // last observed count of each metric, populated by evictIdleMetrics
+    private final Map<MetricName, Activity> activity = new ConcurrentHashMap<>();
     private final Supplier<Reservoir> reservoirSupplier;
 
     public AbstractTaggedMetricRegistry(Supplier<Reservoir> reservoirSupplier) {
@@ -98,6 +123,34 @@ public abstract class AbstractTaggedMetricRegistry implements TaggedMetricRegist
         return () -> new Timer(createReservoir());
     }
 
+    /**
+     * Supplies the timer instance for the specified metric name, allowing registries to choose the timer type per
+     * metric. Defaults to {@link #timerSupplier()}.
+     *
+     * @param _metricName metric name of the timer
+     * @return timer supplier
+     */
+    @Nonnull
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    protected Supplier<Timer> timerSupplier(MetricName _metricName) {
+        return timerSupplier();
+    }
+
+    /**
+     * Returns the maximum number of series, that is distinct tag combinations, of counters, histograms, meters and
+     * timers with the specified safe name. Further series of the name are folded into a single series whose tag values
+     * are {@value #OVERFLOW_TAG_VALUE}, and counted once each by the {@value #DROPPED_SERIES} counter tagged with the
+     * metric name. Folded series are remembered, up to a bound across all names beyond which each lookup is counted,
+     * until a series of their name is removed and frees a slot. Defaults to unlimited. Only series of names with a
+     * limit are counted, so the limit of a name should not change from unlimited once it has series.
+     *
+     * @param _safeName safe name of the metrics
+     * @return maximum number of series
+     */
+    protected int maxSeries(String _safeName) {
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * Supplies reservoir instances for this registry.
      *
@@ -164,7 +217,7 @@ public abstract class AbstractTaggedMetricRegistry implements TaggedMetricRegist
 
     @Override
     public final Timer timer(MetricName metricName) {
-        return timer(metricName, timerSupplier());
+        return timer(metricName, timerSupplier(metricName));
     }
 
     @Override
@@ -177,9 +230,10 @@ public abstract class AbstractTaggedMetricRegistry implements TaggedMetricRegist
     public final Map<MetricName, Metric> getMetrics() {
         ImmutableMap.Builder<MetricName, Metric> result = ImmutableMap.builder();
         result.putAll(registry);
-        taggedRegistries.forEach((tag, metrics) -> metrics.getMetrics()
-                .forEach((metricName, metric) ->
-                        result.put(RealMetricName.create(metricName, tag.getKey(), tag.getValue()), metric)));
+        taggedRegistries.forEach((tag, metrics) -> {
+            MetricNameCache<MetricName> names = taggedNames(tag);
+            metrics.getMetrics().forEach((metricName, metric) -> result.put(names.get(metricName), metric));
+        });
 
         return result.build();
     }
@@ -187,36 +241,248 @@ public abstract class AbstractTaggedMetricRegistry implements TaggedMetricRegist
     @Override
     public final void forEachMetric(BiConsumer<MetricName, Metric> consumer) {
         registry.forEach(consumer);
-        taggedRegistries.forEach((tag, metrics) -> metrics.forEachMetric((metricName, metric) ->
-                consumer.accept(RealMetricName.create(metricName, tag.getKey(), tag.getValue()), metric)));
+        taggedRegistries.forEach((tag, metrics) -> {
+            MetricNameCache<MetricName> names = taggedNames(tag);
+            metrics.forEachMetric((metricName, metric) -> consumer.accept(names.get(metricName), metric));
+        });
+    }
+
+    private MetricNameCache<MetricName> taggedNames(Map.Entry<String, String> tag) {
+        return taggedNames.computeIfAbsent(
+                tag, key -> new MetricNameCache<>(name -> RealMetricName.create(name, key.getKey(), key.getValue())));
     }
 
     @Override
     public final Optional<Metric> remove(MetricName metricName) {
-        return Optional.ofNullable(registry.remove(metricName));
+        Metric removed = registry.remove(metricName);
+        if (removed != null) {
+            removalEpoch.incrementAndGet();
+            released(metricName, removed);
+        }
+        return Optional.ofNullable(removed);
+    }
+
+    @Override
+    public final long removalEpoch() {
+        return removalEpoch.get();
+    }
+
+    /**
+     * Removes the counters, histograms, meters and timers whose counts have not changed for at least the specified
+     * timeout, for example to bound the metrics of endpoints or tenants which are no longer used. Metrics are
+     * recreated if they are requested again, and callers which cache metrics can notice evictions through {@link
+     * #removalEpoch()}. Counters are only evicted while their count is zero, as their count is a value rather than a
+     * number of updates, for example a running total, which would be lost if they were evicted.
+     *
+     * <p>Activity is observed by comparing the counts of metrics between calls, rather than by recording a coarse last
+     * update time on each update, as timers, meters and histograms may be created by any supplier and their updates
+     * do not pass through the registry. Updates therefore do not pay for tracking activity, and a metric is evicted
+     * once its count has been unchanged across calls spanning the timeout, so idle time is only resolved to the
+     * interval between calls. Call this periodically, for example on each export. A metric updated while it is being
+     * evicted is restored, unless it has already been recreated, in which case the racing updates are lost.
+     *
+     * @param idleTimeout minimum time a metric must be idle before it is evicted
+     * @return number of evicted metrics
+     */
+    public final int evictIdleMetrics(Duration idleTimeout) {
+        return evictIdleMetrics(idleTimeout, Clock.defaultClock().getTick());
+    }
+
+    @VisibleForTesting
+    final synchronized int evictIdleMetrics(Duration idleTimeout, long nowNanos) {
+        checkArgument(!checkNotNull(idleTimeout, "idleTimeout").isNegative(), "idleTimeout must be non-negative");
+        long idleNanos = idleTimeout.toNanos();
+        int evicted = 0;
+        for (Map.Entry<MetricName, Metric> entry : registry.entrySet()) {
+            if (!(entry.getValue() instanceof Counting) || entry.getValue() instanceof Gauge) {
+                continue;
+            }
+            MetricName metricName = entry.getKey();
+            Metric metric = entry.getValue();
+            long count = ((Counting) metric).getCount();
+            Activity last = activity.get(metricName);
+            if (last == null || last.metric != metric) {
+                activity.put(metricName, new Activity(metric, count, nowNanos));
+            } else if (last.count != count) {
+                last.update(count, nowNanos);
+            } else if (nowNanos - last.updatedNanos >= idleNanos
+                    && (count == 0 || !(metric instanceof Counter))
+                    && evict(metricName, last, nowNanos)) {
+                evicted++;
+            }
+        }
+        // drop activity of metrics removed or replaced concurrently
+        activity.entrySet().removeIf(entry -> registry.get(entry.getKey()) != entry.getValue().metric);
+        return evicted;
+    }
+
+    private boolean evict(MetricName metricName, Activity last, long nowNanos) {
+        if (!registry.remove(metricName, last.metric)) {
+            return false;
+        }
+        removalEpoch.incrementAndGet();
+        // an update may have raced with the removal, as callers may hold the metric, in which case restore it
+        long count = ((Counting) last.metric).getCount();
+        if (count != last.count && registry.putIfAbsent(metricName, last.metric) == null) {
+            last.update(count, nowNanos);
+            return false;
+        }
+        released(metricName, last.metric);
+        return true;
+    }
+
+    private void released(MetricName metricName, Metric metric) {
+        activity.remove(metricName);
+        if (!(metric instanceof Gauge) && !isOverflow(metricName)) {
+            releaseSeries(metricName.safeName());
+        }
+        if (!overflowed.isEmpty()) {
+            // a freed slot or removed overflow series means folded series of the name must be requested again
+            overflowed.keySet().removeIf(name -> name.safeName().equals(metricName.safeName()));
+        }
+        onRemoval(metricName, metric);
     }
 
+    /**
+     * Called after a metric has been removed from this registry, allowing registries to release resources held by
+     * the metrics they create.
+     *
+     * @param metricName name of the removed metric
+     * @param metric removed metric
+     */
+    protected void onRemoval(MetricName metricName, Metric metric) {}
+
     @Override
     public final void addMetrics(String safeTagName, String safeTagValue, TaggedMetricSet other) {
-        taggedRegistries.put(Maps.immutableEntry(safeTagName, safeTagValue), other);
+        Map.Entry<String, String> tag = Maps.immutableEntry(safeTagName, safeTagValue);
+        taggedRegistries.put(tag, other);
+        taggedNames.remove(tag);
     }
 
     @Override
     public final Optional<TaggedMetricSet> removeMetrics(String safeTagName, String safeTagValue) {
-        return Optional.ofNullable(taggedRegistries.remove(Maps.immutableEntry(safeTagName, safeTagValue)));
+        Map.Entry<String, String> tag = Maps.immutableEntry(safeTagName, safeTagValue);
+        taggedNames.remove(tag);
+        return Optional.ofNullable(taggedRegistries.remove(tag));
     }
 
     @Override
     public final boolean removeMetrics(String safeTagName, String safeTagValue, TaggedMetricSet metrics) {
-        return taggedRegistries.remove(Maps.immutableEntry(safeTagName, safeTagValue), metrics);
+        Map.Entry<String, String> tag = Maps.immutableEntry(safeTagName, safeTagValue);
+        if (taggedRegistries.remove(tag, metrics)) {
+            taggedNames.remove(tag);
+            return true;
+        }
+        return false;
     }
 
     protected final <T extends Metric> T getOrAdd(
             MetricName metricName, Class<T> metricClass, Supplier<T> metricSupplier) {
-        Metric metric = registry.computeIfAbsent(metricName, name -> metricSupplier.get());
+        Metric metric = registry.get(metricName);
+        if (metric == null) {
+            metric = overflowed.get(metricName);
+        }
+        if (metric == null) {
+            metric = registry.computeIfAbsent(metricName, name -> create(name, metricClass, metricSupplier, false));
+        }
+        if (metric == null) {
+            metric = overflow(metricName, metricClass, metricSupplier);
+        }
         return checkNotNull(checkMetricType(metricName, metricClass, metric), "metric");
     }
 
+    /**
+     * Creates a metric for a new name, or returns null if the name exceeds the limit of series of its safe name. Only
+     * called when a name is first added, so lookups of existing metrics do not consult the limits. Overflow series do
+     * not count towards the limit.
+     */
+    @Nullable
+    private <T extends Metric> Metric create(
+            MetricName metricName, Class<T> metricClass, Supplier<T> metricSupplier, boolean overflow) {
+        if (metricClass == Gauge.class || overflow) {
+            return metricSupplier.get();
+        }
+        if (!reserveSeries(metricName.safeName(), maxSeries(metricName.safeName()))) {
+            return null;
+        }
+        try {
+            return metricSupplier.get();
+        } catch (RuntimeException | Error e) {
+            releaseSeries(metricName.safeName());
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the overflow series for a name exceeding the limit of its safe name, remembering the name so that its
+     * later lookups neither consult the limit again nor count as further dropped series.
+     */
+    private <T extends Metric> Metric overflow(
+            MetricName metricName, Class<T> metricClass, Supplier<T> metricSupplier) {
+        MetricName.Builder overflowName = MetricName.builder().safeName(metricName.safeName());
+        metricName.safeTags().keySet().forEach(key -> overflowName.putSafeTags(key, OVERFLOW_TAG_VALUE));
+        Metric metric =
+                registry.computeIfAbsent(overflowName.build(), name -> create(name, metricClass, metricSupplier, true));
+        if (overflowed.size() < MAX_OVERFLOWED_SERIES && overflowed.putIfAbsent(metricName, metric) != null) {
+            return metric;
+        }
+
+        MetricName droppedSeries = MetricName.builder()
+                .safeName(DROPPED_SERIES)
+                .putSafeTags("metric-name", metricName.safeName())
+                .build();
+        Metric dropped =
+                registry.computeIfAbsent(droppedSeries, name -> create(name, Counter.class, counterSupplier(), true));
+        checkNotNull(checkMetricType(droppedSeries, Counter.class, dropped), "dropped").inc();
+        return metric;
+    }
+
+    private static boolean isOverflow(MetricName metricName) {
+        return metricName.safeName().equals(DROPPED_SERIES)
+                || (!metricName.safeTags().isEmpty()
+                        && metricName.safeTags().values().stream().allMatch(OVERFLOW_TAG_VALUE::equals));
+    }
+
+    private boolean reserveSeries(String safeName, int limit) {
+        if (limit == Integer.MAX_VALUE) {
+            // series of unlimited names are not counted, so they do not retain an entry per name
+            return true;
+        }
+        AtomicInteger count = seriesCounts.computeIfAbsent(safeName, _name -> new AtomicInteger());
+        int current;
+        do {
+            current = count.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!count.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void releaseSeries(String safeName) {
+        AtomicInteger count = seriesCounts.get(safeName);
+        if (count != null) {
+            count.updateAndGet(current -> Math.max(current - 1, 0));
+        }
+    }
+
+    private static final class Activity {
+        private final Metric metric;
+        private long count;
+        private long updatedNanos;
+
+        Activity(Metric metric, long count, long updatedNanos) {
+            this.metric = metric;
+            this.count = count;
+            this.updatedNanos = updatedNanos;
+        }
+
+        void update(long newCount, long newUpdatedNanos) {
+            count = newCount;
+            updatedNanos = newUpdatedNanos;
+        }
+    }
+
     @Nullable
     static <T extends Metric> T checkMetricType(MetricName metricName, Class<T> metricClass, @Nullable Metric metric) {
         if (metric == null || metricClass.isInstance(metric)) {
@@ -0,0 +1,127 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import java.util.Arrays;
+
+/**
+ * Mutable store of counts for contiguous sketch bin indexes, which holds at most {@code maxBins} bins by collapsing the
+ * lowest bins into the lowest retained bin. The backing array grows with the range of recorded indexes, so memory use
+ * is proportional to the spread of values rather than to {@code maxBins}. Not thread safe.
+ */
+final class CollapsingBinStore {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int MIN_CAPACITY = 32;
+
+    private final int maxBins;
+    private long[] counts = EMPTY;
+    private int offset;
+    private int minIndex = Integer.MAX_VALUE;
+    private int maxIndex = Integer.MIN_VALUE;
+
+    CollapsingBinStore(int maxBins) {
+        this.maxBins = maxBins;
+    }
+
+    int maxBins() {
+        return maxBins;
+    }
+
+    CollapsingBinStore copy() {
+        CollapsingBinStore copy = new CollapsingBinStore(maxBins);
+        copy.addAll(this);
+        return copy;
+    }
+
+    boolean isEmpty() {
+        return minIndex > maxIndex;
+    }
+
+    int minIndex() {
+        return minIndex;
+    }
+
+    int maxIndex() {
+        return maxIndex;
+    }
+
+    long count(int index) {
+        return index < minIndex || index > maxIndex ? 0 : counts[index - offset];
+    }
+
+    void add(int index, long count) {
+        if (count == 0) {
+            return;
+        }
+        int target = index;
+        if (isEmpty()) {
+            minIndex = index;
+            maxIndex = index;
+        } else if (index < minIndex) {
+            // collapse values below the retained range into its lowest bin
+            target = Math.max(index, maxIndex - maxBins + 1);
+            minIndex = target;
+        } else if (index > maxIndex) {
+            int newMinIndex = Math.max(minIndex, index - maxBins + 1);
+            long collapsed = 0;
+            if (newMinIndex > minIndex) {
+                // collapse the lowest bins to make room for the new highest bin
+                int end = Math.min(newMinIndex - 1, maxIndex);
+                for (int i = minIndex; i <= end; i++) {
+                    collapsed += counts[i - offset];
+                    counts[i - offset] = 0;
+                }
+                minIndex = newMinIndex;
+            }
+            maxIndex = index;
+            ensureCapacity();
+            counts[minIndex - offset] += collapsed;
+        }
+        ensureCapacity();
+        counts[target - offset] += count;
+    }
+
+    void addAll(CollapsingBinStore other) {
+        for (int index = other.minIndex; index <= other.maxIndex; index++) {
+            add(index, other.counts[index - other.offset]);
+        }
+    }
+
+    private void ensureCapacity() {
+        if (minIndex >= offset && maxIndex < offset + counts.length) {
+            return;
+        }
+        int span = maxIndex - minIndex + 1;
+        int capacity = Math.min(Math.max(span, Math.max(MIN_CAPACITY, counts.length * 2)), Math.max(span, maxBins));
+        int newOffset = minIndex - (capacity - span) / 2;
+        long[] resized = new long[capacity];
+        int copyFrom = Math.max(offset, newOffset);
+        int copyTo = Math.min(offset + counts.length, newOffset + capacity);
+        if (copyFrom < copyTo) {
+            System.arraycopy(counts, copyFrom - offset, resized, copyFrom - newOffset, copyTo - copyFrom);
+        }
+        counts = resized;
+        offset = newOffset;
+    }
+
+    @Override
+    public String toString() {
+        return "CollapsingBinStore{minIndex=" + minIndex + ", maxIndex=" + maxIndex + ", counts="
+                + Arrays.toString(counts) + '}';
+    }
+}
@@ -16,14 +16,125 @@
 
 package com.palantir.tritium.metrics.registry;
 
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
 import com.google.auto.service.AutoService;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import javax.annotation.Nonnull;
 
 @AutoService(TaggedMetricRegistry.class)
 public final class DefaultTaggedMetricRegistry extends AbstractTaggedMetricRegistry {
 
+    private final Predicate<MetricName> summaryTimers;
+    private final ToIntFunction<String> maxSeries;
+    private final boolean stripedMeters;
+
     public DefaultTaggedMetricRegistry() {
-        super(ExponentiallyDecayingReservoir::new);
+        this(builder());
+    }
+
+    private DefaultTaggedMetricRegistry(Builder builder) {
+        super(builder.reservoirSupplier);
+        this.summaryTimers = builder.summaryTimers;
+        this.maxSeries = builder.maxSeries;
+        this.stripedMeters = builder.stripedMeters;
+    }
+
+    /**
+     * Returns a builder of registries which differ from the default, for example in the reservoirs of their timers or
+     * the number of series they allow.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    protected Supplier<Meter> meterSupplier() {
+        return stripedMeters ? StripedMeter::new : super.meterSupplier();
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    protected Supplier<Timer> timerSupplier(MetricName metricName) {
+        return summaryTimers.test(metricName) ? SummaryTimer::new : timerSupplier();
+    }
+
+    @Override
+    protected int maxSeries(String safeName) {
+        return maxSeries.applyAsInt(safeName);
+    }
+
+    public static final class Builder {
+
+        private Supplier<Reservoir> reservoirSupplier = ExponentiallyDecayingReservoir::new;
+        private Predicate<MetricName> summaryTimers = _metricName -> false;
+        private ToIntFunction<String> maxSeries = _safeName -> Integer.MAX_VALUE;
+        private boolean stripedMeters;
+
+        private Builder() {}
+
+        /**
+         * Backs timers and histograms with reservoirs from the specified supplier, rather than exponentially decaying
+         * reservoirs.
+         *
+         * @param reservoirSupplier supplier of reservoirs for timers and histograms
+         * @return builder
+         */
+        public Builder withReservoirs(Supplier<Reservoir> reservoirSupplier) {
+            this.reservoirSupplier = checkNotNull(reservoirSupplier, "reservoirSupplier");
+            return this;
+        }
+
+        /**
+         * Creates {@link SummaryTimer summary timers} for metric names matching the specified predicate, for example
+         * the timers of high-cardinality endpoints, rather than timers backed by reservoirs.
+         *
+         * @param summaryTimers predicate selecting the metric names of summary timers
+         * @return builder
+         */
+        public Builder withSummaryTimers(Predicate<MetricName> summaryTimers) {
+            this.summaryTimers = checkNotNull(summaryTimers, "summaryTimers");
+            return this;
+        }
+
+        /**
+         * Limits the number of series of each metric name, for example to bound the metrics of names tagged with
+         * unbounded values, folding further series into an overflow series as described by {@link
+         * AbstractTaggedMetricRegistry#maxSeries(String)}.
+         *
+         * @param maxSeries maximum number of series for each safe metric name
+         * @return builder
+         */
+        public Builder withCardinalityLimits(ToIntFunction<String> maxSeries) {
+            this.maxSeries = checkNotNull(maxSeries, "maxSeries");
+            return this;
+        }
+
+        /**
+         * Creates {@link StripedMeter striped meters}, which compute their rates when read, for meters marked
+         * concurrently from many threads.
+         *
+         * @return builder
+         */
+        public Builder withStripedMeters() {
+            this.stripedMeters = true;
+            return this;
+        }
+
+        public DefaultTaggedMetricRegistry build() {
+            return new DefaultTaggedMetricRegistry(this);
+        }
     }
 
     /**
@@ -25,6 +25,7 @@ import java.util.function.BiConsumer;
 
 public final class DropwizardTaggedMetricSet implements TaggedMetricSet {
     private final MetricSet metricSet;
+    private final MetricNameCache<String> names = new MetricNameCache<>(RealMetricName::create);
 
     public DropwizardTaggedMetricSet(MetricSet metricSet) {
         this.metricSet = metricSet;
@@ -33,11 +34,11 @@ public final class DropwizardTaggedMetricSet implements TaggedMetricSet {
     @Override
     public Map<MetricName, Metric> getMetrics() {
         return metricSet.getMetrics().entrySet().stream()
-                .collect(toMap(entry -> RealMetricName.create(entry.getKey()), Map.Entry::getValue));
+                .collect(toMap(entry -> names.get(entry.getKey()), Map.Entry::getValue));
     }
 
     @Override
     public void forEachMetric(BiConsumer<MetricName, Metric> consumer) {
-        metricSet.getMetrics().forEach((name, metric) -> consumer.accept(RealMetricName.create(name), metric));
+        metricSet.getMetrics().forEach((name, metric) -> consumer.accept(names.get(name), metric));
     }
 }
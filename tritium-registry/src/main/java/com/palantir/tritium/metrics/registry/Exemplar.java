@@ -0,0 +1,42 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import java.util.Optional;
+import org.immutables.value.Value;
+
+/** Recorded value captured by an {@link ExemplarReservoir}, with the time it was recorded and its trace. */
+@Value.Immutable
+@Value.Style(visibility = Value.Style.ImplementationVisibility.PACKAGE)
+public interface Exemplar {
+
+    /** Recorded value, which is the duration in nanoseconds for timers. */
+    @Value.Parameter
+    long value();
+
+    /** Wall clock time the value was recorded, in milliseconds since the epoch. */
+    @Value.Parameter
+    long timestampMillis();
+
+    /** Trace ID of the thread which recorded the value, if it was tracing. */
+    @Value.Parameter
+    Optional<String> traceId();
+
+    static Exemplar of(long value, long timestampMillis, Optional<String> traceId) {
+        return ImmutableExemplar.of(value, timestampMillis, traceId);
+    }
+}
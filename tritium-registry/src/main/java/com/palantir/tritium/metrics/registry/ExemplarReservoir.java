@@ -0,0 +1,214 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Reservoir which captures exemplars of its recorded values, linking them to the trace which recorded them, so that a
+ * representative slow request can be found when a timer's quantiles spike. For each interval it keeps the maximum
+ * value and a randomly chosen value at or above the 99th percentile at the start of the interval, each with the time
+ * it was recorded and the current trace ID. An interval lasts at least a minute and ends on the first snapshot taken
+ * after that minute. Snapshots are {@link ExemplarSnapshot} instances exposing the exemplars of the current and
+ * previous intervals, so taking a snapshot does not reset anything and every reader sees the exemplars captured so far.
+ *
+ * <p>Exemplars are stored in preallocated slots guarded by sequence numbers, so recording values neither allocates nor
+ * blocks: a value which would replace an exemplar being written concurrently is not captured. A value racing with the
+ * end of an interval is captured in the interval it started in, which remains visible as the previous interval.
+ */
+public final class ExemplarReservoir implements Reservoir, MemoryEstimated {
+
+    private static final int MAX_READ_ATTEMPTS = 100;
+    private static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Reservoir delegate;
+    private final TraceIdSupplier traceIds;
+    private final Clock clock;
+
+    // writers use the slots of the current interval's parity, while the other slots hold the previous interval
+    private final Slot[] maxSlots = {new Slot(), new Slot()};
+    private final Slot[] sampleSlots = {new Slot(), new Slot()};
+    private final AtomicLong sampleCandidates = new AtomicLong();
+
+    private volatile long interval;
+    private volatile long sampleThreshold = Long.MAX_VALUE;
+
+    // guarded by this
+    private long intervalStartTick;
+
+    /** Supplies the current trace ID, if any. */
+    @FunctionalInterface
+    public interface TraceIdSupplier {
+        @Nullable
+        String currentTraceId();
+    }
+
+    public ExemplarReservoir(Reservoir delegate, TraceIdSupplier traceIds) {
+        this(delegate, traceIds, Clock.defaultClock());
+    }
+
+    @VisibleForTesting
+    ExemplarReservoir(Reservoir delegate, TraceIdSupplier traceIds, Clock clock) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.traceIds = checkNotNull(traceIds, "traceIds");
+        this.clock = checkNotNull(clock, "clock");
+        this.intervalStartTick = clock.getTick();
+    }
+
+    /**
+     * Supplies timers which capture exemplars of their durations, for use with {@link
+     * TaggedMetricRegistry#timer(MetricName, Supplier)}.
+     *
+     * @param reservoirSupplier supplier of reservoirs for the recorded durations
+     * @param traceIds supplier of the current trace ID
+     * @return timer supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Timer> timers(Supplier<Reservoir> reservoirSupplier, TraceIdSupplier traceIds) {
+        checkNotNull(reservoirSupplier, "reservoirSupplier");
+        checkNotNull(traceIds, "traceIds");
+        return () -> new Timer(new ExemplarReservoir(reservoirSupplier.get(), traceIds));
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void update(long value) {
+        delegate.update(value);
+        long current = interval;
+        int parity = (int) (current & 1);
+        maxSlots[parity].offerIfGreater(value, current);
+        if (value >= sampleThreshold) {
+            // reservoir sampling of a single value from those at or above the threshold
+            long candidates = sampleCandidates.incrementAndGet();
+            if (candidates == 1 || ThreadLocalRandom.current().nextLong(candidates) == 0) {
+                sampleSlots[parity].offer(value, current);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the delegate reservoir with the exemplars of the current and previous intervals, starting a
+     * new interval if the current one has lasted at least a minute.
+     */
+    @Override
+    public synchronized ExemplarSnapshot getSnapshot() {
+        Snapshot snapshot = delegate.getSnapshot();
+        long now = clock.getTick();
+        if (now - intervalStartTick >= INTERVAL_NANOS) {
+            long completed = interval;
+            interval = completed + 1;
+            intervalStartTick = now;
+            sampleThreshold = snapshot.size() == 0 ? Long.MAX_VALUE : (long) snapshot.get99thPercentile();
+            sampleCandidates.set(0);
+        }
+
+        long current = interval;
+        int parity = (int) (current & 1);
+        List<Exemplar> exemplars = new ArrayList<>(3);
+        Optional<Exemplar> max = maxSlots[parity].read(current);
+        Optional<Exemplar> previousMax = maxSlots[parity ^ 1].read(current - 1);
+        if (!max.isPresent() || (previousMax.isPresent() && previousMax.get().value() > max.get().value())) {
+            max = previousMax;
+        }
+        max.ifPresent(exemplars::add);
+        addIfAbsent(exemplars, sampleSlots[parity].read(current));
+        addIfAbsent(exemplars, sampleSlots[parity ^ 1].read(current - 1));
+        return new ExemplarSnapshot(snapshot, exemplars);
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // four slots, excluding the trace IDs which are shared with the tracing library
+        return 128 + 4 * 72 + MetricMemoryEstimator.reservoirBytes(delegate);
+    }
+
+    private final class Slot {
+        // odd while an exemplar is being written
+        private final AtomicLong sequence = new AtomicLong();
+
+        private volatile long slotInterval = Long.MIN_VALUE;
+        private volatile long value;
+        private volatile long timestampMillis;
+
+        @Nullable
+        private volatile String traceId;
+
+        void offerIfGreater(long newValue, long newInterval) {
+            long seq = sequence.get();
+            if ((seq & 1) == 0
+                    && (slotInterval != newInterval || newValue > value)
+                    && sequence.compareAndSet(seq, seq + 1)) {
+                write(seq, newValue, newInterval);
+            }
+        }
+
+        void offer(long newValue, long newInterval) {
+            long seq = sequence.get();
+            if ((seq & 1) == 0 && sequence.compareAndSet(seq, seq + 1)) {
+                write(seq, newValue, newInterval);
+            }
+        }
+
+        private void write(long seq, long newValue, long newInterval) {
+            slotInterval = newInterval;
+            value = newValue;
+            timestampMillis = clock.getTime();
+            traceId = traceIds.currentTraceId();
+            sequence.set(seq + 2);
+        }
+
+        Optional<Exemplar> read(long expectedInterval) {
+            for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+                long seq = sequence.get();
+                if ((seq & 1) == 0) {
+                    long readInterval = slotInterval;
+                    long readValue = value;
+                    long readTimestamp = timestampMillis;
+                    String readTraceId = traceId;
+                    if (sequence.get() == seq) {
+                        return readInterval == expectedInterval
+                                ? Optional.of(Exemplar.of(readValue, readTimestamp, Optional.ofNullable(readTraceId)))
+                                : Optional.empty();
+                    }
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static void addIfAbsent(List<Exemplar> exemplars, Optional<Exemplar> exemplar) {
+        exemplar.filter(value -> !exemplars.contains(value)).ifPresent(exemplars::add);
+    }
+}
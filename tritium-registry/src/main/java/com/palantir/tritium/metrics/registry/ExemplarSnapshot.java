@@ -0,0 +1,84 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Snapshot;
+import com.google.common.collect.ImmutableList;
+import java.io.OutputStream;
+import java.util.List;
+
+/** Snapshot of an {@link ExemplarReservoir}, exposing the exemplars of its current and previous intervals. */
+public final class ExemplarSnapshot extends Snapshot {
+
+    private final Snapshot delegate;
+    private final ImmutableList<Exemplar> exemplars;
+
+    ExemplarSnapshot(Snapshot delegate, List<Exemplar> exemplars) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.exemplars = ImmutableList.copyOf(exemplars);
+    }
+
+    /**
+     * Returns the exemplars captured during the current and previous intervals: the maximum value, followed by the
+     * randomly chosen values at or above the 99th percentile of the current and previous intervals, when recorded.
+     */
+    public List<Exemplar> exemplars() {
+        return exemplars;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        return delegate.getValue(quantile);
+    }
+
+    @Override
+    public long[] getValues() {
+        return delegate.getValues();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long getMax() {
+        return delegate.getMax();
+    }
+
+    @Override
+    public double getMean() {
+        return delegate.getMean();
+    }
+
+    @Override
+    public long getMin() {
+        return delegate.getMin();
+    }
+
+    @Override
+    public double getStdDev() {
+        return delegate.getStdDev();
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        delegate.dump(output);
+    }
+}
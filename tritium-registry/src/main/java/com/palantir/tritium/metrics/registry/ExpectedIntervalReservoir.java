@@ -0,0 +1,127 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.palantir.logsafe.SafeArg;
+import java.time.Duration;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Reservoir which corrects for coordinated omission, for callers which expect to record a value at a fixed interval,
+ * such as periodic tasks or load generators. When a recorded value exceeds the expected interval, the values which
+ * would have been recorded by the callers delayed behind it are also recorded, in the same way as HdrHistogram's
+ * {@code recordValueWithExpectedInterval}, so that tail quantiles reflect stalls.
+ *
+ * <p>Corrected values are only added to the reservoir, so a {@link Timer} backed by this reservoir still counts its
+ * actual updates while its snapshots include the corrected values.
+ */
+public final class ExpectedIntervalReservoir implements Reservoir, MemoryEstimated {
+
+    /**
+     * Maximum number of corrected values recorded for a single value, which bounds the cost of recording a stall of
+     * many intervals. The largest corrected values are recorded.
+     */
+    public static final int MAX_CORRECTED_VALUES = 1024;
+
+    private final Reservoir delegate;
+    private final LongConsumer corrections;
+    private final long expectedInterval;
+
+    /**
+     * Creates a reservoir which corrects values recorded in the specified reservoir.
+     *
+     * @param delegate reservoir to record values and corrected values
+     * @param expectedInterval expected interval between values, in the units of the recorded values, which are
+     *     nanoseconds for timers
+     */
+    public ExpectedIntervalReservoir(Reservoir delegate, long expectedInterval) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.corrections = delegate::update;
+        checkArgument(
+                expectedInterval > 0,
+                "expectedInterval must be positive",
+                SafeArg.of("expectedInterval", expectedInterval));
+        this.expectedInterval = expectedInterval;
+    }
+
+    /**
+     * Supplies timers which correct their recorded durations for the specified expected interval between updates.
+     *
+     * @param expectedInterval expected interval between updates
+     * @param reservoirSupplier supplier of reservoirs for the recorded and corrected durations
+     * @return timer supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Timer> timers(Duration expectedInterval, Supplier<Reservoir> reservoirSupplier) {
+        long intervalNanos = checkNotNull(expectedInterval, "expectedInterval").toNanos();
+        checkArgument(
+                intervalNanos > 0,
+                "expectedInterval must be positive",
+                SafeArg.of("expectedInterval", expectedInterval));
+        checkNotNull(reservoirSupplier, "reservoirSupplier");
+        return () -> new Timer(new ExpectedIntervalReservoir(reservoirSupplier.get(), intervalNanos));
+    }
+
+    /**
+     * Passes the corrected values of the specified value for the specified expected interval to the recorder: the value
+     * less each multiple of the interval, for as long as the result is at least the interval, and for at most
+     * {@value #MAX_CORRECTED_VALUES} values. The value itself is not passed, so callers can record it separately, for
+     * example with a {@link Timer} while passing only the corrected values to its reservoir.
+     *
+     * @param value recorded value
+     * @param expectedInterval expected interval between values, or a non-positive value to record no corrections
+     * @param recorder recorder of the corrected values
+     */
+    public static void recordCorrectedValues(long value, long expectedInterval, LongConsumer recorder) {
+        if (expectedInterval <= 0) {
+            return;
+        }
+        long missing = value - expectedInterval;
+        for (int i = 0; i < MAX_CORRECTED_VALUES && missing >= expectedInterval; i++) {
+            recorder.accept(missing);
+            missing -= expectedInterval;
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void update(long value) {
+        delegate.update(value);
+        recordCorrectedValues(value, expectedInterval, corrections);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return delegate.getSnapshot();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 32 + MetricMemoryEstimator.reservoirBytes(delegate);
+    }
+}
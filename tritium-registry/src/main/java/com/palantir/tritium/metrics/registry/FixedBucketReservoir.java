@@ -0,0 +1,138 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+import com.palantir.logsafe.SafeArg;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Reservoir which only counts values at or below each of a fixed set of bucket boundaries, for example latency
+ * thresholds of service level objectives. Updates find their bucket by binary search and increment a {@link LongAdder},
+ * so they are cheap and do not contend, and snapshots have a fixed size and can be summed across nodes.
+ *
+ * <p>Snapshots are {@link FixedBucketSnapshot} instances, which expose the counts per bucket. Their quantiles are
+ * reported as the upper boundary of the bucket containing the quantile, capped at the exact maximum.
+ */
+public final class FixedBucketReservoir implements Reservoir, MemoryEstimated {
+
+    private final long[] boundaries;
+    private final LongAdder[] counts;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * Creates a reservoir with the specified inclusive upper boundaries, in ascending order. Values above the highest
+     * boundary are counted in an additional overflow bucket.
+     *
+     * @param boundaries inclusive upper bucket boundaries in ascending order
+     */
+    public FixedBucketReservoir(long... boundaries) {
+        this.boundaries = validate(boundaries).clone();
+        this.counts = new LongAdder[boundaries.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Supplies timers backed by fixed bucket reservoirs with the specified latency boundaries, for use with {@link
+     * TaggedMetricRegistry#timer(MetricName, Supplier)}.
+     *
+     * @param boundaries inclusive upper bucket boundaries in ascending order
+     * @return timer supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Timer> timers(Duration... boundaries) {
+        long[] nanos = Arrays.stream(checkNotNull(boundaries, "boundaries"))
+                .mapToLong(Duration::toNanos)
+                .toArray();
+        validate(nanos);
+        return () -> new Timer(new FixedBucketReservoir(nanos));
+    }
+
+    /**
+     * Supplies histograms backed by fixed bucket reservoirs with the specified boundaries, for use with {@link
+     * TaggedMetricRegistry#histogram(MetricName, Supplier)}.
+     *
+     * @param boundaries inclusive upper bucket boundaries in ascending order
+     * @return histogram supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Histogram> histograms(long... boundaries) {
+        long[] copy = validate(boundaries).clone();
+        return () -> new Histogram(new FixedBucketReservoir(copy));
+    }
+
+    private static long[] validate(long[] boundaries) {
+        checkArgument(checkNotNull(boundaries, "boundaries").length > 0, "At least one boundary is required");
+        for (int i = 1; i < boundaries.length; i++) {
+            checkArgument(
+                    boundaries[i - 1] < boundaries[i],
+                    "Boundaries must be in strictly ascending order",
+                    SafeArg.of("boundaries", Arrays.toString(boundaries)));
+        }
+        return boundaries;
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        counts[bucket(value)].increment();
+        sum.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    @Override
+    public FixedBucketSnapshot getSnapshot() {
+        long[] snapshotCounts = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshotCounts[i] = counts[i].sum();
+        }
+        return new FixedBucketSnapshot(boundaries, snapshotCounts, sum.sum(), min.get(), max.get());
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // boundaries, and a count cell and array slot per bucket
+        return 192 + 8L * boundaries.length + 40L * counts.length;
+    }
+
+    private int bucket(long value) {
+        int index = Arrays.binarySearch(boundaries, value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+/**
+ * Snapshot of a {@link FixedBucketReservoir}, exposing the number of values counted by each bucket. Quantiles are
+ * reported as the upper boundary of the bucket containing the quantile, capped at the exact maximum.
+ */
+public final class FixedBucketSnapshot extends AbstractSnapshot {
+
+    private final long[] boundaries;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    FixedBucketSnapshot(long[] boundaries, long[] counts, long sum, long min, long max) {
+        this.boundaries = boundaries;
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        this.count = total;
+        this.sum = total == 0 ? 0 : sum;
+        this.min = total == 0 ? 0 : min;
+        this.max = total == 0 ? 0 : max;
+    }
+
+    /** Returns the inclusive upper boundaries of the buckets, excluding the final overflow bucket. */
+    public long[] boundaries() {
+        return boundaries.clone();
+    }
+
+    /**
+     * Returns the number of values counted by each bucket, where the last element counts values above the highest
+     * boundary.
+     */
+    public long[] counts() {
+        return counts.clone();
+    }
+
+    /**
+     * Returns the number of values at or below each boundary, where the last element is the total number of values,
+     * in the cumulative form used by Prometheus style histograms.
+     */
+    public long[] cumulativeCounts() {
+        long[] cumulative = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    @Override
+    double valueAt(double quantile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long[] getValues() {
+        long[] values = new long[size()];
+        int position = 0;
+        for (int i = 0; i < counts.length && position < values.length; i++) {
+            long value = value(i);
+            for (long j = 0; j < counts[i] && position < values.length; j++) {
+                values[position++] = value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    @Override
+    public long getMin() {
+        return min;
+    }
+
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0.0;
+        }
+        double mean = getMean();
+        double variance = 0;
+        for (int i = 0; i < counts.length; i++) {
+            double diff = value(i) - mean;
+            variance += counts[i] * diff * diff;
+        }
+        return Math.sqrt(variance / (count - 1));
+    }
+
+    private long value(int bucket) {
+        return bucket < boundaries.length ? Math.max(min, Math.min(max, boundaries[bucket])) : max;
+    }
+}
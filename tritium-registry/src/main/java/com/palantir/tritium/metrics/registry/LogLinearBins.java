@@ -0,0 +1,56 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+/**
+ * Log-linear histogram bin layout: values below {@value #SUB_BUCKETS} have a bin each, and each larger power of two
+ * range of values is split into {@value #SUB_BUCKETS} equal width bins. A bin is at most 1/32 of its values wide, so
+ * reporting the midpoint of a bin is within ~1.6% of any value counted in it.
+ */
+final class LogLinearBins {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Number of bins required to count any non-negative long value. */
+    static final int BINS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private LogLinearBins() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Returns the bin counting the specified value, where negative values are counted as zero. */
+    static int bin(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowestValue(int bin) {
+        if (bin < SUB_BUCKETS) {
+            return bin;
+        }
+        int shift = bin / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bin % SUB_BUCKETS) << shift;
+    }
+
+    static long highestValue(int bin) {
+        return bin + 1 < BINS ? lowestValue(bin + 1) - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+/**
+ * Snapshot of {@link LogLinearBins} counts, reporting the midpoint of a bin clamped to the exact minimum and maximum.
+ */
+final class LogLinearHistogramSnapshot extends AbstractSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    LogLinearHistogramSnapshot(long[] counts, long count, long sum, long min, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    double valueAt(double quantile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        if (rank == 1) {
+            return min;
+        }
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long[] getValues() {
+        long[] values = new long[size()];
+        int index = 0;
+        for (int i = 0; i < counts.length && index < values.length; i++) {
+            long value = value(i);
+            for (long j = 0; j < counts[i] && index < values.length; j++) {
+                values[index++] = value;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    @Override
+    public long getMin() {
+        return min;
+    }
+
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0.0;
+        }
+        double mean = getMean();
+        double variance = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                double diff = value(i) - mean;
+                variance += counts[i] * diff * diff;
+            }
+        }
+        return Math.sqrt(variance / (count - 1));
+    }
+
+    private long value(int bin) {
+        long lowest = LogLinearBins.lowestValue(bin);
+        long midpoint = lowest + (LogLinearBins.highestValue(bin) - lowest) / 2;
+        return Math.max(min, Math.min(max, midpoint));
+    }
+}
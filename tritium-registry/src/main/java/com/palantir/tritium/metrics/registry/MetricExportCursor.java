@@ -0,0 +1,122 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Metric;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cursor over the metrics of a {@link TaggedMetricRegistry}, reporting on each poll only the metrics created, updated
+ * or removed since its previous poll, so that exporters can ship deltas rather than every metric. The first poll
+ * reports every metric as created.
+ *
+ * <p>Counters, histograms, meters and timers are updated when their count changes; values derived from time, such as
+ * meter rates and decaying quantiles, are not considered. Gauges and other metrics are reported as updated on every
+ * poll. Metrics are visited through {@link TaggedMetricSet#forEachMetric}, which for {@link
+ * AbstractTaggedMetricRegistry} reuses the names of metrics from {@link TaggedMetricRegistry#addMetrics added metric
+ * sets} rather than creating them on every poll.
+ *
+ * <p>Each cursor tracks the state of every metric separately, so exporters should reuse a single cursor.
+ */
+public final class MetricExportCursor {
+
+    /** Receives the changes reported by a poll. */
+    public interface Listener {
+        void created(MetricName metricName, Metric metric);
+
+        void updated(MetricName metricName, Metric metric);
+
+        void removed(MetricName metricName);
+    }
+
+    private final TaggedMetricSet metrics;
+
+    // guarded by this
+    private final Map<MetricName, State> states = new HashMap<>();
+    private long epoch;
+
+    MetricExportCursor(TaggedMetricSet metrics) {
+        this.metrics = checkNotNull(metrics, "metrics");
+    }
+
+    /**
+     * Reports the metrics created, updated or removed since the previous poll to the specified listener.
+     *
+     * @param listener listener receiving the changes
+     */
+    public synchronized void poll(Listener listener) {
+        long current = ++epoch;
+        metrics.forEachMetric((metricName, metric) -> visit(metricName, metric, current, listener));
+        removeUnseen(current, listener);
+    }
+
+    private void visit(MetricName metricName, Metric metric, long current, Listener listener) {
+        State state = states.get(metricName);
+        if (state == null || state.metric != metric) {
+            state = new State(metricName, metric);
+            states.put(metricName, state);
+            state.epoch = current;
+            listener.created(metricName, metric);
+        } else {
+            state.epoch = current;
+            if (state.modified()) {
+                listener.updated(state.name, metric);
+            }
+        }
+    }
+
+    private void removeUnseen(long current, Listener listener) {
+        for (Iterator<State> it = states.values().iterator(); it.hasNext(); ) {
+            State state = it.next();
+            if (state.epoch != current) {
+                it.remove();
+                listener.removed(state.name);
+            }
+        }
+    }
+
+    private static final class State {
+        private final MetricName name;
+        private final Metric metric;
+        private long count;
+        private long epoch;
+
+        State(MetricName name, Metric metric) {
+            this.name = name;
+            this.metric = metric;
+            this.count = count(metric);
+        }
+
+        boolean modified() {
+            if (!(metric instanceof Counting)) {
+                return true;
+            }
+            long previous = count;
+            count = count(metric);
+            return count != previous;
+        }
+
+        private static long count(Metric metric) {
+            return metric instanceof Counting ? ((Counting) metric).getCount() : 0;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.google.common.collect.ImmutableMap;
+import com.palantir.logsafe.SafeArg;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the heap retained by each metric of a {@link TaggedMetricRegistry}, so that metrics whose memory grows
+ * with their tag cardinality or update rate can be found before they exhaust the heap. The estimate includes the
+ * metric name and tags, the registry entry, the metric itself and the values retained by its reservoir, assuming
+ * compressed references and compact strings; strings shared between names are counted for each name.
+ *
+ * <p>The estimate is maintained incrementally: the size of each metric's name and fixed structure is computed when
+ * the metric is first seen, and each refresh only reads the sizes of reservoirs which grow with their values, such as
+ * {@link SlidingTimeWindowArrayReservoir}. Reservoirs unknown to the estimator are assumed to retain
+ * {@value #UNKNOWN_RESERVOIR_BYTES} bytes.
+ *
+ * <p>Adding the estimator to a registry publishes the following gauges on each export:
+ *
+ * <ul>
+ *   <li>{@code tritium.registry.estimated-bytes}: estimated bytes retained by all metrics of the registry
+ *   <li>{@code tritium.registry.metric.estimated-bytes}: estimated bytes retained by all metrics with the safe name in
+ *       the {@code metric-name} tag
+ * </ul>
+ *
+ * <pre>{@code
+ * registry.addMetrics("registry", "default", new MetricMemoryEstimator(registry));
+ * }</pre>
+ */
+public final class MetricMemoryEstimator implements TaggedMetricSet {
+
+    static final long UNKNOWN_RESERVOIR_BYTES = 8 * 1024;
+
+    private static final String TOTAL_NAME = "tritium.registry.estimated-bytes";
+    private static final String PER_NAME = "tritium.registry.metric.estimated-bytes";
+
+    // shallow sizes with compressed references, including owned adders, atomics and locks
+    private static final long ENTRY_BYTES = 40;
+    private static final long NAME_BYTES = 40;
+    private static final long TAG_BYTES = 8;
+    private static final long STRING_BYTES = 40;
+    private static final long COUNTER_BYTES = 48;
+    private static final long METER_BYTES = 320;
+    private static final long HISTOGRAM_BYTES = 64;
+    private static final long TIMER_BYTES = 32 + METER_BYTES + HISTOGRAM_BYTES;
+    private static final long OTHER_BYTES = 16;
+
+    @Nullable
+    private static final Field TIMER_HISTOGRAM = field(Timer.class, "histogram");
+
+    @Nullable
+    private static final Field HISTOGRAM_RESERVOIR = field(Histogram.class, "reservoir");
+
+    private final TaggedMetricRegistry registry;
+
+    // guarded by this
+    private final Map<MetricName, Entry> entries = new HashMap<>();
+    private long generation;
+    private boolean refreshing;
+    private long totalBytes;
+    private Map<MetricName, Metric> gauges = ImmutableMap.of();
+
+    public MetricMemoryEstimator(TaggedMetricRegistry registry) {
+        this.registry = checkNotNull(registry, "registry");
+    }
+
+    /**
+     * Returns the estimated bytes retained by all metrics of the registry.
+     *
+     * @return estimated retained bytes
+     */
+    public synchronized long estimatedBytes() {
+        refresh();
+        return totalBytes;
+    }
+
+    /**
+     * Returns the metrics which retain the most memory, from heaviest to lightest.
+     *
+     * @param limit maximum number of metrics to return
+     * @return estimated retained bytes of the heaviest metrics, in descending order
+     */
+    public synchronized Map<MetricName, Long> heaviest(int limit) {
+        checkArgument(limit >= 0, "limit must be non-negative", SafeArg.of("limit", limit));
+        refresh();
+        Comparator<Map.Entry<MetricName, Entry>> byBytes = Comparator.comparingLong(entry -> entry.getValue().bytes);
+        PriorityQueue<Map.Entry<MetricName, Entry>> lightestFirst = new PriorityQueue<>(limit + 1, byBytes);
+        for (Map.Entry<MetricName, Entry> entry : entries.entrySet()) {
+            lightestFirst.add(entry);
+            if (lightestFirst.size() > limit) {
+                lightestFirst.poll();
+            }
+        }
+        List<Map.Entry<MetricName, Entry>> heaviest = new ArrayList<>(lightestFirst);
+        heaviest.sort(byBytes.reversed());
+        ImmutableMap.Builder<MetricName, Long> result = ImmutableMap.builder();
+        heaviest.forEach(entry -> result.put(entry.getKey(), entry.getValue().bytes));
+        return result.build();
+    }
+
+    @Override
+    public synchronized Map<MetricName, Metric> getMetrics() {
+        refresh();
+        return gauges;
+    }
+
+    private void refresh() {
+        if (refreshing) {
+            // the registry is iterating over the gauges of this estimator
+            return;
+        }
+        refreshing = true;
+        try {
+            long current = ++generation;
+            registry.forEachMetric((metricName, metric) -> {
+                Entry entry = entries.get(metricName);
+                if (entry == null || entry.metric != metric) {
+                    entry = new Entry(metricName, metric);
+                    entries.put(metricName, entry);
+                }
+                entry.refresh(current);
+            });
+
+            long total = 0;
+            Map<String, Long> bytesByName = new HashMap<>();
+            for (Iterator<Map.Entry<MetricName, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<MetricName, Entry> entry = it.next();
+                if (entry.getValue().generation != current) {
+                    it.remove();
+                } else {
+                    total += entry.getValue().bytes;
+                    bytesByName.merge(entry.getKey().safeName(), entry.getValue().bytes, Long::sum);
+                }
+            }
+            totalBytes = total;
+            gauges = gauges(total, bytesByName);
+        } finally {
+            refreshing = false;
+        }
+    }
+
+    private static Map<MetricName, Metric> gauges(long total, Map<String, Long> bytesByName) {
+        ImmutableMap.Builder<MetricName, Metric> result = ImmutableMap.builder();
+        result.put(MetricName.builder().safeName(TOTAL_NAME).build(), gauge(total));
+        bytesByName.forEach((safeName, bytes) -> result.put(
+                MetricName.builder()
+                        .safeName(PER_NAME)
+                        .putSafeTags("metric-name", safeName)
+                        .build(),
+                gauge(bytes)));
+        return result.build();
+    }
+
+    private static Gauge<Long> gauge(long value) {
+        return () -> value;
+    }
+
+    /**
+     * Returns the estimated bytes retained by a reservoir and its values.
+     *
+     * @param reservoir reservoir, or null if it could not be determined
+     * @return estimated retained bytes
+     */
+    static long reservoirBytes(@Nullable Reservoir reservoir) {
+        if (reservoir instanceof MemoryEstimated) {
+            return ((MemoryEstimated) reservoir).estimatedBytes();
+        } else if (reservoir instanceof UniformReservoir) {
+            // default size, allocated up front
+            return 96 + 8 * 1028;
+        } else if (reservoir instanceof SlidingWindowReservoir) {
+            return 64 + 8L * reservoir.size();
+        } else if (reservoir instanceof SlidingTimeWindowArrayReservoir) {
+            // timestamp and value arrays, allocated in chunks
+            return 128 + 16L * reservoir.size();
+        } else if (reservoir instanceof SlidingTimeWindowReservoir) {
+            // skip list node, index and boxed timestamp and value per entry
+            return 128 + 80L * reservoir.size();
+        } else if (reservoir instanceof ExponentiallyDecayingReservoir) {
+            // skip list node, index, boxed priority and weighted sample per entry
+            return 160 + 96L * reservoir.size();
+        }
+        return UNKNOWN_RESERVOIR_BYTES;
+    }
+
+    private static long nameBytes(MetricName metricName) {
+        long bytes = ENTRY_BYTES + NAME_BYTES + stringBytes(metricName.safeName());
+        for (Map.Entry<String, String> tag : metricName.safeTags().entrySet()) {
+            bytes += TAG_BYTES + stringBytes(tag.getKey()) + stringBytes(tag.getValue());
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return STRING_BYTES + value.length();
+    }
+
+    @Nullable
+    private static Reservoir reservoir(Metric metric) {
+        Object histogram = metric instanceof Timer ? get(TIMER_HISTOGRAM, metric) : metric;
+        return histogram instanceof Histogram ? (Reservoir) get(HISTOGRAM_RESERVOIR, histogram) : null;
+    }
+
+    @Nullable
+    private static Field field(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall back to estimating unknown reservoirs
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Object get(@Nullable Field field, Object target) {
+        try {
+            return field == null ? null : field.get(target);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final Metric metric;
+        private final long fixedBytes;
+
+        @Nullable
+        private final Reservoir reservoir;
+
+        private long bytes;
+        private long generation;
+
+        Entry(MetricName metricName, Metric metric) {
+            this.metric = metric;
+            this.fixedBytes = nameBytes(metricName) + metricBytes(metric);
+            this.reservoir = metric instanceof MemoryEstimated ? null : reservoir(metric);
+        }
+
+        void refresh(long currentGeneration) {
+            generation = currentGeneration;
+            bytes = fixedBytes + variableBytes();
+        }
+
+        private long variableBytes() {
+            if (metric instanceof MemoryEstimated) {
+                return ((MemoryEstimated) metric).estimatedBytes();
+            } else if (metric instanceof Timer || metric instanceof Histogram) {
+                return reservoirBytes(reservoir);
+            }
+            return 0;
+        }
+
+        private static long metricBytes(Metric metric) {
+            if (metric instanceof MemoryEstimated) {
+                return 0;
+            } else if (metric instanceof Timer) {
+                return TIMER_BYTES;
+            } else if (metric instanceof Histogram) {
+                return HISTOGRAM_BYTES;
+            } else if (metric instanceof Meter) {
+                return METER_BYTES;
+            } else if (metric instanceof Counter) {
+                return COUNTER_BYTES;
+            }
+            return OTHER_BYTES;
+        }
+    }
+}
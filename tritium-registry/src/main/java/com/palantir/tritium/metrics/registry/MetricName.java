@@ -46,6 +46,15 @@ public interface MetricName {
         return new Builder();
     }
 
+    /**
+     * Returns the canonical instance of an equal metric name, so that equal names interned anywhere in the process,
+     * such as by different registries, share a single instance along with its name and tag strings, and compare equal
+     * by reference. Interned names are weakly held and are released once no longer referenced.
+     */
+    static MetricName intern(MetricName name) {
+        return RealMetricName.intern(name);
+    }
+
     class Builder extends ImmutableMetricName.Builder {
         // We cannot use the immutables implementation because it causes too much hashcode pain.
         @Override
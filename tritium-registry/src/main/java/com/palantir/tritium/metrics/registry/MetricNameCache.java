@@ -0,0 +1,56 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of metric names derived from keys, such as the names of metrics from added metric sets with their extra tag,
+ * so that iterating over metrics does not create their names again. Lookups of the same key instance only compare
+ * references.
+ *
+ * <p>Names of removed metrics are not tracked, so the cache is cleared whenever it reaches twice the largest size it
+ * was previously cleared at, and names are created again as needed.
+ */
+final class MetricNameCache<K> {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Map<K, MetricName> names = new ConcurrentHashMap<>();
+    private final Function<K, MetricName> factory;
+    private volatile int capacity = MIN_CAPACITY;
+
+    MetricNameCache(Function<K, MetricName> factory) {
+        this.factory = factory;
+    }
+
+    MetricName get(K key) {
+        MetricName name = names.get(key);
+        if (name == null) {
+            name = factory.apply(key);
+            int size = names.size();
+            if (size >= capacity) {
+                capacity = 2 * size;
+                names.clear();
+            }
+            names.put(key, name);
+        }
+        return name;
+    }
+}
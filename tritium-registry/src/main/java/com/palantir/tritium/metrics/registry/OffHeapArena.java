@@ -0,0 +1,122 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.palantir.logsafe.SafeArg;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Allocates fixed size slabs of zeroed off-heap memory from direct buffer chunks, for storing counts outside of the
+ * Java heap where they do not add to garbage collection marking time.
+ *
+ * <p>Slabs are views of their chunk, so the memory of a chunk is only released by the JVM once all of its slabs are
+ * unreachable. Slabs are not thread safe: their owners must guarantee that no access to a freed slab can race with its
+ * reuse by a later allocation.
+ */
+final class OffHeapArena {
+
+    private static final int DEFAULT_SLABS_PER_CHUNK = 64;
+
+    private final int slabLongs;
+    private final int slabsPerChunk;
+
+    // guarded by this
+    private final Deque<Slab> free = new ArrayDeque<>();
+    private LongBuffer chunk = LongBuffer.allocate(0);
+    private int chunkSlabs;
+    private long allocatedBytes;
+
+    OffHeapArena(int slabLongs) {
+        this(slabLongs, DEFAULT_SLABS_PER_CHUNK);
+    }
+
+    OffHeapArena(int slabLongs, int slabsPerChunk) {
+        checkArgument(slabLongs > 0, "slabLongs must be positive", SafeArg.of("slabLongs", slabLongs));
+        checkArgument(slabsPerChunk > 0, "slabsPerChunk must be positive", SafeArg.of("slabsPerChunk", slabsPerChunk));
+        this.slabLongs = slabLongs;
+        this.slabsPerChunk = slabsPerChunk;
+        this.chunkSlabs = slabsPerChunk;
+    }
+
+    /** Allocates a zeroed slab. */
+    synchronized Slab allocate() {
+        Slab slab = free.pollFirst();
+        if (slab != null) {
+            slab.clear();
+            return slab;
+        }
+        if (chunkSlabs == slabsPerChunk) {
+            // direct buffers are zeroed on allocation
+            long chunkBytes = (long) slabLongs * slabsPerChunk * Long.BYTES;
+            chunk = ByteBuffer.allocateDirect(Math.toIntExact(chunkBytes))
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+            chunkSlabs = 0;
+            allocatedBytes += chunkBytes;
+        }
+        // bounded through Buffer, as LongBuffer only overrides its methods from Java 9
+        Buffer bounds = chunk;
+        bounds.limit((chunkSlabs + 1) * slabLongs);
+        bounds.position(chunkSlabs * slabLongs);
+        chunkSlabs++;
+        return new Slab(chunk.slice());
+    }
+
+    /** Returns the slab to the arena for reuse by a later allocation. */
+    synchronized void free(Slab slab) {
+        free.addLast(slab);
+    }
+
+    /** Returns the number of off-heap bytes allocated by this arena, including free slabs. */
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** Fixed size region of off-heap memory addressed as longs. */
+    static final class Slab {
+        private final LongBuffer longs;
+
+        Slab(LongBuffer longs) {
+            this.longs = longs;
+        }
+
+        long get(int index) {
+            return longs.get(index);
+        }
+
+        void set(int index, long value) {
+            longs.put(index, value);
+        }
+
+        void add(int index, long delta) {
+            longs.put(index, longs.get(index) + delta);
+        }
+
+        private void clear() {
+            for (int i = 0; i < longs.capacity(); i++) {
+                longs.put(i, 0);
+            }
+        }
+    }
+}
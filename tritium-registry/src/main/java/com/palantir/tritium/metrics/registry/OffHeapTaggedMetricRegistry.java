@@ -0,0 +1,98 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+
+/**
+ * Registry whose timers and histograms count values in off-heap memory, so that registries with many tagged timers do
+ * not retain large counts arrays on the Java heap. Timers and histograms count all values ever recorded, with quantiles
+ * within ~1.6% of the recorded values, and use ~15 KB of direct memory each: 50,000 timers use ~750 MB, which must fit
+ * within {@code -XX:MaxDirectMemorySize}. Updates of each timer or histogram are serialized by a lock, so this registry
+ * suits many moderately used metrics rather than a few heavily contended ones.
+ *
+ * <p>Removing a timer or histogram created by this registry via {@link #remove(MetricName)} frees its off-heap memory
+ * for reuse, after which the removed metric ignores updates and reports an empty snapshot.
+ */
+public final class OffHeapTaggedMetricRegistry extends AbstractTaggedMetricRegistry {
+
+    private final OffHeapArena arena;
+
+    public OffHeapTaggedMetricRegistry() {
+        this(new OffHeapArena(OffHeapHistogramReservoir.SLAB_LONGS));
+    }
+
+    private OffHeapTaggedMetricRegistry(OffHeapArena arena) {
+        super(() -> new OffHeapHistogramReservoir(arena));
+        this.arena = arena;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    protected Supplier<Histogram> histogramSupplier() {
+        return () -> new OffHeapHistogram(new OffHeapHistogramReservoir(arena));
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    protected Supplier<Timer> timerSupplier() {
+        return () -> new OffHeapTimer(new OffHeapHistogramReservoir(arena));
+    }
+
+    @Override
+    protected void onRemoval(MetricName _metricName, Metric metric) {
+        if (metric instanceof OffHeapHistogram) {
+            ((OffHeapHistogram) metric).reservoir.close();
+        } else if (metric instanceof OffHeapTimer) {
+            ((OffHeapTimer) metric).reservoir.close();
+        }
+    }
+
+    /**
+     * Returns the number of off-heap bytes allocated by this registry, including memory freed by removed metrics which
+     * is available for reuse.
+     *
+     * @return allocated off-heap bytes
+     */
+    public long allocatedOffHeapBytes() {
+        return arena.allocatedBytes();
+    }
+
+    private static final class OffHeapHistogram extends Histogram {
+        private final OffHeapHistogramReservoir reservoir;
+
+        OffHeapHistogram(OffHeapHistogramReservoir reservoir) {
+            super(reservoir);
+            this.reservoir = reservoir;
+        }
+    }
+
+    private static final class OffHeapTimer extends Timer {
+        private final OffHeapHistogramReservoir reservoir;
+
+        OffHeapTimer(OffHeapHistogramReservoir reservoir) {
+            super(reservoir);
+            this.reservoir = reservoir;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.palantir.logsafe.SafeArg;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Immutable, mergeable quantile sketch with bounded relative error, in the style of DDSketch. Positive values are
+ * counted in logarithmically sized bins such that any reported quantile is within {@link #relativeAccuracy()} of the
+ * recorded value at that rank, and values of zero or less are counted together as zero. At most {@link #maxBins()}
+ * bins are retained by collapsing the lowest bins, trading accuracy of the lowest quantiles for bounded memory.
+ *
+ * <p>Sketches with the same relative accuracy can be merged without loss, for example to compute percentiles across
+ * endpoints or across nodes. Sketches can be transferred between nodes using {@link #bins()} and {@link #of}.
+ * Timers and histograms backed by {@link QuantileSketchReservoir} return sketches as their snapshots.
+ */
+public final class QuantileSketch extends AbstractSnapshot {
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double gamma;
+    private final long zeroCount;
+    private final CollapsingBinStore store;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    QuantileSketch(
+            double relativeAccuracy,
+            int maxBins,
+            long zeroCount,
+            CollapsingBinStore store,
+            long sum,
+            long min,
+            long max) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.gamma = gamma(relativeAccuracy);
+        this.zeroCount = zeroCount;
+        this.store = store;
+        long total = zeroCount;
+        if (!store.isEmpty()) {
+            for (int index = store.minIndex(); index <= store.maxIndex(); index++) {
+                total += store.count(index);
+            }
+        }
+        this.count = total;
+        this.sum = total == 0 ? 0 : sum;
+        this.min = total == 0 ? 0 : min;
+        this.max = total == 0 ? 0 : max;
+    }
+
+    /**
+     * Creates a sketch from its serialized form, for example to merge sketches received from other nodes.
+     *
+     * @param relativeAccuracy relative accuracy of the sketch, between 0 and 1 exclusive
+     * @param maxBins maximum number of bins retained by the sketch
+     * @param zeroCount number of values of zero or less
+     * @param bins counts of positive values by bin index, as returned by {@link #bins()}
+     * @param sum sum of all values
+     * @param min minimum value
+     * @param max maximum value
+     * @return sketch
+     */
+    public static QuantileSketch of(
+            double relativeAccuracy,
+            int maxBins,
+            long zeroCount,
+            Map<Integer, Long> bins,
+            long sum,
+            long min,
+            long max) {
+        checkParameters(relativeAccuracy, maxBins);
+        checkArgument(zeroCount >= 0, "zeroCount must be non-negative", SafeArg.of("zeroCount", zeroCount));
+        CollapsingBinStore store = new CollapsingBinStore(maxBins);
+        checkNotNull(bins, "bins").forEach((index, binCount) -> {
+            checkArgument(binCount >= 0, "bin counts must be non-negative", SafeArg.of("index", index));
+            store.add(index, binCount);
+        });
+        return new QuantileSketch(relativeAccuracy, maxBins, zeroCount, store, sum, min, max);
+    }
+
+    static void checkParameters(double relativeAccuracy, int maxBins) {
+        checkArgument(
+                relativeAccuracy > 0 && relativeAccuracy < 1,
+                "relativeAccuracy must be between 0 and 1",
+                SafeArg.of("relativeAccuracy", relativeAccuracy));
+        checkArgument(maxBins > 0, "maxBins must be positive", SafeArg.of("maxBins", maxBins));
+    }
+
+    static double gamma(double relativeAccuracy) {
+        return (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    }
+
+    /** Returns the index of the bin counting the specified positive value for the specified multiplier. */
+    static int index(long value, double multiplier) {
+        return (int) Math.ceil(Math.log(value) * multiplier);
+    }
+
+    /**
+     * Merges this sketch with another sketch of the same relative accuracy, retaining the larger maximum number of
+     * bins.
+     *
+     * @param other sketch to merge
+     * @return merged sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        checkNotNull(other, "other");
+        checkArgument(
+                relativeAccuracy == other.relativeAccuracy,
+                "Only sketches with the same relative accuracy can be merged",
+                SafeArg.of("relativeAccuracy", relativeAccuracy),
+                SafeArg.of("otherRelativeAccuracy", other.relativeAccuracy));
+        CollapsingBinStore merged = new CollapsingBinStore(Math.max(maxBins, other.maxBins));
+        merged.addAll(store);
+        merged.addAll(other.store);
+        if (count == 0) {
+            return new QuantileSketch(
+                    relativeAccuracy, merged.maxBins(), other.zeroCount, merged, other.sum, other.min, other.max);
+        }
+        if (other.count == 0) {
+            return new QuantileSketch(relativeAccuracy, merged.maxBins(), zeroCount, merged, sum, min, max);
+        }
+        return new QuantileSketch(
+                relativeAccuracy,
+                merged.maxBins(),
+                zeroCount + other.zeroCount,
+                merged,
+                sum + other.sum,
+                Math.min(min, other.min),
+                Math.max(max, other.max));
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public int maxBins() {
+        return maxBins;
+    }
+
+    /** Returns the number of values of zero or less. */
+    public long zeroCount() {
+        return zeroCount;
+    }
+
+    /** Returns the counts of positive values by bin index. */
+    public SortedMap<Integer, Long> bins() {
+        ImmutableSortedMap.Builder<Integer, Long> bins = ImmutableSortedMap.naturalOrder();
+        if (!store.isEmpty()) {
+            for (int index = store.minIndex(); index <= store.maxIndex(); index++) {
+                long binCount = store.count(index);
+                if (binCount > 0) {
+                    bins.put(index, binCount);
+                }
+            }
+        }
+        return bins.build();
+    }
+
+    /** Returns the total number of values, which unlike {@link #size()} is not limited to an int. */
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    @Override
+    double valueAt(double quantile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) (quantile * (count - 1));
+        if (rank == 0) {
+            return min;
+        }
+        if (rank == count - 1) {
+            return max;
+        }
+        if (rank < zeroCount) {
+            return clamp(0);
+        }
+        long seen = zeroCount;
+        for (int index = store.minIndex(); index <= store.maxIndex(); index++) {
+            seen += store.count(index);
+            if (seen > rank) {
+                return clamp(value(index));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long[] getValues() {
+        long[] values = new long[size()];
+        int position = 0;
+        for (long i = 0; i < zeroCount && position < values.length; i++) {
+            values[position++] = (long) clamp(0);
+        }
+        if (!store.isEmpty()) {
+            for (int index = store.minIndex(); index <= store.maxIndex() && position < values.length; index++) {
+                long value = Math.round(clamp(value(index)));
+                for (long i = 0; i < store.count(index) && position < values.length; i++) {
+                    values[position++] = value;
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    @Override
+    public long getMin() {
+        return min;
+    }
+
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0.0;
+        }
+        double mean = getMean();
+        double zeroDiff = clamp(0) - mean;
+        double variance = zeroCount * zeroDiff * zeroDiff;
+        if (!store.isEmpty()) {
+            for (int index = store.minIndex(); index <= store.maxIndex(); index++) {
+                double diff = clamp(value(index)) - mean;
+                variance += store.count(index) * diff * diff;
+            }
+        }
+        return Math.sqrt(variance / (count - 1));
+    }
+
+    /** Returns the value within relative accuracy of every value counted by the bin. */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{relativeAccuracy=" + relativeAccuracy + ", maxBins=" + maxBins + ", count=" + count
+                + ", min=" + min + ", max=" + max + '}';
+    }
+}
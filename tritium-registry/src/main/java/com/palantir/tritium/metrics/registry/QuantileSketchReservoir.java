@@ -0,0 +1,160 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import com.codahale.metrics.Reservoir;
+import java.util.function.Supplier;
+
+/**
+ * Reservoir which records all values in a {@link QuantileSketch}, so its snapshots are mergeable across timers,
+ * histograms and nodes, with bounded relative error and bounded memory. Updates are striped across independently
+ * locked sketches selected by the updating thread, and merged when a snapshot is taken.
+ */
+public final class QuantileSketchReservoir implements Reservoir, MemoryEstimated {
+
+    /** Default relative accuracy of reported quantiles, 1%. */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** Default maximum number of bins, sufficient to cover all long values with the default relative accuracy. */
+    public static final int DEFAULT_MAX_BINS = 2048;
+
+    private static final int MAX_STRIPES = 16;
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double multiplier;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public QuantileSketchReservoir() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+    }
+
+    /**
+     * Creates a reservoir whose sketches report quantiles within the specified relative accuracy, retaining at most
+     * {@code maxBins} bins per stripe.
+     *
+     * <p>The maximum applies to each stripe rather than to the reservoir: updates are spread across one stripe per
+     * processor, up to 16, and each stripe grows to {@code maxBins} bins as it records values across the range they
+     * cover. A reservoir may therefore retain up to {@code 16 * 8 * maxBins} bytes of bins, 256 KB with the default
+     * maximum, although durations spanning a microsecond to a minute need about a thousand bins per stripe at the
+     * default accuracy. Snapshots merge the stripes into a sketch of at most {@code maxBins} bins.
+     *
+     * @param relativeAccuracy relative accuracy of reported quantiles, between 0 and 1 exclusive
+     * @param maxBins maximum number of bins per stripe, each of which uses 8 bytes
+     */
+    public QuantileSketchReservoir(double relativeAccuracy, int maxBins) {
+        this(relativeAccuracy, maxBins, Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()));
+    }
+
+    QuantileSketchReservoir(double relativeAccuracy, int maxBins, int stripeCount) {
+        QuantileSketch.checkParameters(relativeAccuracy, maxBins);
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.multiplier = 1.0 / Math.log(QuantileSketch.gamma(relativeAccuracy));
+        int size = Stripes.count(stripeCount);
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(maxBins);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Supplies reservoirs with the specified relative accuracy and maximum number of bins, for use with tagged metric
+     * registries, for example
+     * {@code DefaultTaggedMetricRegistry.builder().withReservoirs(QuantileSketchReservoir.supplier(0.01, 2048))}.
+     *
+     * @param relativeAccuracy relative accuracy of reported quantiles, between 0 and 1 exclusive
+     * @param maxBins maximum number of bins
+     * @return reservoir supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Reservoir> supplier(double relativeAccuracy, int maxBins) {
+        QuantileSketch.checkParameters(relativeAccuracy, maxBins);
+        return () -> new QuantileSketchReservoir(relativeAccuracy, maxBins);
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        int index = value > 0 ? QuantileSketch.index(value, multiplier) : 0;
+        stripes[Stripes.index(mask)].update(value, index);
+    }
+
+    /** Returns a sketch of all values recorded by this reservoir. */
+    @Override
+    public QuantileSketch getSnapshot() {
+        CollapsingBinStore store = new CollapsingBinStore(maxBins);
+        long zeroCount = 0;
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.count > 0) {
+                    store.addAll(stripe.store);
+                    zeroCount += stripe.zeroCount;
+                    count += stripe.count;
+                    sum += stripe.sum;
+                    min = Math.min(min, stripe.min);
+                    max = Math.max(max, stripe.max);
+                }
+            }
+        }
+        return count == 0
+                ? new QuantileSketch(relativeAccuracy, maxBins, 0, store, 0, 0, 0)
+                : new QuantileSketch(relativeAccuracy, maxBins, zeroCount, store, sum, min, max);
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // upper bound, as each stripe's bins grow up to the maximum as values are recorded
+        return 64 + stripes.length * (96 + 8L * maxBins);
+    }
+
+    private static final class Stripe {
+        // guarded by this
+        private final CollapsingBinStore store;
+        private long zeroCount;
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        Stripe(int maxBins) {
+            this.store = new CollapsingBinStore(maxBins);
+        }
+
+        synchronized void update(long value, int index) {
+            if (value > 0) {
+                store.add(index, 1);
+            } else {
+                zeroCount++;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+}
@@ -16,27 +16,42 @@
 
 package com.palantir.tritium.metrics.registry;
 
+import static com.palantir.logsafe.Preconditions.checkArgument;
 import static com.palantir.logsafe.Preconditions.checkNotNull;
 
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Ordering;
+import com.palantir.logsafe.SafeArg;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
 import java.util.SortedMap;
 
+/**
+ * Compact metric name holding its tags in a flat array of alternating tag names and values, sorted by tag name, with
+ * a precomputed hash code. Names compare by reference first and then by array.
+ */
 final class RealMetricName implements MetricName {
-    private static final SortedMap<String, String> EMPTY = prehash(ImmutableSortedMap.of());
+    private static final String[] NO_TAGS = new String[0];
+    private static final Interner<MetricName> names = Interners.newWeakInterner();
+    private static final Interner<String> strings = Interners.newWeakInterner();
+
     private final String safeName;
-    private final SortedMap<String, String> safeTags;
+    private final String[] tags;
     private final int hashCode;
 
-    private RealMetricName(String safeName, SortedMap<String, String> safeTags) {
+    private RealMetricName(String safeName, String[] tags) {
         this.safeName = safeName;
-        this.safeTags = safeTags;
+        this.tags = tags;
         this.hashCode = computeHashCode();
     }
 
     private int computeHashCode() {
         int hash = 5381;
-        hash += (hash << 5) + safeName().hashCode();
-        hash += (hash << 5) + safeTags().hashCode();
+        hash += (hash << 5) + safeName.hashCode();
+        hash += (hash << 5) + SortedTagMap.hashCode(tags, 0, tags.length);
         return hash;
     }
 
@@ -47,12 +62,12 @@ final class RealMetricName implements MetricName {
 
     @Override
     public SortedMap<String, String> safeTags() {
-        return safeTags;
+        return new SortedTagMap(tags);
     }
 
     @Override
     public String toString() {
-        return "MetricName{safeName=" + safeName + ", safeTags=" + safeTags + '}';
+        return "MetricName{safeName=" + safeName + ", safeTags=" + safeTags() + '}';
     }
 
     @Override
@@ -62,33 +77,79 @@ final class RealMetricName implements MetricName {
 
     @Override
     public boolean equals(Object other) {
-        if (!(other instanceof MetricName)) {
-            return false;
-        }
         if (this == other) {
             return true;
         }
+        if (other instanceof RealMetricName) {
+            RealMetricName otherName = (RealMetricName) other;
+            return hashCode == otherName.hashCode
+                    && safeName.equals(otherName.safeName)
+                    && Arrays.equals(tags, otherName.tags);
+        }
+        if (!(other instanceof MetricName)) {
+            return false;
+        }
         MetricName otherMetric = (MetricName) other;
-        return safeName().equals(otherMetric.safeName()) && safeTags().equals(otherMetric.safeTags());
+        return safeName.equals(otherMetric.safeName()) && safeTags().equals(otherMetric.safeTags());
     }
 
     static MetricName create(String safeName) {
-        return new RealMetricName(checkNotNull(safeName, "safeName"), EMPTY);
+        return new RealMetricName(checkNotNull(safeName, "safeName"), NO_TAGS);
     }
 
     static MetricName create(MetricName other) {
-        return new RealMetricName(other.safeName(), prehash(other.safeTags()));
+        if (other instanceof RealMetricName) {
+            return other;
+        }
+        return new RealMetricName(checkNotNull(other.safeName(), "safeName"), tags(other.safeTags()));
     }
 
     static MetricName create(MetricName other, String extraTagName, String extraTagValue) {
-        return new RealMetricName(
-                other.safeName(), new ExtraEntrySortedMap<>(prehash(other.safeTags()), extraTagName, extraTagValue));
+        checkNotNull(extraTagName, "extraTagName");
+        checkNotNull(extraTagValue, "extraTagValue");
+        String[] base = other instanceof RealMetricName ? ((RealMetricName) other).tags : tags(other.safeTags());
+        int index = SortedTagMap.lowerBound(base, 0, base.length, extraTagName);
+        checkArgument(
+                index == base.length || !base[index].equals(extraTagName),
+                "Base must not contain the extra key that is to be added",
+                SafeArg.of("extraTagName", extraTagName));
+        String[] tags = new String[base.length + 2];
+        System.arraycopy(base, 0, tags, 0, index);
+        tags[index] = extraTagName;
+        tags[index + 1] = extraTagValue;
+        System.arraycopy(base, index, tags, index + 2, base.length - index);
+        return new RealMetricName(other.safeName(), tags);
     }
 
-    private static <K, V> SortedMap<K, V> prehash(SortedMap<K, V> map) {
-        if (map instanceof PrehashedSortedMap) {
-            return map;
+    /** See {@link MetricName#intern(MetricName)}. */
+    static MetricName intern(MetricName name) {
+        RealMetricName real = (RealMetricName) create(name);
+        String[] tags = new String[real.tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = strings.intern(real.tags[i]);
+        }
+        return names.intern(new RealMetricName(strings.intern(real.safeName), tags));
+    }
+
+    private static String[] tags(SortedMap<String, String> safeTags) {
+        if (safeTags instanceof SortedTagMap) {
+            return ((SortedTagMap) safeTags).tags();
+        }
+        if (safeTags.isEmpty()) {
+            return NO_TAGS;
+        }
+        Comparator<? super String> comparator = safeTags.comparator();
+        SortedMap<String, String> sorted = comparator == null
+                        || Ordering.natural().equals(comparator)
+                        || Comparator.naturalOrder().equals(comparator)
+                ? safeTags
+                : ImmutableSortedMap.copyOf(safeTags);
+        String[] tags = new String[2 * sorted.size()];
+        int index = 0;
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            tags[index++] = checkNotNull(entry.getKey(), "tagName");
+            tags[index++] = checkNotNull(entry.getValue(), "tagValue");
         }
-        return new PrehashedSortedMap<>(ImmutableSortedMap.copyOfSorted(map));
+        return tags;
     }
 }
@@ -0,0 +1,177 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.google.common.annotations.VisibleForTesting;
+import com.palantir.logsafe.SafeArg;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sliding time window reservoir which divides the window into a fixed number of buckets, each a log-linear histogram
+ * with a bounded number of bins, so that memory use is independent of the update rate. Buckets rotate as time passes
+ * and a snapshot merges the buckets which are still within the window.
+ *
+ * <p>Values are counted in {@link LogLinearBins}, so reported quantiles are within ~1.6% of the recorded values, while
+ * the minimum, maximum and mean are exact. A bucket's bins are allocated when it first records a value, and a few
+ * updates racing with a bucket rotation may be dropped.
+ */
+final class RotatingHistogramReservoir implements Reservoir, MemoryEstimated {
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final long bucketNanos;
+    private final Clock clock;
+
+    RotatingHistogramReservoir(long window, TimeUnit windowUnit, int bucketCount) {
+        this(window, windowUnit, bucketCount, Clock.defaultClock());
+    }
+
+    @VisibleForTesting
+    RotatingHistogramReservoir(long window, TimeUnit windowUnit, int bucketCount, Clock clock) {
+        this.bucketNanos = validate(window, windowUnit, bucketCount);
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.clock = checkNotNull(clock, "clock");
+    }
+
+    /**
+     * Checks that the window can be divided into the specified number of buckets.
+     *
+     * @return duration of each bucket in nanoseconds
+     */
+    static long validate(long window, TimeUnit windowUnit, int bucketCount) {
+        checkArgument(bucketCount > 0, "bucketCount must be positive", SafeArg.of("bucketCount", bucketCount));
+        long windowNanos = checkNotNull(windowUnit, "windowUnit").toNanos(window);
+        checkArgument(
+                windowNanos >= bucketCount,
+                "window must be at least one nanosecond per bucket",
+                SafeArg.of("windowNanos", windowNanos),
+                SafeArg.of("bucketCount", bucketCount));
+        return windowNanos / bucketCount;
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        long epoch = epoch();
+        int slot = (int) Math.floorMod(epoch, (long) buckets.length());
+        Bucket bucket = buckets.get(slot);
+        while (bucket == null || bucket.epoch != epoch) {
+            if (bucket != null && bucket.epoch > epoch) {
+                // a concurrent update observed a later tick and rotated this slot, the value is outside its window
+                return;
+            }
+            Bucket rotated = new Bucket(epoch);
+            if (buckets.compareAndSet(slot, bucket, rotated)) {
+                bucket = rotated;
+            } else {
+                bucket = buckets.get(slot);
+            }
+        }
+        bucket.update(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        long currentEpoch = epoch();
+        long[] counts = new long[LogLinearBins.BINS];
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && currentEpoch - bucket.epoch < buckets.length()) {
+                long bucketCount = bucket.mergeInto(counts);
+                if (bucketCount > 0) {
+                    count += bucketCount;
+                    sum += bucket.sum.sum();
+                    min = Math.min(min, bucket.min.get());
+                    max = Math.max(max, bucket.max.get());
+                }
+            }
+        }
+        if (count == 0) {
+            return new LogLinearHistogramSnapshot(counts, 0, 0, 0, 0);
+        }
+        return new LogLinearHistogramSnapshot(counts, count, sum, min, max);
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = 64 + 8L * buckets.length();
+        for (int i = 0; i < buckets.length(); i++) {
+            if (buckets.get(i) != null) {
+                bytes += Bucket.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private long epoch() {
+        return Math.floorDiv(clock.getTick(), bucketNanos);
+    }
+
+    private static final class Bucket {
+        private static final long BYTES = 160 + 4L * LogLinearBins.BINS;
+
+        private final long epoch;
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(LogLinearBins.BINS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+        void update(long value) {
+            counts.incrementAndGet(LogLinearBins.bin(value));
+            sum.add(value);
+            long current = min.get();
+            while (value < current && !min.compareAndSet(current, value)) {
+                current = min.get();
+            }
+            current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        long mergeInto(long[] target) {
+            long total = 0;
+            for (int i = 0; i < LogLinearBins.BINS; i++) {
+                int binCount = counts.get(i);
+                target[i] += binCount;
+                total += binCount;
+            }
+            return total;
+        }
+    }
+}
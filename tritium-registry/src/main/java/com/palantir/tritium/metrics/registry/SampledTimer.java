@@ -0,0 +1,208 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.palantir.logsafe.SafeArg;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * {@link Timer} which counts every update exactly, but only records a sample of the updates in its reservoir, for hot
+ * endpoints where recording every duration adds contention without improving the reported quantiles.
+ *
+ * <p>Samples are either a random fraction of the updates, or roughly one update per sample interval from each stripe of
+ * threads. Neither decision contends: the rate uses a {@link ThreadLocalRandom}, while the interval uses one of up to
+ * 64 stripes selected by thread. Threads sharing a stripe share its interval, so a thread is not guaranteed a sample
+ * every interval, and concurrent updates of the same stripe may occasionally both be sampled. Quantiles are computed
+ * from the sampled durations, while the count and rates come from a meter marked on every update, so they follow
+ * changes in load regardless of how updates are sampled.
+ */
+public final class SampledTimer extends Timer {
+
+    private static final int MAX_STRIPES = 64;
+    // slots are spaced apart to avoid false sharing between stripes
+    private static final int SLOT_SPACING = 8;
+
+    private final Meter rates;
+    private final Sampler sampler;
+    private final Clock clock;
+
+    @VisibleForTesting
+    SampledTimer(Reservoir reservoir, Sampler sampler, Clock clock) {
+        super(reservoir, clock);
+        this.sampler = checkNotNull(sampler, "sampler");
+        this.clock = clock;
+        this.rates = new Meter(clock);
+    }
+
+    /**
+     * Supplies timers which record a random fraction of updates in reservoirs from the specified supplier.
+     *
+     * @param sampleRate fraction of updates to record, in (0..1]
+     * @param reservoirSupplier supplier of reservoirs for sampled durations
+     * @return timer supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Timer> sampleRate(double sampleRate, Supplier<Reservoir> reservoirSupplier) {
+        checkArgument(
+                sampleRate > 0.0 && sampleRate <= 1.0,
+                "sampleRate must be in (0..1]",
+                SafeArg.of("sampleRate", sampleRate));
+        checkNotNull(reservoirSupplier, "reservoirSupplier");
+        return () -> new SampledTimer(reservoirSupplier.get(), new RateSampler(sampleRate), Clock.defaultClock());
+    }
+
+    /**
+     * Supplies timers which record roughly one update per sample interval from each stripe of threads in reservoirs
+     * from the specified supplier. The timer uses one stripe per processor, up to 64, and threads sharing a stripe
+     * share its sample interval.
+     *
+     * @param sampleInterval minimum interval between samples from a stripe of threads
+     * @param reservoirSupplier supplier of reservoirs for sampled durations
+     * @return timer supplier
+     */
+    @SuppressWarnings("NoFunctionalReturnType") // metric factory
+    public static Supplier<Timer> sampleInterval(Duration sampleInterval, Supplier<Reservoir> reservoirSupplier) {
+        long intervalNanos = checkNotNull(sampleInterval, "sampleInterval").toNanos();
+        checkArgument(
+                intervalNanos > 0, "sampleInterval must be positive", SafeArg.of("sampleInterval", sampleInterval));
+        checkNotNull(reservoirSupplier, "reservoirSupplier");
+        int stripes = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+        return () -> {
+            Clock clock = Clock.defaultClock();
+            return new SampledTimer(
+                    reservoirSupplier.get(), new IntervalSampler(intervalNanos, stripes, clock.getTick()), clock);
+        };
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        if (duration >= 0) {
+            rates.mark();
+            if (sampler.sample(clock)) {
+                super.update(duration, unit);
+            }
+        }
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        long startTime = clock.getTick();
+        try {
+            return event.call();
+        } finally {
+            update(clock.getTick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void time(Runnable event) {
+        long startTime = clock.getTick();
+        try {
+            event.run();
+        } finally {
+            update(clock.getTick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return rates.getCount();
+    }
+
+    /** Returns the number of updates recorded in the reservoir. */
+    public long getSampledCount() {
+        return super.getCount();
+    }
+
+    @Override
+    public double getMeanRate() {
+        return rates.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return rates.getOneMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return rates.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return rates.getFifteenMinuteRate();
+    }
+
+    interface Sampler {
+        boolean sample(Clock clock);
+    }
+
+    private static final class RateSampler implements Sampler {
+        private final double sampleRate;
+
+        RateSampler(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public boolean sample(Clock _clock) {
+            return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+    }
+
+    static final class IntervalSampler implements Sampler {
+        private final long intervalNanos;
+        private final AtomicLongArray nextSampleTicks;
+        private final int mask;
+
+        IntervalSampler(long intervalNanos, int stripes, long startTick) {
+            int size = Stripes.count(stripes);
+            this.intervalNanos = intervalNanos;
+            this.nextSampleTicks = new AtomicLongArray(size * SLOT_SPACING);
+            for (int i = 0; i < nextSampleTicks.length(); i += SLOT_SPACING) {
+                nextSampleTicks.set(i, startTick);
+            }
+            this.mask = size - 1;
+        }
+
+        @Override
+        public boolean sample(Clock clock) {
+            int slot = Stripes.index(mask) * SLOT_SPACING;
+            long now = clock.getTick();
+            if (now - nextSampleTicks.get(slot) < 0) {
+                return false;
+            }
+            // threads sharing a stripe may both sample, which only slightly exceeds the budget
+            nextSampleTicks.lazySet(slot, now + intervalNanos);
+            return true;
+        }
+    }
+}
@@ -16,12 +16,38 @@
 
 package com.palantir.tritium.metrics.registry;
 
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public final class SlidingWindowTaggedMetricRegistry extends AbstractTaggedMetricRegistry {
 
+    /**
+     * Creates a registry whose timers and histograms store every measurement within the sliding window, so memory use
+     * grows with the update rate.
+     */
     public SlidingWindowTaggedMetricRegistry(int window, TimeUnit windowUnit) {
         super(() -> new SlidingTimeWindowArrayReservoir(window, windowUnit));
     }
+
+    private SlidingWindowTaggedMetricRegistry(Supplier<Reservoir> reservoirSupplier) {
+        super(reservoirSupplier);
+    }
+
+    /**
+     * Creates a registry whose timers and histograms divide the sliding window into the specified number of rotating
+     * buckets, each a bounded log-linear histogram, so memory use is independent of the update rate. Quantiles are
+     * approximate, within ~1.6% of the recorded values, and the window slides in steps of {@code window / buckets}.
+     *
+     * @param window window of time
+     * @param windowUnit unit for window
+     * @param buckets number of buckets the window is divided into
+     * @return metric registry
+     */
+    public static SlidingWindowTaggedMetricRegistry withRotatingHistograms(
+            int window, TimeUnit windowUnit, int buckets) {
+        RotatingHistogramReservoir.validate(window, windowUnit, buckets);
+        return new SlidingWindowTaggedMetricRegistry(() -> new RotatingHistogramReservoir(window, windowUnit, buckets));
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable sorted map view of a flat array of alternating tag names and values, sorted by tag name, as held by
+ * {@link RealMetricName}. Sub maps are views of a range of the same array.
+ */
+@SuppressWarnings("JdkObsolete")
+final class SortedTagMap extends AbstractMap<String, String> implements SortedMap<String, String> {
+    private final String[] tags;
+    private final int from;
+    private final int to;
+
+    SortedTagMap(String[] tags) {
+        this(tags, 0, tags.length);
+    }
+
+    private SortedTagMap(String[] tags, int from, int to) {
+        this.tags = tags;
+        this.from = from;
+        this.to = to;
+    }
+
+    /** Returns the index of the first tag name in the given range which is not less than the given name. */
+    static int lowerBound(String[] tags, int from, int to, String name) {
+        int low = from / 2;
+        int high = to / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tags[2 * mid].compareTo(name) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return 2 * low;
+    }
+
+    /** Returns the hash code of a map holding the given tags, as defined by {@link Map#hashCode()}. */
+    static int hashCode(String[] tags, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i += 2) {
+            hash += tags[i].hashCode() ^ tags[i + 1].hashCode();
+        }
+        return hash;
+    }
+
+    /** Returns the tags of this map, which must not be modified. */
+    String[] tags() {
+        if (from == 0 && to == tags.length) {
+            return tags;
+        }
+        String[] range = new String[to - from];
+        System.arraycopy(tags, from, range, 0, range.length);
+        return range;
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return Ordering.natural();
+    }
+
+    @Override
+    public SortedMap<String, String> subMap(String fromKey, String toKey) {
+        checkArgument(fromKey.compareTo(toKey) <= 0, "fromKey must not be greater than toKey");
+        return new SortedTagMap(tags, lowerBound(tags, from, to, fromKey), lowerBound(tags, from, to, toKey));
+    }
+
+    @Override
+    public SortedMap<String, String> headMap(String toKey) {
+        return new SortedTagMap(tags, from, lowerBound(tags, from, to, toKey));
+    }
+
+    @Override
+    public SortedMap<String, String> tailMap(String fromKey) {
+        return new SortedTagMap(tags, lowerBound(tags, from, to, fromKey), to);
+    }
+
+    @Override
+    public String firstKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return tags[from];
+    }
+
+    @Override
+    public String lastKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return tags[to - 2];
+    }
+
+    @Override
+    public int size() {
+        return (to - from) / 2;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Nullable
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int index = lowerBound(tags, from, to, (String) key);
+        return index < to && tags[index].equals(key) ? tags[index + 1] : null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = from; i < to; i += 2) {
+            action.accept(tags[i], tags[i + 1]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int next = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < to;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (next >= to) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> entry = Maps.immutableEntry(tags[next], tags[next + 1]);
+                        next += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SortedTagMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SortedTagMap)) {
+            return super.equals(other);
+        }
+        SortedTagMap otherMap = (SortedTagMap) other;
+        if (to - from != otherMap.to - otherMap.from) {
+            return false;
+        }
+        for (int i = 0; i < to - from; i++) {
+            if (!tags[from + i].equals(otherMap.tags[otherMap.from + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode(tags, from, to);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.EWMA;
+import com.codahale.metrics.Meter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Meter} whose {@link #mark()} only increments a striped counter, for meters marked concurrently from many
+ * threads. Unlike {@link Meter}, writers neither tick the exponentially weighted moving averages nor share the tick
+ * timestamp, and reads bring the averages up to date from the change in count since the previous read.
+ *
+ * <p>When several tick intervals have elapsed since the previous read, the count recorded in between is spread evenly
+ * across those intervals, so rates of meters which are read at least once per reporting interval match {@link Meter}.
+ */
+public final class StripedMeter extends Meter {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    // LongAdder cells are padded, so concurrent writers do not share cache lines
+    private final LongAdder count = new LongAdder();
+    private final EWMA m1Rate = EWMA.oneMinuteEWMA();
+    private final EWMA m5Rate = EWMA.fiveMinuteEWMA();
+    private final EWMA m15Rate = EWMA.fifteenMinuteEWMA();
+    private final Clock clock;
+    private final long startTime;
+
+    // guarded by this
+    private long lastTick;
+    private long lastCount;
+
+    public StripedMeter() {
+        this(Clock.defaultClock());
+    }
+
+    public StripedMeter(Clock clock) {
+        super(clock);
+        this.clock = checkNotNull(clock, "clock");
+        this.startTime = clock.getTick();
+        this.lastTick = startTime;
+    }
+
+    @Override
+    public void mark() {
+        count.increment();
+    }
+
+    @Override
+    public void mark(long n) {
+        count.add(n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanRate() {
+        long currentCount = getCount();
+        if (currentCount == 0) {
+            return 0.0;
+        }
+        double elapsed = clock.getTick() - startTime;
+        return currentCount / elapsed * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return m1Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        tickIfNecessary();
+        return m5Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        tickIfNecessary();
+        return m15Rate.getRate(TimeUnit.SECONDS);
+    }
+
+    private synchronized void tickIfNecessary() {
+        long ticks = (clock.getTick() - lastTick) / TICK_INTERVAL;
+        if (ticks <= 0) {
+            return;
+        }
+        lastTick += ticks * TICK_INTERVAL;
+        long currentCount = count.sum();
+        long delta = currentCount - lastCount;
+        lastCount = currentCount;
+        for (long i = 0; i < ticks; i++) {
+            // spread the count evenly across elapsed intervals, including the remainder in the final interval
+            long intervalCount = i == ticks - 1 ? delta - delta / ticks * (ticks - 1) : delta / ticks;
+            m1Rate.update(intervalCount);
+            m5Rate.update(intervalCount);
+            m15Rate.update(intervalCount);
+            m1Rate.tick();
+            m5Rate.tick();
+            m15Rate.tick();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+
+import com.palantir.logsafe.SafeArg;
+
+/**
+ * Selects the stripe updated by the current thread for metrics which spread concurrent updates across a power of two
+ * number of stripes.
+ */
+final class Stripes {
+
+    private Stripes() {}
+
+    /**
+     * Returns the number of stripes to allocate for the specified number of requested stripes, rounded up to a power of
+     * two so that {@link #index(int)} can select a stripe with a mask.
+     *
+     * @param requested requested number of stripes, which must be positive
+     * @return number of stripes
+     */
+    static int count(int requested) {
+        checkArgument(requested > 0, "stripes must be positive", SafeArg.of("stripes", requested));
+        int size = Integer.highestOneBit(requested);
+        return size < requested ? size << 1 : size;
+    }
+
+    /**
+     * Returns the stripe of the current thread.
+     *
+     * @param mask number of stripes minus one, as returned by {@link #count(int)}
+     * @return stripe index between 0 and {@code mask} inclusive
+     */
+    static int index(int mask) {
+        // spread sequential thread ids across stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & mask;
+    }
+}
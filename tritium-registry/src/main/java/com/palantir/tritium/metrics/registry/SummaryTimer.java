@@ -0,0 +1,289 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Lightweight {@link Timer} which only tracks the count, the total duration and the minimum and maximum durations of
+ * recent intervals, for endpoints where per-timer reservoirs and exponentially weighted rates cost more than they are
+ * worth. Updates only increment striped counters, and the timer retains under a kilobyte regardless of its update rate.
+ *
+ * <p>Summary timers remain {@link Timer} instances, so they can be registered with {@link
+ * TaggedMetricRegistry#timer(MetricName, java.util.function.Supplier)} and exported by existing reporters, with the
+ * following differences:
+ *
+ * <ul>
+ *   <li>Snapshots summarize the updates of the current interval and the previous one, where an interval lasts at least
+ *       a minute and ends on the first snapshot taken after that minute. The mean, minimum and maximum all cover these
+ *       updates, and the maximum also bounds every quantile. Snapshots retain no values. Taking a snapshot does not
+ *       reset anything, so every reader sees the same summary within an interval.
+ *   <li>Rates are exponentially weighted like those of a {@link Meter}, but updates are only applied to the rates when
+ *       they are read, so updates count towards the first five second tick after the next read of the rates.
+ * </ul>
+ */
+public final class SummaryTimer extends Timer implements MemoryEstimated {
+
+    private static final Reservoir NO_VALUES = new NoValuesReservoir();
+    private static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    @Nullable
+    private static final Field TIMER_METER = timerMeter();
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator minNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final Meter rates;
+    private final Clock clock;
+    private final long startTick;
+
+    // guarded by this
+    private long intervalStartTick;
+    private long intervalStartCount;
+    private long intervalStartSum;
+    private long previousStartCount;
+    private long previousStartSum;
+    private long previousMax;
+    private long previousMin = Long.MAX_VALUE;
+
+    // guarded by rates
+    private long markedCount;
+
+    public SummaryTimer() {
+        this(Clock.defaultClock());
+    }
+
+    @VisibleForTesting
+    SummaryTimer(Clock clock) {
+        super(NO_VALUES, clock);
+        this.clock = checkNotNull(clock, "clock");
+        this.rates = baseMeter(this, clock);
+        this.startTick = clock.getTick();
+        this.intervalStartTick = startTick;
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        if (nanos >= 0) {
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            minNanos.accumulate(nanos);
+        }
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        long startTime = clock.getTick();
+        try {
+            return event.call();
+        } finally {
+            update(clock.getTick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void time(Runnable event) {
+        long startTime = clock.getTick();
+        try {
+            event.run();
+        } finally {
+            update(clock.getTick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Returns the total duration of all updates in nanoseconds. */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        // retained per timer as measured by SummaryTimerBenchmark, less the registry entry and metric name, including
+        // the meter and histogram allocated by the base timer
+        return 784;
+    }
+
+    @Override
+    public double getMeanRate() {
+        long elapsed = clock.getTick() - startTick;
+        return elapsed <= 0 ? 0.0 : getCount() / (double) elapsed * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return rates().getOneMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return rates().getFiveMinuteRate();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return rates().getFifteenMinuteRate();
+    }
+
+    /**
+     * Returns the meter allocated by the base timer, which is otherwise never marked as updates bypass the base timer,
+     * so that the timer keeps a single set of rates.
+     */
+    private static Meter baseMeter(Timer timer, Clock clock) {
+        if (TIMER_METER != null) {
+            try {
+                return (Meter) TIMER_METER.get(timer);
+            } catch (IllegalAccessException | RuntimeException e) {
+                // fall through
+            }
+        }
+        return new Meter(clock);
+    }
+
+    @Nullable
+    private static Field timerMeter() {
+        try {
+            Field field = Timer.class.getDeclaredField("meter");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall back to a separate meter
+            return null;
+        }
+    }
+
+    private Meter rates() {
+        synchronized (rates) {
+            long current = count.sum();
+            rates.mark(current - markedCount);
+            markedCount = current;
+        }
+        return rates;
+    }
+
+    /**
+     * Returns a summary of the updates in the current and previous intervals, starting a new interval if the current
+     * one has lasted at least a minute.
+     */
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long now = clock.getTick();
+        if (now - intervalStartTick >= INTERVAL_NANOS) {
+            previousStartCount = intervalStartCount;
+            previousStartSum = intervalStartSum;
+            previousMax = maxNanos.getThenReset();
+            previousMin = minNanos.getThenReset();
+            intervalStartCount = count.sum();
+            intervalStartSum = sumNanos.sum();
+            intervalStartTick = now;
+        }
+        long min = Math.min(previousMin, minNanos.get());
+        return new SummarySnapshot(
+                count.sum() - previousStartCount,
+                sumNanos.sum() - previousStartSum,
+                min == Long.MAX_VALUE ? 0 : min,
+                Math.max(previousMax, maxNanos.get()));
+    }
+
+    private static final class SummarySnapshot extends Snapshot {
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        SummarySnapshot(long count, long sum, long min, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public double getValue(double _quantile) {
+            return max;
+        }
+
+        @Override
+        public long[] getValues() {
+            return new long[0];
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        @Override
+        public double getStdDev() {
+            return 0.0;
+        }
+
+        @Override
+        public void dump(OutputStream _output) {}
+    }
+
+    /** Placeholder for the unused reservoir of the superclass, which retains nothing. */
+    private static final class NoValuesReservoir implements Reservoir {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public void update(long _value) {}
+
+        @Override
+        public Snapshot getSnapshot() {
+            return new SummarySnapshot(0, 0, 0, 0);
+        }
+    }
+}
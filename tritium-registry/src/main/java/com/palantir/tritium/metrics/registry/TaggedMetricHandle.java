@@ -0,0 +1,191 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static com.palantir.logsafe.Preconditions.checkArgument;
+import static com.palantir.logsafe.Preconditions.checkNotNull;
+
+import com.codahale.metrics.Metric;
+import com.palantir.logsafe.SafeArg;
+import com.palantir.logsafe.exceptions.SafeIllegalArgumentException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Metrics of a registry resolved from a name template and a fixed list of tag names, looked up by tag values without
+ * building a {@link MetricName} or hashing one for each update. Obtained from {@link
+ * TaggedMetricRegistry#timerHandle(MetricName, String...)} and its siblings, for example:
+ *
+ * <pre>{@code
+ * TaggedMetricHandle<Timer> requests = registry.timerHandle(
+ *         MetricName.builder().safeName("server.requests").build(), "method", "status");
+ * requests.tagged("GET", "200").update(duration, TimeUnit.NANOSECONDS);
+ * }</pre>
+ *
+ * <p>Tag values are indexed by a tree of maps with one level per tag name, and each leaf caches its metric until the
+ * registry's {@link TaggedMetricRegistry#removalEpoch() removal epoch} changes, so a handle returns a newly registered
+ * metric after its previous metric is removed or evicted. Registries which do not track removals are queried on every
+ * lookup. Handles retain every combination of tag values looked up through them, so they should only be used for tags
+ * with a bounded number of values.
+ */
+public final class TaggedMetricHandle<T extends Metric> {
+
+    private final TaggedMetricRegistry registry;
+    private final Function<MetricName, T> factory;
+    private final MetricName template;
+    private final String[] safeTagNames;
+    private final Node<T> root;
+
+    TaggedMetricHandle(
+            TaggedMetricRegistry registry,
+            Function<MetricName, T> factory,
+            MetricName template,
+            String... safeTagNames) {
+        this.registry = checkNotNull(registry, "registry");
+        this.factory = checkNotNull(factory, "factory");
+        this.template = RealMetricName.create(checkNotNull(template, "template"));
+        this.safeTagNames = checkNotNull(safeTagNames, "safeTagNames").clone();
+        Set<String> tagNames = new HashSet<>(template.safeTags().keySet());
+        for (String safeTagName : this.safeTagNames) {
+            checkArgument(
+                    tagNames.add(checkNotNull(safeTagName, "safeTagName")),
+                    "Tag names must be distinct and not present in the template",
+                    SafeArg.of("safeTagName", safeTagName));
+        }
+        this.root = this.safeTagNames.length == 0 ? new Node<>(this.template) : new Node<>(null);
+    }
+
+    /** Returns the metric of a handle without tag names. */
+    public T tagged() {
+        checkArity(0);
+        return metric(root);
+    }
+
+    /** Returns the metric with the specified value of the single tag name of this handle. */
+    public T tagged(String safeTagValue) {
+        checkArity(1);
+        Node<T> node = root.child(safeTagValue);
+        return node == null ? create(safeTagValue) : metric(node);
+    }
+
+    /** Returns the metric with the specified values of the two tag names of this handle. */
+    public T tagged(String safeTagValue1, String safeTagValue2) {
+        checkArity(2);
+        Node<T> node = root.child(safeTagValue1);
+        node = node == null ? null : node.child(safeTagValue2);
+        return node == null ? create(safeTagValue1, safeTagValue2) : metric(node);
+    }
+
+    /** Returns the metric with the specified values of the three tag names of this handle. */
+    public T tagged(String safeTagValue1, String safeTagValue2, String safeTagValue3) {
+        checkArity(3);
+        Node<T> node = root.child(safeTagValue1);
+        node = node == null ? null : node.child(safeTagValue2);
+        node = node == null ? null : node.child(safeTagValue3);
+        return node == null ? create(safeTagValue1, safeTagValue2, safeTagValue3) : metric(node);
+    }
+
+    /** Returns the metric with the specified values of the tag names of this handle, in the same order. */
+    public T tagged(String... safeTagValues) {
+        checkArity(safeTagValues.length);
+        Node<T> node = root;
+        for (int i = 0; i < safeTagValues.length && node != null; i++) {
+            node = node.child(safeTagValues[i]);
+        }
+        return node == null ? create(safeTagValues) : metric(node);
+    }
+
+    private void checkArity(int arity) {
+        if (arity != safeTagNames.length) {
+            throw new SafeIllegalArgumentException(
+                    "Expected a value for each tag name",
+                    SafeArg.of("safeName", template.safeName()),
+                    SafeArg.of("expected", safeTagNames.length),
+                    SafeArg.of("actual", arity));
+        }
+    }
+
+    private T create(String... safeTagValues) {
+        Node<T> node = root;
+        for (int i = 0; i < safeTagValues.length; i++) {
+            boolean leaf = i == safeTagValues.length - 1;
+            node = node.children().computeIfAbsent(
+                    checkNotNull(safeTagValues[i], "safeTagValue"),
+                    _value -> new Node<>(leaf ? name(safeTagValues) : null));
+        }
+        return metric(node);
+    }
+
+    private MetricName name(String... safeTagValues) {
+        MetricName name = template;
+        for (int i = 0; i < safeTagValues.length; i++) {
+            name = RealMetricName.create(name, safeTagNames[i], safeTagValues[i]);
+        }
+        return name;
+    }
+
+    private T metric(Node<T> node) {
+        // read the epoch before resolving, so that a removal racing with the lookup invalidates the result
+        long epoch = registry.removalEpoch();
+        Resolved<T> resolved = node.resolved;
+        if (resolved != null && resolved.epoch == epoch && epoch != 0) {
+            return resolved.metric;
+        }
+        T metric = factory.apply(checkNotNull(node.name, "name"));
+        node.resolved = new Resolved<>(metric, epoch);
+        return metric;
+    }
+
+    private static final class Node<T> {
+        @Nullable
+        private final MetricName name;
+
+        @Nullable
+        private final Map<String, Node<T>> children;
+
+        @Nullable
+        private volatile Resolved<T> resolved;
+
+        Node(@Nullable MetricName name) {
+            this.name = name;
+            this.children = name == null ? new ConcurrentHashMap<>() : null;
+        }
+
+        @Nullable
+        Node<T> child(@Nullable String safeTagValue) {
+            return safeTagValue == null ? null : children().get(safeTagValue);
+        }
+
+        Map<String, Node<T>> children() {
+            return checkNotNull(children, "children");
+        }
+    }
+
+    private static final class Resolved<T> {
+        private final T metric;
+        private final long epoch;
+
+        Resolved(T metric, long epoch) {
+            this.metric = metric;
+            this.epoch = epoch;
+        }
+    }
+}
@@ -120,6 +120,33 @@ public interface TaggedMetricRegistry extends TaggedMetricSet {
 
     Counter counter(MetricName metricName, Supplier<Counter> counterSupplier);
 
+    /**
+     * Returns a handle to the timers named by the specified template with the specified additional tag names, which
+     * are looked up by their tag values without building a metric name for each update.
+     *
+     * @param template name and fixed tags of the timers
+     * @param safeTagNames names of the tags whose values are provided to {@link TaggedMetricHandle#tagged(String...)}
+     * @return timer handle
+     */
+    default TaggedMetricHandle<Timer> timerHandle(MetricName template, String... safeTagNames) {
+        return new TaggedMetricHandle<>(this, this::timer, template, safeTagNames);
+    }
+
+    /** Returns a handle to meters, see {@link #timerHandle(MetricName, String...)}. */
+    default TaggedMetricHandle<Meter> meterHandle(MetricName template, String... safeTagNames) {
+        return new TaggedMetricHandle<>(this, this::meter, template, safeTagNames);
+    }
+
+    /** Returns a handle to histograms, see {@link #timerHandle(MetricName, String...)}. */
+    default TaggedMetricHandle<Histogram> histogramHandle(MetricName template, String... safeTagNames) {
+        return new TaggedMetricHandle<>(this, this::histogram, template, safeTagNames);
+    }
+
+    /** Returns a handle to counters, see {@link #timerHandle(MetricName, String...)}. */
+    default TaggedMetricHandle<Counter> counterHandle(MetricName template, String... safeTagNames) {
+        return new TaggedMetricHandle<>(this, this::counter, template, safeTagNames);
+    }
+
     /**
      * Removes the tagged metric with the specified metric name.
      *
@@ -128,6 +155,27 @@ public interface TaggedMetricRegistry extends TaggedMetricSet {
      */
     Optional<Metric> remove(MetricName metricName);
 
+    /**
+     * Returns a value which changes whenever metrics are removed from this registry, for example by {@link
+     * AbstractTaggedMetricRegistry#evictIdleMetrics(java.time.Duration) idle eviction}, so that callers which cache
+     * metrics can notice their removal and look them up again.
+     *
+     * @return removal epoch, or zero if this registry does not track removals
+     */
+    default long removalEpoch() {
+        return 0;
+    }
+
+    /**
+     * Returns a new cursor over the metrics of this registry, including those of added metric sets, which reports only
+     * the metrics created, updated or removed since its previous poll.
+     *
+     * @return export cursor
+     */
+    default MetricExportCursor exportCursor() {
+        return new MetricExportCursor(this);
+    }
+
     /**
      * Adds a set of metrics to this TaggedMetricRegistry's metric set, which are to be uniquely identified by the tags
      * provided.
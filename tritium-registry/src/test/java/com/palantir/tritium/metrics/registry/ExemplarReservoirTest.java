@@ -0,0 +1,179 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+final class ExemplarReservoirTest {
+
+    private final AtomicLong time = new AtomicLong(1_000);
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return TimeUnit.MILLISECONDS.toNanos(time.get());
+        }
+
+        @Override
+        public long getTime() {
+            return time.get();
+        }
+    };
+    private final AtomicReference<String> traceId = new AtomicReference<>();
+    private final ExemplarReservoir reservoir = new ExemplarReservoir(new UniformReservoir(), traceId::get, clock);
+
+    @Test
+    void testEmpty() {
+        ExemplarSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isZero();
+        assertThat(snapshot.exemplars()).isEmpty();
+    }
+
+    @Test
+    void testMaxExemplar() {
+        traceId.set("a");
+        reservoir.update(5);
+        time.set(2_000);
+        traceId.set("b");
+        reservoir.update(9);
+        time.set(3_000);
+        traceId.set(null);
+        reservoir.update(7);
+
+        ExemplarSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.getMax()).isEqualTo(9);
+        assertThat(snapshot.exemplars()).containsExactly(Exemplar.of(9, 2_000, Optional.of("b")));
+
+        // snapshots do not reset the exemplars, which remain visible for the following interval
+        assertThat(reservoir.getSnapshot().exemplars()).containsExactly(Exemplar.of(9, 2_000, Optional.of("b")));
+        // updates belong to the current interval until a snapshot ends it
+        time.addAndGet(60_000);
+        reservoir.update(8);
+        assertThat(reservoir.getSnapshot().exemplars()).containsExactly(Exemplar.of(9, 2_000, Optional.of("b")));
+        reservoir.update(4);
+        assertThat(reservoir.getSnapshot().exemplars()).containsExactly(Exemplar.of(9, 2_000, Optional.of("b")));
+        time.addAndGet(60_000);
+        assertThat(reservoir.getSnapshot().exemplars()).containsExactly(Exemplar.of(4, 63_000, Optional.empty()));
+        time.addAndGet(60_000);
+        assertThat(reservoir.getSnapshot().exemplars()).isEmpty();
+    }
+
+    @Test
+    void testSampledExemplarAbovePreviousPercentile() {
+        for (long value = 1; value <= 100; value++) {
+            reservoir.update(value);
+        }
+        time.addAndGet(60_000);
+        reservoir.getSnapshot();
+
+        // only values at or above the previous 99th percentile are sampled
+        traceId.set("slow");
+        reservoir.update(99);
+        traceId.set(null);
+        for (long value = 1; value <= 50; value++) {
+            reservoir.update(value);
+        }
+        reservoir.update(150);
+
+        // the sampled exemplar is omitted when it is also the maximum
+        List<Exemplar> exemplars = reservoir.getSnapshot().exemplars();
+        assertThat(exemplars.get(0)).isEqualTo(Exemplar.of(150, 61_000, Optional.empty()));
+        if (exemplars.size() == 2) {
+            assertThat(exemplars.get(1)).isEqualTo(Exemplar.of(99, 61_000, Optional.of("slow")));
+        } else {
+            assertThat(exemplars).hasSize(1);
+        }
+    }
+
+    @Test
+    void testSampledExemplarIsUniform() {
+        // a single value window resets the sampling threshold to zero after each run
+        ExemplarReservoir sampled = new ExemplarReservoir(new SlidingWindowReservoir(1), traceId::get, clock);
+        int[] counts = new int[4];
+        for (int run = 0; run < 4_000; run++) {
+            sampled.update(0);
+            time.addAndGet(60_000);
+            sampled.getSnapshot();
+            for (int value = 1; value <= 4; value++) {
+                sampled.update(value);
+            }
+            time.addAndGet(60_000);
+            List<Exemplar> exemplars = sampled.getSnapshot().exemplars();
+            long sample = exemplars.size() == 1 ? exemplars.get(0).value() : exemplars.get(1).value();
+            counts[(int) sample - 1]++;
+            time.addAndGet(60_000);
+            sampled.getSnapshot();
+        }
+        for (int count : counts) {
+            assertThat(count).isBetween(800, 1_200);
+        }
+    }
+
+    @Test
+    void testTimers() throws Exception {
+        Timer timer = ExemplarReservoir.timers(UniformReservoir::new, () -> "trace").get();
+        timer.update(3, TimeUnit.MILLISECONDS);
+        timer.time(() -> {});
+
+        ExemplarSnapshot snapshot = (ExemplarSnapshot) timer.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.exemplars()).hasSize(1).allSatisfy(exemplar -> {
+            assertThat(exemplar.value()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(3));
+            assertThat(exemplar.traceId()).contains("trace");
+        });
+    }
+
+    @Test
+    void testConcurrentUpdates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                long offset = i;
+                futures[i] = executor.submit(() -> {
+                    for (long value = 0; value < 10_000; value++) {
+                        reservoir.update(value * 4 + offset);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        ExemplarSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.getMax()).isLessThanOrEqualTo(39_999);
+        // concurrent offers may be skipped, but the captured maximum is a recorded value
+        assertThat(snapshot.exemplars()).hasSize(1).allSatisfy(exemplar -> assertThat(exemplar.value())
+                .isBetween(0L, 39_999L));
+    }
+}
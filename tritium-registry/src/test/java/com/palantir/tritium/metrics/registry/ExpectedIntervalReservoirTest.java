@@ -0,0 +1,79 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class ExpectedIntervalReservoirTest {
+
+    @Test
+    void testRecordsCorrectedValues() {
+        List<Long> values = new ArrayList<>();
+        ExpectedIntervalReservoir.recordCorrectedValues(35, 10, values::add);
+        assertThat(values).containsExactly(25L, 15L);
+
+        values.clear();
+        ExpectedIntervalReservoir.recordCorrectedValues(19, 10, values::add);
+        assertThat(values).isEmpty();
+
+        values.clear();
+        ExpectedIntervalReservoir.recordCorrectedValues(35, 0, values::add);
+        assertThat(values).isEmpty();
+    }
+
+    @Test
+    void testCapsCorrectedValues() {
+        List<Long> values = new ArrayList<>();
+        ExpectedIntervalReservoir.recordCorrectedValues(TimeUnit.HOURS.toNanos(1), 1, values::add);
+        assertThat(values).hasSize(ExpectedIntervalReservoir.MAX_CORRECTED_VALUES);
+        assertThat(values.get(0)).isEqualTo(TimeUnit.HOURS.toNanos(1) - 1);
+    }
+
+    @Test
+    void testTimerCountsActualUpdates() {
+        Timer timer = ExpectedIntervalReservoir.timers(Duration.ofMillis(10), UniformReservoir::new)
+                .get();
+        for (int i = 0; i < 98; i++) {
+            timer.update(1, TimeUnit.MILLISECONDS);
+        }
+        // a one second stall delays the 99 calls expected during it, recorded as 990ms, 980ms ... 10ms
+        timer.update(1, TimeUnit.SECONDS);
+        timer.update(1, TimeUnit.MILLISECONDS);
+
+        assertThat(timer.getCount()).isEqualTo(100);
+        assertThat(timer.getSnapshot().size()).isEqualTo(199);
+        assertThat(timer.getSnapshot().getMedian()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void testInvalidInterval() {
+        assertThatThrownBy(() -> new ExpectedIntervalReservoir(new UniformReservoir(), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ExpectedIntervalReservoir.timers(Duration.ZERO, UniformReservoir::new))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
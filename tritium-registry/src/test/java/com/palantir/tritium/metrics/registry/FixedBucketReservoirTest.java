@@ -0,0 +1,95 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class FixedBucketReservoirTest {
+
+    private final FixedBucketReservoir reservoir = new FixedBucketReservoir(5, 10, 25, 50);
+
+    @Test
+    void testEmpty() {
+        FixedBucketSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isZero();
+        assertThat(snapshot.getMin()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+        assertThat(snapshot.getMean()).isZero();
+        assertThat(snapshot.getMedian()).isZero();
+        assertThat(snapshot.getValues()).isEmpty();
+        assertThat(snapshot.cumulativeCounts()).containsExactly(0, 0, 0, 0, 0);
+    }
+
+    @Test
+    void testBoundariesAreInclusive() {
+        for (long value : new long[] {-1, 0, 5, 6, 10, 11, 50, 51, 1000}) {
+            reservoir.update(value);
+        }
+        FixedBucketSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.boundaries()).containsExactly(5, 10, 25, 50);
+        assertThat(snapshot.counts()).containsExactly(3, 2, 1, 1, 2);
+        assertThat(snapshot.cumulativeCounts()).containsExactly(3, 5, 6, 7, 9);
+        assertThat(snapshot.count()).isEqualTo(9);
+        assertThat(snapshot.sum()).isEqualTo(1132);
+        assertThat(snapshot.getMin()).isEqualTo(-1);
+        assertThat(snapshot.getMax()).isEqualTo(1000);
+        assertThat(reservoir.size()).isEqualTo(9);
+    }
+
+    @Test
+    void testQuantilesReportBucketBoundaries() {
+        for (long value = 1; value <= 100; value++) {
+            reservoir.update(value % 40);
+        }
+        FixedBucketSnapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.getValue(0.0)).isEqualTo(5);
+        assertThat(snapshot.getMedian()).isEqualTo(25);
+        assertThat(snapshot.get99thPercentile()).isEqualTo(39);
+        assertThat(snapshot.getValue(1.0)).isEqualTo(39);
+        assertThat(snapshot.getValues()).hasSize(100).isSorted().startsWith(5, 5).endsWith(39, 39);
+        assertThatThrownBy(() -> snapshot.getValue(1.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testTimersAndHistograms() {
+        Timer timer = FixedBucketReservoir.timers(Duration.ofMillis(5), Duration.ofMillis(10))
+                .get();
+        timer.update(3, TimeUnit.MILLISECONDS);
+        timer.update(7, TimeUnit.MILLISECONDS);
+        timer.update(1, TimeUnit.SECONDS);
+        assertThat(((FixedBucketSnapshot) timer.getSnapshot()).counts()).containsExactly(1, 1, 1);
+
+        Histogram histogram = FixedBucketReservoir.histograms(1, 2).get();
+        histogram.update(2);
+        assertThat(((FixedBucketSnapshot) histogram.getSnapshot()).counts()).containsExactly(0, 1, 0);
+    }
+
+    @Test
+    void testInvalidBoundaries() {
+        assertThatThrownBy(FixedBucketReservoir::new).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FixedBucketReservoir(1, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FixedBucketReservoir.timers(Duration.ofMillis(10), Duration.ofMillis(5)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class MetricExportCursorTest {
+
+    private final DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final MetricExportCursor cursor = registry.exportCursor();
+
+    @Test
+    void testReportsChangesSincePreviousPoll() {
+        Counter counter = registry.counter(name("counter"));
+        Meter meter = registry.meter(name("meter"));
+        registry.gauge(name("gauge"), () -> 1);
+        assertThat(poll()).containsExactlyInAnyOrder("created counter", "created meter", "created gauge");
+
+        // gauges cannot be compared and are always updated
+        assertThat(poll()).containsExactly("updated gauge");
+
+        counter.inc();
+        registry.timer(name("timer"));
+        registry.remove(name("meter"));
+        assertThat(poll())
+                .containsExactlyInAnyOrder("updated counter", "created timer", "updated gauge", "removed meter");
+
+        meter.mark();
+        registry.remove(name("gauge"));
+        assertThat(poll()).containsExactly("removed gauge");
+        assertThat(poll()).isEmpty();
+    }
+
+    @Test
+    void testReplacedMetricIsCreated() {
+        registry.counter(name("counter"));
+        poll();
+        registry.remove(name("counter"));
+        registry.counter(name("counter"));
+        assertThat(poll()).containsExactly("created counter");
+    }
+
+    @Test
+    void testAddedMetricSets() {
+        DefaultTaggedMetricRegistry child = new DefaultTaggedMetricRegistry();
+        Counter counter = child.counter(name("counter"));
+        registry.addMetrics("child", "1", child);
+        List<MetricName> created = new ArrayList<>();
+        cursor.poll(new NoOpListener() {
+            @Override
+            public void created(MetricName metricName, Metric _metric) {
+                created.add(metricName);
+            }
+        });
+        assertThat(created).containsExactly(MetricName.builder()
+                .safeName("counter")
+                .putSafeTags("child", "1")
+                .build());
+
+        counter.inc();
+        List<MetricName> updated = new ArrayList<>();
+        cursor.poll(new NoOpListener() {
+            @Override
+            public void updated(MetricName metricName, Metric _metric) {
+                updated.add(metricName);
+            }
+        });
+        assertThat(updated).containsExactlyElementsOf(created);
+        assertThat(updated.get(0)).isSameAs(created.get(0));
+
+        registry.removeMetrics("child", "1");
+        assertThat(poll()).containsExactly("removed counter");
+    }
+
+    @Test
+    void testCursorsAreIndependent() {
+        Counter counter = registry.counter(name("counter"));
+        poll();
+        MetricExportCursor other = registry.exportCursor();
+        counter.inc();
+        assertThat(poll()).containsExactly("updated counter");
+        List<String> otherChanges = new ArrayList<>();
+        other.poll(new RecordingListener(otherChanges));
+        assertThat(otherChanges).containsExactly("created counter");
+    }
+
+    private List<String> poll() {
+        List<String> changes = new ArrayList<>();
+        cursor.poll(new RecordingListener(changes));
+        return changes;
+    }
+
+    private static MetricName name(String safeName) {
+        return MetricName.builder().safeName(safeName).build();
+    }
+
+    private static class NoOpListener implements MetricExportCursor.Listener {
+        @Override
+        public void created(MetricName _metricName, Metric _metric) {}
+
+        @Override
+        public void updated(MetricName _metricName, Metric _metric) {}
+
+        @Override
+        public void removed(MetricName _metricName) {}
+    }
+
+    private static final class RecordingListener implements MetricExportCursor.Listener {
+        private final List<String> changes;
+
+        RecordingListener(List<String> changes) {
+            this.changes = changes;
+        }
+
+        @Override
+        public void created(MetricName metricName, Metric _metric) {
+            changes.add("created " + metricName.safeName());
+        }
+
+        @Override
+        public void updated(MetricName metricName, Metric _metric) {
+            changes.add("updated " + metricName.safeName());
+        }
+
+        @Override
+        public void removed(MetricName metricName) {
+            changes.add("removed " + metricName.safeName());
+        }
+    }
+}
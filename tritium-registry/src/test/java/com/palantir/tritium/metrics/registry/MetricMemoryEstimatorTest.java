@@ -0,0 +1,152 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.Timer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class MetricMemoryEstimatorTest {
+
+    private final TaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+    private final MetricMemoryEstimator estimator = new MetricMemoryEstimator(registry);
+
+    @Test
+    void testEmpty() {
+        assertThat(estimator.estimatedBytes()).isZero();
+        assertThat(estimator.heaviest(10)).isEmpty();
+    }
+
+    @Test
+    void testGrowsWithReservoirValues() {
+        Histogram histogram = registry.histogram(
+                name("histogram", "a"), () -> new Histogram(new SlidingTimeWindowArrayReservoir(1, TimeUnit.HOURS)));
+        long empty = estimator.estimatedBytes();
+        assertThat(empty).isPositive();
+
+        for (int i = 0; i < 1_000; i++) {
+            histogram.update(i);
+        }
+        assertThat(estimator.estimatedBytes()).isEqualTo(empty + 16 * 1_000);
+    }
+
+    @Test
+    void testIncludesNameAndTags() {
+        registry.counter(name("counter", "a"));
+        long shortTag = estimator.estimatedBytes();
+        registry.remove(name("counter", "a"));
+        registry.counter(name("counter", "aaaaaaaaaa"));
+        assertThat(estimator.estimatedBytes()).isEqualTo(shortTag + 9);
+    }
+
+    @Test
+    void testRemovedMetrics() {
+        registry.timer(name("timer", "a"));
+        assertThat(estimator.estimatedBytes()).isPositive();
+        registry.remove(name("timer", "a"));
+        assertThat(estimator.estimatedBytes()).isZero();
+    }
+
+    @Test
+    void testHeaviest() {
+        registry.counter(name("counter", "a"));
+        registry.meter(name("meter", "a"));
+        Timer timer = registry.timer(name("timer", "a"));
+        registry.timer(name("summary", "a"), SummaryTimer::new);
+        registry.histogram(name("fixed", "a"), FixedBucketReservoir.histograms(1, 2, 3));
+        for (int i = 0; i < 100; i++) {
+            timer.update(i, TimeUnit.NANOSECONDS);
+        }
+
+        Map<MetricName, Long> heaviest = estimator.heaviest(3);
+        assertThat(heaviest.keySet()).containsExactly(name("timer", "a"), name("summary", "a"), name("fixed", "a"));
+        assertThat(new ArrayList<>(heaviest.values())).isSortedAccordingTo(Comparator.reverseOrder());
+        assertThat(estimator.heaviest(10)).hasSize(5);
+        assertThat(estimator.heaviest(0)).isEmpty();
+        assertThatThrownBy(() -> estimator.heaviest(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testGauges() {
+        registry.timer(name("timer", "a"));
+        registry.timer(name("timer", "b"));
+        registry.counter(name("counter", "a"));
+        registry.addMetrics("registry", "default", estimator);
+
+        Map<MetricName, Metric> metrics = registry.getMetrics();
+        long timers = estimator.heaviest(2).values().stream().mapToLong(Long::longValue).sum();
+        assertThat(value(metrics, MetricName.builder()
+                        .safeName("tritium.registry.metric.estimated-bytes")
+                        .putSafeTags("metric-name", "timer")
+                        .putSafeTags("registry", "default")
+                        .build()))
+                .isEqualTo(timers);
+        assertThat(value(metrics, MetricName.builder()
+                        .safeName("tritium.registry.estimated-bytes")
+                        .putSafeTags("registry", "default")
+                        .build()))
+                .isGreaterThan(timers);
+    }
+
+    @Test
+    void testSubRegistries() {
+        TaggedMetricRegistry child = new DefaultTaggedMetricRegistry();
+        child.timer(name("timer", "a"));
+        registry.addMetrics("child", "1", child);
+        assertThat(estimator.heaviest(1).keySet()).containsExactly(MetricName.builder()
+                .safeName("timer")
+                .putSafeTags("tag", "a")
+                .putSafeTags("child", "1")
+                .build());
+    }
+
+    @Test
+    void testTimerReservoirs() {
+        Timer defaultTimer = registry.timer(name("timer", "a"));
+        registry.timer(name("timer", "b"), () -> new Timer(new SlidingTimeWindowArrayReservoir(1, TimeUnit.HOURS)));
+        for (int i = 0; i < 10_000; i++) {
+            defaultTimer.update(i, TimeUnit.NANOSECONDS);
+        }
+        // the default reservoir is bounded, whereas the sliding window retains all values
+        long bounded = estimator.heaviest(1).values().iterator().next();
+        registry.timer(name("timer", "b")).update(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (int i = 0; i < 10_000; i++) {
+            registry.timer(name("timer", "b")).update(i, TimeUnit.NANOSECONDS);
+        }
+        assertThat(estimator.heaviest(1)).containsOnlyKeys(name("timer", "b"));
+        assertThat(estimator.heaviest(1).get(name("timer", "b"))).isGreaterThan(bounded);
+    }
+
+    private static long value(Map<MetricName, Metric> metrics, MetricName metricName) {
+        assertThat(metrics).containsKey(metricName);
+        return (Long) ((Gauge<?>) metrics.get(metricName)).getValue();
+    }
+
+    private static MetricName name(String safeName, String tag) {
+        return MetricName.builder().safeName(safeName).putSafeTags("tag", tag).build();
+    }
+}
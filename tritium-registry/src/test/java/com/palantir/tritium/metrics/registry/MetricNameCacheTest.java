@@ -0,0 +1,60 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+final class MetricNameCacheTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final MetricNameCache<String> cache = new MetricNameCache<>(name -> {
+        created.incrementAndGet();
+        return RealMetricName.create(name);
+    });
+
+    @Test
+    void testReusesNames() {
+        MetricName name = cache.get("a");
+        assertThat(name).isEqualTo(MetricName.builder().safeName("a").build());
+        assertThat(cache.get("a")).isSameAs(name);
+        assertThat(cache.get("b")).isNotEqualTo(name);
+        assertThat(created).hasValue(2);
+    }
+
+    @Test
+    void testClearsWhenFull() {
+        MetricName first = cache.get("0");
+        for (int i = 1; i < 1024; i++) {
+            cache.get(Integer.toString(i));
+        }
+        assertThat(cache.get("0")).isSameAs(first);
+        assertThat(created).hasValue(1024);
+
+        // the next new name clears the cache, which then holds up to twice as many names
+        cache.get("1024");
+        assertThat(cache.get("0")).isEqualTo(first).isNotSameAs(first);
+        for (int i = 1; i < 2048; i++) {
+            cache.get(Integer.toString(i));
+        }
+        MetricName reused = cache.get("0");
+        assertThat(cache.get("0")).isSameAs(reused);
+        assertThat(created).hasValue(1024 + 2048);
+    }
+}
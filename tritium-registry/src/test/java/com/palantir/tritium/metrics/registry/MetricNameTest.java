@@ -17,7 +17,10 @@
 package com.palantir.tritium.metrics.registry;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.google.common.collect.Maps;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 public class MetricNameTest {
@@ -107,4 +110,54 @@ public class MetricNameTest {
         assertThat(one).isNotEqualTo(two);
         assertThat(two).isNotEqualTo(one);
     }
+
+    @Test
+    public void extraTagIsSorted() {
+        MetricName base = MetricName.builder()
+                .safeName("a")
+                .putSafeTags("key1", "value1")
+                .putSafeTags("key3", "value3")
+                .build();
+        assertThat(RealMetricName.create(base, "key2", "value2").safeTags())
+                .containsExactly(entry("key1", "value1"), entry("key2", "value2"), entry("key3", "value3"));
+        assertThat(RealMetricName.create(base, "key0", "value0").safeTags().firstKey()).isEqualTo("key0");
+        assertThat(RealMetricName.create(base, "key4", "value4").safeTags().lastKey()).isEqualTo("key4");
+        assertThatThrownBy(() -> RealMetricName.create(base, "key1", "other"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void intern() {
+        MetricName one = MetricName.builder()
+                .safeName(copy("test"))
+                .putSafeTags(copy("key"), copy("value"))
+                .build();
+        MetricName two = ImmutableMetricName.copyOf(MetricName.builder()
+                .safeName(copy("test"))
+                .putSafeTags(copy("key"), copy("value"))
+                .build());
+
+        MetricName interned = MetricName.intern(one);
+        assertThat(interned).isEqualTo(one).hasSameHashCodeAs(one);
+        assertThat(MetricName.intern(two)).isSameAs(interned);
+        assertThat(MetricName.intern(interned)).isSameAs(interned);
+        assertThat(MetricName.intern(MetricName.builder().safeName("test").build()))
+                .isNotEqualTo(interned);
+
+        MetricName other = MetricName.intern(MetricName.builder()
+                .safeName(copy("other"))
+                .putSafeTags(copy("key"), copy("value"))
+                .build());
+        assertThat(other.safeTags().firstKey()).isSameAs(interned.safeTags().firstKey());
+        assertThat(other.safeTags().get("key")).isSameAs(interned.safeTags().get("key"));
+    }
+
+    /** Returns an equal string which is not the same instance. */
+    private static String copy(String value) {
+        return new StringBuilder(value).toString();
+    }
+
+    private static Map.Entry<String, String> entry(String key, String value) {
+        return Maps.immutableEntry(key, value);
+    }
 }
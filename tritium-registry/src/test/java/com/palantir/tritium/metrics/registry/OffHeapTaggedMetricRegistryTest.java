@@ -0,0 +1,111 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class OffHeapTaggedMetricRegistryTest {
+
+    private final OffHeapTaggedMetricRegistry registry = new OffHeapTaggedMetricRegistry();
+
+    @Test
+    void testHistogram() {
+        Histogram histogram = registry.histogram(name("histogram"));
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.update(value * 1000);
+        }
+        Snapshot snapshot = histogram.getSnapshot();
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(snapshot.size()).isEqualTo(10_000);
+        assertThat(snapshot.getMin()).isEqualTo(1000);
+        assertThat(snapshot.getMax()).isEqualTo(10_000_000);
+        assertThat(snapshot.getMean()).isEqualTo(5_000_500.0);
+        assertThat(snapshot.get99thPercentile()).isCloseTo(9_900_000, within(9_900_000 * 0.016));
+    }
+
+    @Test
+    void testConcurrentTimerUpdates() throws Exception {
+        Timer timer = registry.timer(name("timer"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int value = 1; value <= 10_000; value++) {
+                        timer.update(value, TimeUnit.NANOSECONDS);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Snapshot snapshot = timer.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(80_000);
+        assertThat(snapshot.getMin()).isOne();
+        assertThat(snapshot.getMax()).isEqualTo(10_000);
+        assertThat(snapshot.getMean()).isEqualTo(5_000.5);
+    }
+
+    @Test
+    void testRemoveFreesMemoryForReuse() {
+        for (int i = 0; i < 64; i++) {
+            registry.timer(name("timer" + i)).update(1, TimeUnit.SECONDS);
+        }
+        long allocated = registry.allocatedOffHeapBytes();
+        assertThat(allocated).isEqualTo(64L * OffHeapHistogramReservoir.SLAB_LONGS * Long.BYTES);
+
+        Timer removed = registry.timer(name("timer0"));
+        assertThat(registry.remove(name("timer0"))).containsSame(removed);
+        removed.update(1, TimeUnit.SECONDS);
+        assertThat(removed.getSnapshot().size()).isZero();
+
+        // the freed slab is reused, and reset, rather than allocating another chunk
+        Histogram reused = registry.histogram(name("histogram"));
+        assertThat(registry.allocatedOffHeapBytes()).isEqualTo(allocated);
+        assertThat(reused.getSnapshot().size()).isZero();
+        reused.update(5);
+        assertThat(reused.getSnapshot().getValues()).containsExactly(5);
+        assertThat(registry.timer(name("timer1")).getSnapshot().size()).isOne();
+    }
+
+    @Test
+    void testCustomMetricsAreNotAffectedByRemoval() {
+        Timer custom = registry.timer(name("custom"), Timer::new);
+        registry.remove(name("custom"));
+        custom.update(1, TimeUnit.SECONDS);
+        assertThat(custom.getSnapshot().size()).isOne();
+    }
+
+    private static MetricName name(String safeName) {
+        return MetricName.builder().safeName(safeName).build();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class QuantileSketchReservoirTest {
+
+    @Test
+    void testConcurrentUpdatesAreMerged() throws Exception {
+        QuantileSketchReservoir reservoir = new QuantileSketchReservoir(0.01, 2048, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int value = 1; value <= 10_000; value++) {
+                        reservoir.update(value);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        QuantileSketch sketch = reservoir.getSnapshot();
+        assertThat(sketch.count()).isEqualTo(80_000);
+        assertThat(reservoir.size()).isEqualTo(80_000);
+        assertThat(sketch.getMean()).isEqualTo(5_000.5);
+        assertThat(sketch.getMedian()).isBetween(4_950.0, 5_050.0);
+    }
+
+    @Test
+    void testTimerSnapshotsAreMergeableSketches() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withReservoirs(QuantileSketchReservoir.supplier(0.01, 1024))
+                .build();
+        Timer first = registry.timer(MetricName.builder().safeName("first").build());
+        Timer second = registry.timer(MetricName.builder().safeName("second").build());
+        first.update(10, TimeUnit.MILLISECONDS);
+        second.update(20, TimeUnit.MILLISECONDS);
+
+        Snapshot snapshot = first.getSnapshot();
+        assertThat(snapshot).isInstanceOf(QuantileSketch.class);
+        QuantileSketch merged = ((QuantileSketch) snapshot).merge((QuantileSketch) second.getSnapshot());
+        assertThat(merged.count()).isEqualTo(2);
+        assertThat(merged.getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(merged.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(merged.maxBins()).isEqualTo(1024);
+    }
+
+    @Test
+    void testInvalidParameters() {
+        assertThatThrownBy(() -> new QuantileSketchReservoir(0, 2048)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QuantileSketchReservoir.supplier(0.01, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
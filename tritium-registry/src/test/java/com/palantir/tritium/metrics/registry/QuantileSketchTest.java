@@ -0,0 +1,143 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+final class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999};
+
+    @Test
+    void testRelativeAccuracy() {
+        long[] values = logNormal(new Random(0), 100_000);
+        QuantileSketch sketch = sketch(0.01, 2048, values);
+        Arrays.sort(values);
+        for (double quantile : QUANTILES) {
+            long expected = values[(int) (quantile * (values.length - 1))];
+            assertThat(sketch.getValue(quantile)).isCloseTo(expected, within(expected * 0.01 + 1));
+        }
+        assertThat(sketch.getMin()).isEqualTo(values[0]);
+        assertThat(sketch.getMax()).isEqualTo(values[values.length - 1]);
+        assertThat(sketch.count()).isEqualTo(100_000);
+        assertThat(sketch.getValues()).hasSize(100_000).isSorted();
+    }
+
+    @Test
+    void testMergeMatchesCombinedSketch() {
+        Random random = new Random(1);
+        long[] first = logNormal(random, 10_000);
+        long[] second = logNormal(random, 20_000);
+        long[] combined = new long[first.length + second.length];
+        System.arraycopy(first, 0, combined, 0, first.length);
+        System.arraycopy(second, 0, combined, first.length, second.length);
+
+        QuantileSketch merged = sketch(0.02, 2048, first).merge(sketch(0.02, 2048, second));
+        QuantileSketch expected = sketch(0.02, 2048, combined);
+        assertThat(merged.bins()).isEqualTo(expected.bins());
+        assertThat(merged.count()).isEqualTo(expected.count());
+        assertThat(merged.sum()).isEqualTo(expected.sum());
+        assertThat(merged.getMin()).isEqualTo(expected.getMin());
+        assertThat(merged.getMax()).isEqualTo(expected.getMax());
+        for (double quantile : QUANTILES) {
+            assertThat(merged.getValue(quantile)).isEqualTo(expected.getValue(quantile));
+        }
+    }
+
+    @Test
+    void testMergeEmpty() {
+        QuantileSketch empty = sketch(0.01, 2048);
+        QuantileSketch sketch = sketch(0.01, 2048, 5, 10);
+        assertThat(empty.merge(sketch).getValues()).containsExactly(5, 10);
+        assertThat(sketch.merge(empty).getValues()).containsExactly(5, 10);
+        assertThat(empty.merge(empty).size()).isZero();
+        assertThat(empty.getMin()).isZero();
+        assertThat(empty.getMedian()).isZero();
+    }
+
+    @Test
+    void testMergeRequiresSameAccuracy() {
+        assertThatThrownBy(() -> sketch(0.01, 2048).merge(sketch(0.02, 2048)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testMaxBinsCollapsesLowestBins() {
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1L << (i % 40);
+        }
+        QuantileSketch sketch = sketch(0.01, 100, values);
+        assertThat(sketch.bins()).hasSizeLessThanOrEqualTo(100);
+        assertThat(sketch.bins().lastKey() - sketch.bins().firstKey()).isLessThan(100);
+        assertThat(sketch.count()).isEqualTo(1000);
+        // the highest quantiles retain their accuracy
+        assertThat(sketch.getValue(0.99)).isCloseTo(1L << 39, within((1L << 39) * 0.01));
+    }
+
+    @Test
+    void testZeroAndNegativeValues() {
+        QuantileSketch sketch = sketch(0.01, 2048, -5, 0, 0, 100);
+        assertThat(sketch.zeroCount()).isEqualTo(3);
+        assertThat(sketch.getMin()).isEqualTo(-5);
+        assertThat(sketch.getMean()).isEqualTo(23.75);
+        assertThat(sketch.getValue(0.5)).isZero();
+        assertThat(sketch.getMax()).isEqualTo(100);
+    }
+
+    @Test
+    void testSerializedRoundTrip() {
+        QuantileSketch sketch = sketch(0.01, 2048, 3, 30, 300, 3000);
+        QuantileSketch copy = QuantileSketch.of(
+                sketch.relativeAccuracy(),
+                sketch.maxBins(),
+                sketch.zeroCount(),
+                sketch.bins(),
+                sketch.sum(),
+                sketch.getMin(),
+                sketch.getMax());
+        assertThat(copy.bins()).isEqualTo(sketch.bins());
+        assertThat(copy.getValues()).isEqualTo(sketch.getValues());
+        assertThatThrownBy(() -> QuantileSketch.of(0.01, 2048, 0, ImmutableMap.of(1, -1L), 0, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QuantileSketch.of(1.0, 2048, 0, ImmutableMap.of(), 0, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static QuantileSketch sketch(double relativeAccuracy, int maxBins, long... values) {
+        QuantileSketchReservoir reservoir = new QuantileSketchReservoir(relativeAccuracy, maxBins, 1);
+        for (long value : values) {
+            reservoir.update(value);
+        }
+        return reservoir.getSnapshot();
+    }
+
+    private static long[] logNormal(Random random, int size) {
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = (long) (1_000_000 * Math.exp(random.nextGaussian()));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.LongRange;
+import org.junit.jupiter.api.Test;
+
+final class RotatingHistogramReservoirTest {
+
+    private final AtomicLong tick = new AtomicLong();
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    };
+    private final RotatingHistogramReservoir reservoir =
+            new RotatingHistogramReservoir(30, TimeUnit.SECONDS, 3, clock);
+
+    @Property
+    void binContainsValue(@ForAll @LongRange(min = 0, max = Long.MAX_VALUE) long value) {
+        int bin = LogLinearBins.bin(value);
+        assertThat(LogLinearBins.lowestValue(bin)).isLessThanOrEqualTo(value);
+        assertThat(LogLinearBins.highestValue(bin)).isGreaterThanOrEqualTo(value);
+        // bins are at most ~3% wide, so reporting the midpoint is within ~1.6%
+        assertThat(LogLinearBins.highestValue(bin) - LogLinearBins.lowestValue(bin)).isLessThanOrEqualTo(value / 32);
+    }
+
+    @Test
+    void testEmpty() {
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isZero();
+        assertThat(snapshot.getMin()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+        assertThat(snapshot.getMean()).isZero();
+        assertThat(snapshot.getMedian()).isZero();
+        assertThat(snapshot.getValues()).isEmpty();
+    }
+
+    @Test
+    void testQuantileAccuracy() {
+        for (long value = 1; value <= 100_000; value++) {
+            reservoir.update(value * 1000);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertThat(snapshot.size()).isEqualTo(100_000);
+        assertThat(snapshot.getMin()).isEqualTo(1000);
+        assertThat(snapshot.getMax()).isEqualTo(100_000_000);
+        assertThat(snapshot.getMean()).isEqualTo(50_000_500.0);
+        assertThat(snapshot.getMedian()).isCloseTo(50_000_000, within(50_000_000 * 0.016));
+        assertThat(snapshot.get95thPercentile()).isCloseTo(95_000_000, within(95_000_000 * 0.016));
+        assertThat(snapshot.get99thPercentile()).isCloseTo(99_000_000, within(99_000_000 * 0.016));
+        assertThat(snapshot.get999thPercentile()).isCloseTo(99_900_000, within(99_900_000 * 0.016));
+        assertThat(snapshot.getValue(1.0)).isEqualTo(100_000_000);
+        assertThat(snapshot.getStdDev()).isCloseTo(28_867_513, within(28_867_513 * 0.016));
+        assertThat(snapshot.getValues()).hasSize(100_000).isSorted();
+    }
+
+    @Test
+    void testBucketsRotateOutOfWindow() {
+        reservoir.update(1);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        reservoir.update(2);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        reservoir.update(3);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(1, 2, 3);
+
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(2, 3);
+        reservoir.update(4);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(2, 3, 4);
+
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(25));
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(4);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(reservoir.size()).isZero();
+    }
+
+    @Test
+    void testNegativeTicks() {
+        tick.set(-TimeUnit.SECONDS.toNanos(15));
+        reservoir.update(7);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(7);
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThatThrownBy(() -> new RotatingHistogramReservoir(30, TimeUnit.SECONDS, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SlidingWindowTaggedMetricRegistry.withRotatingHistograms(3, TimeUnit.NANOSECONDS, 6))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
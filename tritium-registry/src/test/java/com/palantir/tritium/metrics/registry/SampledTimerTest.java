@@ -0,0 +1,136 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+final class SampledTimerTest {
+
+    private static final int UPDATES = 200_000;
+
+    private final AtomicLong tick = new AtomicLong();
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    };
+
+    @Test
+    void testSampleRateAccuracy() {
+        Timer full = new Timer(new UniformReservoir(UPDATES));
+        Timer sampled = SampledTimer.sampleRate(0.1, () -> new UniformReservoir(UPDATES))
+                .get();
+        Random random = new Random(0);
+        for (int i = 0; i < UPDATES; i++) {
+            // log-normal latencies with a median of 1ms
+            long nanos = (long) (1_000_000 * Math.exp(random.nextGaussian()));
+            full.update(nanos, TimeUnit.NANOSECONDS);
+            sampled.update(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        assertThat(sampled.getCount()).isEqualTo(UPDATES);
+        assertThat(((SampledTimer) sampled).getSampledCount()).isCloseTo(UPDATES / 10, within((long) UPDATES / 100));
+        Snapshot expected = full.getSnapshot();
+        Snapshot actual = sampled.getSnapshot();
+        // tolerances are several standard errors of the 20K sampled durations
+        assertThat(actual.getMean()).isCloseTo(expected.getMean(), within(expected.getMean() * 0.1));
+        assertThat(actual.getMedian()).isCloseTo(expected.getMedian(), within(expected.getMedian() * 0.05));
+        assertThat(actual.get95thPercentile())
+                .isCloseTo(expected.get95thPercentile(), within(expected.get95thPercentile() * 0.075));
+        assertThat(actual.get99thPercentile())
+                .isCloseTo(expected.get99thPercentile(), within(expected.get99thPercentile() * 0.1));
+        assertThat(sampled.getMeanRate()).isCloseTo(full.getMeanRate(), within(full.getMeanRate() * 0.1));
+    }
+
+    @Test
+    void testSampleInterval() {
+        SampledTimer timer = new SampledTimer(
+                new ExponentiallyDecayingReservoir(),
+                new SampledTimer.IntervalSampler(TimeUnit.MILLISECONDS.toNanos(10), 1, tick.get()),
+                clock);
+        for (int i = 0; i < 100; i++) {
+            timer.update(i, TimeUnit.MILLISECONDS);
+            tick.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertThat(timer.getCount()).isEqualTo(100);
+        assertThat(timer.getSampledCount()).isEqualTo(10);
+        assertThat(timer.getSnapshot().getValues())
+                .containsExactly(
+                        LongStream.range(0, 10).map(i -> i * 10_000_000).toArray());
+    }
+
+    @Test
+    void testRatesFollowLoad() {
+        SampledTimer timer = new SampledTimer(
+                new ExponentiallyDecayingReservoir(),
+                new SampledTimer.IntervalSampler(TimeUnit.SECONDS.toNanos(1), 1, tick.get()),
+                clock);
+        // ten minutes at 100 updates per second, then ten minutes at 10 updates per second
+        updateEverySecond(timer, 100, 600);
+        assertThat(timer.getOneMinuteRate()).isCloseTo(100, within(1.0));
+        updateEverySecond(timer, 10, 600);
+        assertThat(timer.getOneMinuteRate()).isCloseTo(10, within(1.0));
+        assertThat(timer.getFifteenMinuteRate()).isBetween(10.0, 100.0);
+        assertThat(timer.getMeanRate()).isCloseTo(55, within(1.0));
+        assertThat(timer.getSampledCount()).isEqualTo(1_200);
+    }
+
+    @Test
+    void testTimeCountsEveryInvocation() throws Exception {
+        Timer timer = SampledTimer.sampleInterval(Duration.ofHours(1), ExponentiallyDecayingReservoir::new)
+                .get();
+        assertThat(timer.time(() -> "result")).isEqualTo("result");
+        timer.time(() -> {});
+        timer.time().stop();
+        assertThat(timer.getCount()).isEqualTo(3);
+        assertThat(((SampledTimer) timer).getSampledCount()).isOne();
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThatThrownBy(() -> SampledTimer.sampleRate(0, ExponentiallyDecayingReservoir::new))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SampledTimer.sampleRate(1.5, ExponentiallyDecayingReservoir::new))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SampledTimer.sampleInterval(Duration.ZERO, ExponentiallyDecayingReservoir::new))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void updateEverySecond(Timer timer, int updatesPerSecond, int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            for (int j = 0; j < updatesPerSecond; j++) {
+                timer.update(1, TimeUnit.MILLISECONDS);
+            }
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
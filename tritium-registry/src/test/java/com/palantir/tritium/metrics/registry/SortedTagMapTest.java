@@ -0,0 +1,76 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableSortedMap;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import org.junit.jupiter.api.Test;
+
+final class SortedTagMapTest {
+
+    private final SortedMap<String, String> expected =
+            ImmutableSortedMap.of("a", "1", "b", "2", "c", "3", "d", "4");
+    private final SortedTagMap map = new SortedTagMap(new String[] {"a", "1", "b", "2", "c", "3", "d", "4"});
+
+    @Test
+    void testMatchesSortedMap() {
+        assertThat(map).isEqualTo(expected).hasSameHashCodeAs(expected).hasToString(expected.toString());
+        assertThat(expected).isEqualTo(map);
+        assertThat(map.keySet()).containsExactlyElementsOf(expected.keySet());
+        assertThat(map.values()).containsExactlyElementsOf(expected.values());
+        assertThat(map.firstKey()).isEqualTo("a");
+        assertThat(map.lastKey()).isEqualTo("d");
+        assertThat(map.get("c")).isEqualTo("3");
+        assertThat(map.get("e")).isNull();
+        assertThat(map.get(1)).isNull();
+        assertThat(map.containsKey("a")).isTrue();
+        assertThat(map.containsKey("0")).isFalse();
+    }
+
+    @Test
+    void testRanges() {
+        assertThat(map.subMap("b", "d")).isEqualTo(expected.subMap("b", "d"));
+        assertThat(map.subMap("bb", "z")).isEqualTo(expected.subMap("bb", "z"));
+        assertThat(map.headMap("c")).isEqualTo(expected.headMap("c"));
+        assertThat(map.tailMap("c")).isEqualTo(expected.tailMap("c"));
+        assertThat(map.tailMap("b").headMap("d")).isEqualTo(expected.subMap("b", "d"));
+        assertThat(map.headMap("c").tailMap("a").lastKey()).isEqualTo("b");
+        assertThat(new SortedTagMap(((SortedTagMap) map.tailMap("c")).tags())).isEqualTo(expected.tailMap("c"));
+        assertThatThrownBy(() -> map.subMap("d", "b")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testEmpty() {
+        SortedMap<String, String> empty = map.subMap("b", "b");
+        assertThat(empty).isEmpty();
+        assertThat(empty).isEqualTo(ImmutableSortedMap.of());
+        assertThat(empty.hashCode()).isZero();
+        assertThatThrownBy(empty::firstKey).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(empty::lastKey).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void testImmutable() {
+        assertThatThrownBy(() -> map.put("e", "5")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> map.remove("a")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(map::clear).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.EWMA;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class StripedMeterTest {
+
+    private final AtomicLong tick = new AtomicLong();
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    };
+
+    @Test
+    void testRatesWhenReadEachInterval() {
+        StripedMeter meter = new StripedMeter(clock);
+        EWMA m1Rate = EWMA.oneMinuteEWMA();
+        EWMA m15Rate = EWMA.fifteenMinuteEWMA();
+        for (int interval = 0; interval < 120; interval++) {
+            // 10 per second for five minutes, then 2 per second
+            long marks = interval < 60 ? 50 : 10;
+            for (int i = 0; i < marks; i++) {
+                meter.mark();
+            }
+            m1Rate.update(marks);
+            m15Rate.update(marks);
+            m1Rate.tick();
+            m15Rate.tick();
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(5));
+            assertThat(meter.getOneMinuteRate()).isCloseTo(m1Rate.getRate(TimeUnit.SECONDS), within(1e-9));
+        }
+        assertThat(meter.getOneMinuteRate()).isCloseTo(2.0, within(0.1));
+        assertThat(meter.getFifteenMinuteRate()).isCloseTo(m15Rate.getRate(TimeUnit.SECONDS), within(1e-9));
+        assertThat(meter.getCount()).isEqualTo(60 * 50 + 60 * 10);
+        assertThat(meter.getMeanRate()).isCloseTo(6.0, within(1e-9));
+    }
+
+    @Test
+    void testSpreadsCountAcrossUnreadIntervals() {
+        StripedMeter meter = new StripedMeter(clock);
+        for (int interval = 0; interval < 24; interval++) {
+            meter.mark(50);
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        }
+        // a steady rate is reported even though the rates were not read while marking
+        assertThat(meter.getOneMinuteRate()).isCloseTo(10.0, within(1e-9));
+        assertThat(meter.getFiveMinuteRate()).isCloseTo(10.0, within(1e-9));
+        assertThat(meter.getFifteenMinuteRate()).isCloseTo(10.0, within(1e-9));
+
+        // marks are not counted until their interval has elapsed
+        meter.mark(1000);
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(meter.getOneMinuteRate()).isCloseTo(10.0, within(1e-9));
+    }
+
+    @Test
+    void testConcurrentMarks() throws InterruptedException {
+        StripedMeter meter = new StripedMeter();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    meter.mark();
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(meter.getCount()).isEqualTo(800_000);
+    }
+
+    @Test
+    void testRegistryOptIn() {
+        MetricName name = MetricName.builder().safeName("meter").build();
+        assertThat(new DefaultTaggedMetricRegistry().meter(name)).isNotInstanceOf(StripedMeter.class);
+        assertThat(DefaultTaggedMetricRegistry.builder()
+                        .withStripedMeters()
+                        .build()
+                        .meter(name))
+                .isInstanceOf(StripedMeter.class);
+    }
+}
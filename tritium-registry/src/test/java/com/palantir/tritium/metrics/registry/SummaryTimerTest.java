@@ -0,0 +1,134 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class SummaryTimerTest {
+
+    private final AtomicLong tick = new AtomicLong();
+    private final SummaryTimer timer = new SummaryTimer(new Clock() {
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    });
+
+    @Test
+    void testEmpty() {
+        Snapshot snapshot = timer.getSnapshot();
+        assertThat(timer.getCount()).isZero();
+        assertThat(timer.getMeanRate()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+        assertThat(snapshot.getMin()).isZero();
+        assertThat(snapshot.getMean()).isZero();
+        assertThat(snapshot.get99thPercentile()).isZero();
+        assertThat(snapshot.getValues()).isEmpty();
+    }
+
+    @Test
+    void testCountSumAndIntervals() {
+        timer.update(10, TimeUnit.MILLISECONDS);
+        timer.update(30, TimeUnit.MILLISECONDS);
+        timer.update(-1, TimeUnit.MILLISECONDS);
+        assertThat(timer.getCount()).isEqualTo(2);
+        assertThat(timer.getSumNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+
+        Snapshot snapshot = timer.getSnapshot();
+        assertThat(snapshot.getMean()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(snapshot.getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(snapshot.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(snapshot.getMedian()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+
+        // snapshots within an interval do not reset anything
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+
+        // snapshots cover the current and previous intervals
+        tick.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        timer.getSnapshot();
+        timer.update(5, TimeUnit.MILLISECONDS);
+        snapshot = timer.getSnapshot();
+        assertThat(snapshot.getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(snapshot.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(snapshot.getMean()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(15));
+
+        tick.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        snapshot = timer.getSnapshot();
+        assertThat(snapshot.getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(snapshot.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(snapshot.getMean()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+
+        tick.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        snapshot = timer.getSnapshot();
+        assertThat(snapshot.getMin()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+        assertThat(snapshot.getMean()).isZero();
+
+        // while the count and total are cumulative
+        assertThat(timer.getCount()).isEqualTo(3);
+        assertThat(timer.getSumNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(45));
+    }
+
+    @Test
+    void testTimeAndRates() throws Exception {
+        assertThat(timer.time(() -> {
+                    tick.addAndGet(TimeUnit.SECONDS.toNanos(1));
+                    return "result";
+                }))
+                .isEqualTo("result");
+        timer.time(() -> tick.addAndGet(TimeUnit.SECONDS.toNanos(1)));
+        try (Timer.Context _context = timer.time()) {
+            tick.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        }
+        assertThat(timer.getCount()).isEqualTo(3);
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+        assertThat(timer.getMeanRate()).isEqualTo(0.75);
+
+        // updates read before the first five second tick are rated over that tick
+        assertThat(timer.getOneMinuteRate()).isZero();
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThat(timer.getOneMinuteRate()).isEqualTo(0.6, within(1e-9));
+        assertThat(timer.getFiveMinuteRate()).isEqualTo(0.6, within(1e-9));
+
+        // and decay like the rates of a meter
+        tick.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertThat(timer.getOneMinuteRate()).isEqualTo(0.6 * Math.exp(-5.0 / 60), within(1e-9));
+        assertThat(timer.getFifteenMinuteRate()).isEqualTo(0.6 * Math.exp(-5.0 / 900), within(1e-9));
+    }
+
+    @Test
+    void testSelectedByMetricName() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withSummaryTimers(metricName -> metricName.safeTags().containsKey("endpoint"))
+                .build();
+        assertThat(registry.timer(MetricName.builder()
+                        .safeName("service")
+                        .putSafeTags("endpoint", "get")
+                        .build()))
+                .isInstanceOf(SummaryTimer.class);
+        assertThat(registry.timer(MetricName.builder().safeName("other").build()))
+                .isNotInstanceOf(SummaryTimer.class);
+    }
+}
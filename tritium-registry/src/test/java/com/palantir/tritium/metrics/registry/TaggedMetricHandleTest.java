@@ -0,0 +1,116 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.metrics.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+final class TaggedMetricHandleTest {
+
+    private static final MetricName TEMPLATE =
+            MetricName.builder().safeName("requests").putSafeTags("service", "foo").build();
+
+    private final DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+
+    @Test
+    void testResolvesRegisteredMetrics() {
+        TaggedMetricHandle<Timer> handle = registry.timerHandle(TEMPLATE, "status", "method");
+        Timer timer = handle.tagged("200", "GET");
+
+        assertThat(timer).isSameAs(registry.timer(name("method", "GET", "status", "200")));
+        assertThat(handle.tagged("200", "GET")).isSameAs(timer);
+        assertThat(handle.tagged(new String[] {"200", "GET"})).isSameAs(timer);
+        assertThat(handle.tagged("500", "GET")).isNotSameAs(timer);
+        assertThat(registry.getMetrics()).hasSize(2);
+    }
+
+    @Test
+    void testArities() {
+        assertThat(registry.counterHandle(TEMPLATE).tagged()).isSameAs(registry.counter(TEMPLATE));
+        assertThat(registry.meterHandle(TEMPLATE, "a").tagged("1")).isSameAs(registry.meter(name("a", "1")));
+        assertThat(registry.timerHandle(TEMPLATE, "a", "b", "c").tagged("1", "2", "3"))
+                .isSameAs(registry.timer(name("a", "1", "b", "2", "c", "3")));
+        assertThat(registry.histogramHandle(TEMPLATE, "a", "b", "c", "d").tagged("1", "2", "3", "4"))
+                .isSameAs(registry.histogram(name("a", "1", "b", "2", "c", "3", "d", "4")));
+    }
+
+    @Test
+    void testReresolvesRemovedMetrics() {
+        TaggedMetricHandle<Meter> handle = registry.meterHandle(TEMPLATE, "method");
+        Meter meter = handle.tagged("GET");
+        assertThat(registry.remove(name("method", "GET"))).contains(meter);
+
+        Meter registered = handle.tagged("GET");
+        assertThat(registered).isNotSameAs(meter).isSameAs(registry.meter(name("method", "GET")));
+        assertThat(handle.tagged("GET")).isSameAs(registered);
+    }
+
+    @Test
+    void testReresolvesEvictedMetrics() {
+        TaggedMetricHandle<Counter> handle = registry.counterHandle(TEMPLATE, "method");
+        Counter counter = handle.tagged("GET");
+        registry.evictIdleMetrics(Duration.ZERO, 0);
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 1)).isOne();
+
+        Counter registered = handle.tagged("GET");
+        registered.inc();
+        assertThat(registered).isNotSameAs(counter);
+        assertThat(registry.counter(name("method", "GET")).getCount()).isOne();
+    }
+
+    @Test
+    void testQueriesRegistriesWithoutRemovalTracking() {
+        TaggedMetricRegistry untracked = mock(TaggedMetricRegistry.class);
+        when(untracked.timer(name("method", "GET"))).thenReturn(new Timer());
+        TaggedMetricHandle<Timer> handle = new TaggedMetricHandle<>(untracked, untracked::timer, TEMPLATE, "method");
+
+        handle.tagged("GET");
+        handle.tagged("GET");
+        verify(untracked, times(2)).timer(name("method", "GET"));
+    }
+
+    @Test
+    void testInvalidUsage() {
+        assertThatThrownBy(() -> registry.timerHandle(TEMPLATE, "service"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.timerHandle(TEMPLATE, "a", "a")).isInstanceOf(IllegalArgumentException.class);
+
+        TaggedMetricHandle<Timer> handle = registry.timerHandle(TEMPLATE, "a", "b");
+        assertThatThrownBy(() -> handle.tagged("1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> handle.tagged("1", "2", "3")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> handle.tagged("1", null)).isInstanceOf(NullPointerException.class);
+        assertThat(registry.getMetrics()).isEmpty();
+    }
+
+    private static MetricName name(String... tags) {
+        MetricName.Builder builder = MetricName.builder().from(TEMPLATE);
+        for (int i = 0; i < tags.length; i += 2) {
+            builder.putSafeTags(tags[i], tags[i + 1]);
+        }
+        return builder.build();
+    }
+}
@@ -30,8 +30,17 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.Timer;
 import com.palantir.tritium.registry.test.TestTaggedMetricRegistries;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.Mockito;
@@ -273,6 +282,23 @@ final class TaggedMetricRegistryTest {
         assertThat(registry.getMetrics()).isEmpty();
     }
 
+    @ParameterizedTest
+    @MethodSource(TestTaggedMetricRegistries.REGISTRY_SUPPLIERS)
+    void testAddedMetricNamesAreReused(Supplier<TaggedMetricRegistry> registrySupplier) {
+        TaggedMetricRegistry registry = registrySupplier.get();
+        TaggedMetricRegistry child = registrySupplier.get();
+        child.meter(MetricName.builder().safeName("name").build());
+        registry.addMetrics("tagKey", "tagValue", child);
+
+        MetricName first = names(registry).get(0);
+        assertThat(names(registry)).hasSize(1).first().isSameAs(first);
+        assertThat(registry.getMetrics().keySet()).hasSize(1).first().isSameAs(first);
+
+        registry.removeMetrics("tagKey", "tagValue");
+        registry.addMetrics("tagKey", "tagValue", child);
+        assertThat(names(registry)).hasSize(1).first().isEqualTo(first).isNotSameAs(first);
+    }
+
     @ParameterizedTest
     @MethodSource(TestTaggedMetricRegistries.REGISTRIES)
     void testGetMetrics(TaggedMetricRegistry registry) {
@@ -301,6 +327,186 @@ final class TaggedMetricRegistryTest {
         assertThat(counter.getCount()).isOne();
     }
 
+    @Test
+    void testCardinalityLimit() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withCardinalityLimits(safeName -> safeName.equals("limited") ? 2 : 3)
+                .build();
+        Meter first = registry.meter(cause("limited", "a"));
+        Meter second = registry.meter(cause("limited", "b"));
+        Meter overflow = registry.meter(cause("limited", "c"));
+        assertThat(overflow).isNotSameAs(first).isNotSameAs(second).isSameAs(registry.meter(cause("limited", "d")));
+        assertThat(registry.meter(cause("limited", "a"))).isSameAs(first);
+        assertThat(registry.getMetrics())
+                .containsEntry(cause("limited", AbstractTaggedMetricRegistry.OVERFLOW_TAG_VALUE), overflow)
+                .doesNotContainKeys(cause("limited", "c"), cause("limited", "d"));
+
+        // dropped series are counted once, however often they are requested
+        assertThat(registry.meter(cause("limited", "c"))).isSameAs(overflow);
+        assertThat(registry.meter(cause("limited", "d"))).isSameAs(overflow);
+        Counter dropped = registry.counter(MetricName.builder()
+                .safeName(AbstractTaggedMetricRegistry.DROPPED_SERIES)
+                .putSafeTags("metric-name", "limited")
+                .build());
+        assertThat(dropped.getCount()).isEqualTo(2);
+
+        // limits are per name and only count series of the name
+        registry.timer(cause("other", "a"));
+        registry.timer(cause("other", "b"));
+        assertThat(registry.timer(cause("other", "c"))).isNotSameAs(registry.timer(cause("other", "d")));
+
+        // removing a series frees its slot
+        registry.remove(cause("limited", "a"));
+        Meter third = registry.meter(cause("limited", "c"));
+        assertThat(third).isNotSameAs(overflow).isSameAs(registry.meter(cause("limited", "c")));
+        assertThat(registry.meter(cause("limited", "e"))).isSameAs(overflow);
+        assertThat(dropped.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testBuilderCombinesOptions() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withSummaryTimers(_metricName -> true)
+                .withCardinalityLimits(_safeName -> 1)
+                .build();
+        Timer first = registry.timer(cause("timer", "a"));
+        assertThat(first).isInstanceOf(SummaryTimer.class);
+        assertThat(registry.timer(cause("timer", "b")))
+                .isInstanceOf(SummaryTimer.class)
+                .isNotSameAs(first)
+                .isSameAs(registry.timer(cause("timer", "c")));
+    }
+
+    @Test
+    void testCardinalityLimitIgnoresGauges() {
+        TaggedMetricRegistry registry = DefaultTaggedMetricRegistry.builder()
+                .withCardinalityLimits(_safeName -> 1)
+                .build();
+        Gauge<Integer> first = registry.gauge(cause("gauge", "a"), intGauge(1));
+        Gauge<Integer> second = registry.gauge(cause("gauge", "b"), intGauge(2));
+        assertThat(registry.getMetrics())
+                .containsEntry(cause("gauge", "a"), first)
+                .containsEntry(cause("gauge", "b"), second);
+    }
+
+    @Test
+    void testEvictIdleMetrics() {
+        DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        Counter counter = registry.counter(METRIC_1);
+        Meter meter = registry.meter(METRIC_2);
+        Gauge<Integer> gauge = registry.gauge(cause("gauge", "a"), intGauge(1));
+        Duration timeout = Duration.ofMinutes(10);
+
+        assertThat(registry.evictIdleMetrics(timeout, 0)).isZero();
+        counter.inc();
+        assertThat(registry.evictIdleMetrics(timeout, timeout.toNanos() - 1)).isZero();
+        long epoch = registry.removalEpoch();
+        assertThat(registry.evictIdleMetrics(timeout, timeout.toNanos())).isOne();
+        assertThat(registry.removalEpoch()).isGreaterThan(epoch);
+        assertThat(registry.getMetrics())
+                .containsEntry(METRIC_1, counter)
+                .containsEntry(cause("gauge", "a"), gauge)
+                .doesNotContainKey(METRIC_2);
+
+        // evicted metrics are recreated on demand
+        assertThat(registry.meter(METRIC_2)).isNotSameAs(meter);
+        assertThat(registry.evictIdleMetrics(timeout, 2 * timeout.toNanos())).isZero();
+        assertThat(registry.getMetrics()).containsOnlyKeys(METRIC_1, METRIC_2, cause("gauge", "a"));
+    }
+
+    @Test
+    void testEvictsCountersOnlyAtZero() {
+        DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        Counter running = registry.counter(METRIC_1);
+        Counter idle = registry.counter(METRIC_2);
+        running.inc(3);
+
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 0)).isZero();
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 1)).isOne();
+        assertThat(registry.getMetrics()).containsOnlyKeys(METRIC_1);
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 2)).isZero();
+        assertThat(registry.counter(METRIC_1)).isSameAs(running);
+        assertThat(running.getCount()).isEqualTo(3);
+        assertThat(registry.counter(METRIC_2)).isNotSameAs(idle);
+
+        running.dec(3);
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 3)).isZero();
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 4)).isEqualTo(2);
+        assertThat(registry.getMetrics()).isEmpty();
+    }
+
+    @Test
+    void testEvictionRestoresMetricUpdatedDuringEviction() {
+        DefaultTaggedMetricRegistry registry = new DefaultTaggedMetricRegistry();
+        AtomicInteger reads = new AtomicInteger();
+        Counter counter = registry.counter(METRIC_1, () -> new Counter() {
+            @Override
+            public long getCount() {
+                if (reads.incrementAndGet() == 3) {
+                    // simulate an update by a caller holding the counter, between the eviction and its recheck
+                    inc();
+                }
+                return super.getCount();
+            }
+        });
+
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 0)).isZero();
+        long epoch = registry.removalEpoch();
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 1)).isZero();
+        assertThat(reads).hasValue(3);
+        assertThat(registry.removalEpoch()).isGreaterThan(epoch);
+        assertThat(registry.counter(METRIC_1)).isSameAs(counter);
+        assertThat(counter.getCount()).isOne();
+
+        // idle once the count has returned to zero and the change has been observed
+        counter.dec();
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 2)).isZero();
+        assertThat(registry.evictIdleMetrics(Duration.ZERO, 3)).isOne();
+    }
+
+    @Test
+    void testEvictionRacingUpdates() throws Exception {
+        List<Meter> evicted = new CopyOnWriteArrayList<>();
+        AbstractTaggedMetricRegistry registry = new AbstractTaggedMetricRegistry(ExponentiallyDecayingReservoir::new) {
+            @Override
+            protected void onRemoval(MetricName metricName, Metric metric) {
+                evicted.add((Meter) metric);
+            }
+        };
+        int threads = 4;
+        int updates = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int update = 0; update < updates; update++) {
+                        registry.meter(METRIC_1).mark();
+                    }
+                }));
+            }
+            long now = 0;
+            while (!futures.stream().allMatch(Future::isDone)) {
+                registry.evictIdleMetrics(Duration.ZERO, now++);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // every update is recorded by either the current meter or an evicted one, which is never still registered
+        Meter current = registry.meter(METRIC_1);
+        assertThat(evicted).doesNotContain(current);
+        assertThat(current.getCount() + evicted.stream().mapToLong(Meter::getCount).sum())
+                .isEqualTo((long) threads * updates);
+    }
+
+    private static MetricName cause(String safeName, String cause) {
+        return MetricName.builder().safeName(safeName).putSafeTags("cause", cause).build();
+    }
+
     private static void assertMetric(
             TaggedMetricRegistry registry, String name, String tagKey, String tagValue, Meter meter) {
         assertThat(registry.getMetrics())
@@ -311,4 +517,10 @@ final class TaggedMetricRegistryTest {
                                 .build(),
                         meter);
     }
+
+    private static List<MetricName> names(TaggedMetricRegistry registry) {
+        List<MetricName> names = new ArrayList<>();
+        registry.forEachMetric((name, _metric) -> names.add(name));
+        return names;
+    }
 }
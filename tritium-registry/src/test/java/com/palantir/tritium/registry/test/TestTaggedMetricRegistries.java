@@ -17,6 +17,7 @@
 package com.palantir.tritium.registry.test;
 
 import com.palantir.tritium.metrics.registry.DefaultTaggedMetricRegistry;
+import com.palantir.tritium.metrics.registry.OffHeapTaggedMetricRegistry;
 import com.palantir.tritium.metrics.registry.SlidingWindowTaggedMetricRegistry;
 import com.palantir.tritium.metrics.registry.TaggedMetricRegistry;
 import java.util.concurrent.TimeUnit;
@@ -34,15 +35,26 @@ public final class TestTaggedMetricRegistries {
     private TestTaggedMetricRegistries() {}
 
     public static Stream<TaggedMetricRegistry> registries() {
-        return Stream.of(new DefaultTaggedMetricRegistry(), createSlidingWindowTaggedMetricRegistry());
+        return Stream.of(
+                new DefaultTaggedMetricRegistry(),
+                createSlidingWindowTaggedMetricRegistry(),
+                createRotatingHistogramTaggedMetricRegistry(),
+                new OffHeapTaggedMetricRegistry());
     }
 
     public static Stream<Supplier<TaggedMetricRegistry>> registrySuppliers() {
         return Stream.of(
-                DefaultTaggedMetricRegistry::new, TestTaggedMetricRegistries::createSlidingWindowTaggedMetricRegistry);
+                DefaultTaggedMetricRegistry::new,
+                TestTaggedMetricRegistries::createSlidingWindowTaggedMetricRegistry,
+                TestTaggedMetricRegistries::createRotatingHistogramTaggedMetricRegistry,
+                OffHeapTaggedMetricRegistry::new);
     }
 
     private static SlidingWindowTaggedMetricRegistry createSlidingWindowTaggedMetricRegistry() {
         return new SlidingWindowTaggedMetricRegistry(30, TimeUnit.SECONDS);
     }
+
+    private static SlidingWindowTaggedMetricRegistry createRotatingHistogramTaggedMetricRegistry() {
+        return SlidingWindowTaggedMetricRegistry.withRotatingHistograms(30, TimeUnit.SECONDS, 6);
+    }
 }
@@ -0,0 +1,35 @@
+/*
+ * (c) Copyright 2020 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tritium.tracing;
+
+import javax.annotation.Nullable;
+
+/** Access to the trace of the current thread, for linking recorded metrics to traces. */
+public final class TraceIds {
+
+    private TraceIds() {}
+
+    /**
+     * Returns the trace ID of the current thread.
+     *
+     * @return the current trace ID, or null if the current thread is not tracing
+     */
+    @Nullable
+    public static String currentTraceId() {
+        return com.palantir.tracing.Tracer.hasTraceId() ? com.palantir.tracing.Tracer.getTraceId() : null;
+    }
+}